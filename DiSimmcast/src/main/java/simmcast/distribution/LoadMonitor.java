@@ -0,0 +1,198 @@
+package simmcast.distribution;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import simmcast.distribution.command.CommandLoadReport;
+
+/**
+ * Keeps the latest load report of each worker: the events handled by
+ * its nodes and the packets sent over their paths. When the simulation
+ * stops, the load of each worker is printed along with the moves of
+ * nodes that would even it out, and the loads are written as
+ * "partition" hints to the file named by "simmcast.partition.profile",
+ * which the NodePartitioner of the next run reads back.
+ * <p>
+ * Nodes are not moved while the simulation runs: the processes of a
+ * node are threads suspended in the middle of their code, and their
+ * state cannot be shipped to another worker. Placement is corrected
+ * between runs instead.
+ */
+public class LoadMonitor {
+
+	private static final int MAX_MOVES = 10;
+
+	private HashMap<String, Integer> owner;
+	private HashMap<String, Long> events;
+	private HashMap<String, Long> traffic;
+	private int workers;
+
+	public LoadMonitor()
+	{
+		owner = new HashMap<String, Integer>();
+		events = new HashMap<String, Long>();
+		traffic = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Replaces the counters of the nodes and paths of a worker; they
+	 * are totals since the simulation started.
+	 */
+	public synchronized void update(int mWorkerId, CommandLoadReport mReport)
+	{
+		workers = Math.max(workers, mWorkerId + 1);
+		for (int i=0;i<mReport.getNodes().size();i++)
+		{
+			owner.put(mReport.getNodes().get(i), mWorkerId);
+			events.put(mReport.getNodes().get(i), mReport.getEvents().get(i));
+		}
+		for (int i=0;i<mReport.getPaths().size();i++)
+		{
+			traffic.put(mReport.getPaths().get(i), mReport.getPackets().get(i));
+		}
+	}
+
+	/**
+	 * Prints the load of each worker and the suggested moves, and
+	 * writes the profile. Does nothing if no worker reported.
+	 */
+	public synchronized void report()
+	{
+		if (events.isEmpty())
+		{
+			return;
+		}
+		long[] load = new long[workers];
+		long total = 0;
+		for (Iterator<Map.Entry<String, Long>> it = events.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<String, Long> e = it.next();
+			load[owner.get(e.getKey())] += e.getValue();
+			total += e.getValue();
+		}
+		long all = 0;
+		long crossing = 0;
+		for (Iterator<Map.Entry<String, Long>> it = traffic.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<String, Long> e = it.next();
+			String[] ends = e.getKey().split(" ");
+			all += e.getValue();
+			if (owner.containsKey(ends[1]) && !owner.get(ends[0]).equals(owner.get(ends[1])))
+			{
+				crossing += e.getValue();
+			}
+		}
+		double average = (double) total / workers;
+		StringBuffer loads = new StringBuffer();
+		for (int p=0;p<workers;p++)
+		{
+			loads.append((p==0) ? "" : ", ").append(load[p]);
+		}
+		System.out.println("Load of " + events.size() + " nodes on " + workers + " workers, events [" + loads + "], imbalance " + imbalance(load, average));
+		System.out.println("Cross-worker packets " + crossing + " of " + all + ((all>0) ? " (" + Math.round(100.0 * crossing / all) + "%)" : ""));
+		ArrayList<String> moves = suggestMoves(load, average);
+		for (int i=0;i<moves.size();i++)
+		{
+			System.out.println("  " + moves.get(i));
+		}
+		if (!moves.isEmpty())
+		{
+			System.out.println("Imbalance after the moves " + imbalance(load, average));
+		}
+		String profile = System.getProperty(NodePartitioner.PROFILE_PROPERTY);
+		if (profile!=null)
+		{
+			writeProfile(profile);
+		}
+	}
+
+	private static String imbalance(long[] load, double average)
+	{
+		long max = 0;
+		for (int p=0;p<load.length;p++)
+		{
+			max = Math.max(max, load[p]);
+		}
+		return (average>0) ? String.format("%.2f", max / average) : "-";
+	}
+
+	/**
+	 * Moves nodes from the busiest worker to the idlest one, picking
+	 * each time the node that brings both closest to each other, until
+	 * the load of every worker is within NodePartitioner.IMBALANCE of
+	 * the average. The loads are updated as the moves are made.
+	 */
+	private ArrayList<String> suggestMoves(long[] load, double average)
+	{
+		ArrayList<String> moves = new ArrayList<String>();
+		HashMap<String, Integer> where = new HashMap<String, Integer>(owner);
+		while (moves.size()<MAX_MOVES)
+		{
+			int hot = 0;
+			int cold = 0;
+			for (int p=1;p<load.length;p++)
+			{
+				hot = (load[p]>load[hot]) ? p : hot;
+				cold = (load[p]<load[cold]) ? p : cold;
+			}
+			if (load[hot]<=average * (1 + NodePartitioner.IMBALANCE))
+			{
+				break;
+			}
+			long gap = load[hot] - load[cold];
+			String best = null;
+			long bestEvents = 0;
+			for (Iterator<Map.Entry<String, Integer>> it = where.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<String, Integer> e = it.next();
+				long n = events.get(e.getKey());
+				if ((e.getValue()==hot) && (n>0) && (n<gap) && ((best==null) || (Math.abs(gap - 2 * n)<Math.abs(gap - 2 * bestEvents))))
+				{
+					best = e.getKey();
+					bestEvents = n;
+				}
+			}
+			if (best==null)
+			{
+				break;
+			}
+			where.put(best, cold);
+			load[hot] -= bestEvents;
+			load[cold] += bestEvents;
+			moves.add("move " + best + " (" + bestEvents + " events) from worker " + hot + " to worker " + cold);
+		}
+		return moves;
+	}
+
+	/**
+	 * Writes the events of each node and the packets of each path as
+	 * "partition weight" and "partition traffic" lines. Counters are
+	 * raised to 1, the default of the nodes and paths not listed.
+	 */
+	private void writeProfile(String file)
+	{
+		try {
+			PrintWriter pw = new PrintWriter(new FileWriter(file));
+			pw.println("# Load profile of the last run, read back by the partitioner.");
+			for (Iterator<Map.Entry<String, Long>> it = events.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<String, Long> e = it.next();
+				pw.println("partition weight " + e.getKey() + " " + Math.max(1, e.getValue()));
+			}
+			for (Iterator<Map.Entry<String, Long>> it = traffic.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<String, Long> e = it.next();
+				pw.println("partition traffic " + e.getKey() + " " + Math.max(1, e.getValue()));
+			}
+			pw.close();
+			System.out.println("Load profile written to " + file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
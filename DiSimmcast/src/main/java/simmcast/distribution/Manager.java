@@ -1,10 +1,15 @@
 package simmcast.distribution;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Vector;
 
+import simmcast.distribution.command.CommandConfig;
 import simmcast.distribution.command.CommandCreate;
 import simmcast.distribution.command.CommandCreateObject;
 import simmcast.distribution.command.CommandInvoke;
+import simmcast.distribution.command.CommandLoadReport;
+import simmcast.distribution.command.CommandOpenWindow;
 import simmcast.distribution.command.CommandProtocol;
 import simmcast.distribution.command.CommandResumeProcess;
 import simmcast.distribution.command.CommandStartSimulation;
@@ -12,12 +17,16 @@ import simmcast.distribution.command.CommandStopSimulation;
 import simmcast.distribution.command.CommandTerminateProcess;
 import simmcast.distribution.communication.CommunicationServer;
 import simmcast.distribution.communication.CommunicationServerNamedPipe;
+import simmcast.distribution.communication.CommunicationServerNio;
+import simmcast.distribution.communication.CommunicationServerShm;
 import simmcast.distribution.communication.CommunicationServerSocket;
+import simmcast.distribution.communication.CommandFuture;
 import simmcast.distribution.communication.Connection;
 import simmcast.distribution.interfaces.GroupInterface;
 import simmcast.distribution.interfaces.GroupTableInterface;
 import simmcast.distribution.interfaces.NodeInterface;
 import simmcast.distribution.interfaces.ProcessInterface;
+import simmcast.engine.ConservativeScheduler;
 import simmcast.group.Group;
 import simmcast.network.Network;
 import simmcast.node.Node;
@@ -27,21 +36,67 @@ public class Manager implements Runnable {
 
 	public static final boolean USE_SOCKETS = true;
 
+	/**
+	 * Socket transport, selected with "simmcast.transport": "socket"
+	 * (the default) serves each link with its own thread, "nio" serves
+	 * all the links of a process from one selector thread, and "shm"
+	 * passes the commands through shared memory rings, for workers on
+	 * the host of the manager. Manager and workers must use the same.
+	 */
+	public static final String TRANSPORT = System.getProperty("simmcast.transport", "socket");
+	public static final boolean USE_NIO = TRANSPORT.equalsIgnoreCase("nio");
+	public static final boolean USE_SHM = TRANSPORT.equalsIgnoreCase("shm");
+
+	/**
+	 * Synchronization mode, selected with "simmcast.sync". In the
+	 * default "lockstep" mode every process of every worker is driven
+	 * by the scheduler of the manager. In the "conservative" mode each
+	 * worker runs its own ConservativeScheduler inside time windows
+	 * granted by the manager from the lookahead of the paths between
+	 * workers. Manager and workers must be started in the same mode.
+	 */
+	public static final boolean CONSERVATIVE = System.getProperty("simmcast.sync", "lockstep").equalsIgnoreCase("conservative");
+
     private Network network;
     private Vector<Connection> connections;
     private CommunicationServer commServer;
     private int actualWorker;
+
+    /**
+     * The worker chosen for each node by the NodePartitioner, by
+     * label; null for the round-robin placement.
+     */
+    private Map<String, Integer> placement;
+
+    private LoadMonitor loadMonitor = new LoadMonitor();
  
     private java.util.concurrent.LinkedBlockingQueue<CommandProtocol> in;
 
     private boolean connected;
     private Thread listenThread;
 
+    /**
+     * Conservative mode: the lowest time each worker reported
+     * (next local event or packet sent), the minimum path delay
+     * from each worker to each other, and the reports received
+     * for the current window.
+     */
+    private double[] windowBounds;
+    private double[][] lookaheads;
+    private int windowReports;
+
+    /**
+     * Conservative mode: the minimum delay of the paths reaching
+     * each worker from the others, worked out again only when a
+     * worker reports its lookahead.
+     */
+    private double[] inbound;
+
     public Manager(Network network)
     {
     	this.network = network;
     	actualWorker = 0;
-    	commServer = (USE_SOCKETS) ? new CommunicationServerSocket() : new CommunicationServerNamedPipe();
+    	commServer = createServer();
     	commServer.create();
     }
 
@@ -49,10 +104,23 @@ public class Manager implements Runnable {
     {
     	this.network = network;
     	actualWorker = 0;
-    	commServer = (USE_SOCKETS) ? new CommunicationServerSocket() : new CommunicationServerNamedPipe();
+    	commServer = createServer();
     	commServer.create(inetAddr);
     }
 
+    private static CommunicationServer createServer()
+    {
+    	if (!USE_SOCKETS)
+    	{
+    		return new CommunicationServerNamedPipe();
+    	}
+    	if (USE_SHM)
+    	{
+    		return new CommunicationServerShm();
+    	}
+    	return (USE_NIO) ? new CommunicationServerNio() : new CommunicationServerSocket();
+    }
+
     public void listenForConnections()
     {
     	in = new java.util.concurrent.LinkedBlockingQueue<CommandProtocol>();
@@ -88,14 +156,27 @@ public class Manager implements Runnable {
 		listenThread.start();
     }
 
+    public void setPlacement(Map<String, Integer> mPlacement)
+    {
+    	placement = mPlacement;
+    }
+
     public int createNode(int addressId, String label, String className, String[] arguments)
     {
     	int usedWorker = actualWorker;
+    	boolean placed = (placement!=null) && placement.containsKey(label);
+    	if (placed)
+    	{
+    		usedWorker = placement.get(label);
+    	}
     	CommandCreate cc = new CommandCreate(addressId, label, className, arguments);
     	String err = connections.get(usedWorker).sendCmd(cc);
     	if (err==null)
     	{
-    		actualWorker = (actualWorker + 1) % connections.size();
+    		if (!placed)
+    		{
+    			actualWorker = (actualWorker + 1) % connections.size();
+    		}
     		return usedWorker;
 		}
     	else
@@ -154,19 +235,14 @@ public class Manager implements Runnable {
     	}
     }
 
+    /**
+     * Not acked: the scheduler waits for the process to block or
+     * finish anyway, and a failure is printed when it arrives.
+     */
     public boolean resumeProcess(int workerId, int addressId)
     {
     	CommandResumeProcess crp = new CommandResumeProcess(addressId, network.getSimulationScheduler().currentTime());
-    	String err = connections.get(workerId).sendCmd(crp);
-    	if (err==null)
-    	{
-    		return true;
-		}
-    	else
-    	{
-    		System.err.println(err);
-    		return false;
-    	}
+    	return connections.get(workerId).post(crp);
     }
 
     public boolean terminateProcess(int workerId, int addressId)
@@ -186,10 +262,25 @@ public class Manager implements Runnable {
 
     public boolean startSimulation()
     {
+    	if (CONSERVATIVE)
+    	{
+    		synchronized (this) {
+	    		windowBounds = new double[connections.size()];
+	    		lookaheads = new double[connections.size()][];
+	    		windowReports = 0;
+	    		inbound = null;
+    		}
+    	}
+    	network.publishConfig();
     	CommandStartSimulation cs = new CommandStartSimulation();
+    	CommandFuture[] replies = new CommandFuture[connections.size()];
+    	for (int i=0;i<connections.size();i++)
+    	{
+    		replies[i] = connections.get(i).sendCmdAsync(cs);
+    	}
     	for (int i=0;i<connections.size();i++)
     	{
-    		String err = connections.get(i).sendCmd(cs);
+    		String err = replies[i].get();
     		if (err==null)
     		{
     		}
@@ -205,6 +296,7 @@ public class Manager implements Runnable {
     public boolean stopSimulation()
     {
     	connected = false;
+    	loadMonitor.report();
     	CommandStopSimulation ss = new CommandStopSimulation();
     	for (int i=0;i<connections.size();i++)
     	{
@@ -231,7 +323,10 @@ public class Manager implements Runnable {
     	String ret = cmd.run(network);
     	if (ret==null)
     	{
-    		connections.get(cmd.getWorkerId()).sendOk(cmd.getCmdId());
+    		if (cmd.isReplyWanted())
+    		{
+    			connections.get(cmd.getWorkerId()).sendOk(cmd.getCmdId());
+    		}
     	}
     	else
     	{
@@ -246,6 +341,85 @@ public class Manager implements Runnable {
     	}
     }
 
+    /**
+     * Conservative mode: accounts the report of a worker that ran
+     * out of events in its window. Once every worker has reported,
+     * the next window starts at the lowest reported time, and ends
+     * for each worker one lookahead later: the minimum delay of the
+     * paths reaching it from other workers. When nothing is left to
+     * execute anywhere, the simulation is over.
+     */
+    public synchronized void windowDone(int workerId, double nextTime, double sentTime, double[] lookahead)
+    {
+    	if (lookahead!=null)
+    	{
+    		lookaheads[workerId] = lookahead;
+    		inbound = null;
+    	}
+    	windowBounds[workerId] = Math.min(nextTime, sentTime);
+    	windowReports++;
+    	if (windowReports<connections.size())
+    	{
+    		return;
+    	}
+    	windowReports = 0;
+    	double start = ConservativeScheduler.NEVER;
+    	for (int i=0;i<windowBounds.length;i++)
+    	{
+    		start = Math.min(start, windowBounds[i]);
+    	}
+    	if (start>=ConservativeScheduler.NEVER)
+    	{
+    		network.terminateSimulation();
+    		return;
+    	}
+    	if (inbound==null)
+    	{
+    		inbound = inboundDelays();
+    	}
+    	for (int j=0;j<connections.size();j++)
+    	{
+    		double end = (inbound[j]>=ConservativeScheduler.NEVER) ? ConservativeScheduler.NEVER : start + inbound[j];
+    		connections.get(j).post(new CommandOpenWindow(start, end));
+    	}
+    }
+
+    private double[] inboundDelays()
+    {
+    	double[] delays = new double[connections.size()];
+    	Arrays.fill(delays, ConservativeScheduler.NEVER);
+    	for (int i=0;i<lookaheads.length;i++)
+    	{
+    		for (int j=0;(lookaheads[i]!=null) && (j<lookaheads[i].length) && (j<delays.length);j++)
+    		{
+    			if (i!=j)
+    			{
+    				delays[j] = Math.min(delays[j], lookaheads[i][j]);
+    			}
+    		}
+    	}
+    	return delays;
+    }
+
+    /**
+     * Posts the cacheable fields of the network to every worker.
+     *
+     * @see Network#publishConfig
+     */
+    public void sendConfig(int version, boolean full, Map<String, Object> values)
+    {
+    	CommandConfig cc = new CommandConfig(version, full, values);
+    	for (int i=0;i<connections.size();i++)
+    	{
+    		connections.get(i).post(cc);
+    	}
+    }
+
+    public void loadReported(int workerId, CommandLoadReport report)
+    {
+    	loadMonitor.update(workerId, report);
+    }
+
     public String getWorkerDescription(int workerId)
     {
     	return connections.get(workerId).getDescription();
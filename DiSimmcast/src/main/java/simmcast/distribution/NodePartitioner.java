@@ -0,0 +1,519 @@
+package simmcast.distribution;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Places the nodes of a simulation on the workers so that as few
+ * paths, weighted by their expected traffic, as possible cross from
+ * one worker to another, while every worker gets about the same load.
+ * <p>
+ * The ScriptParser feeds the nodes, the paths and the hints of the
+ * script before any node is created; the Manager then creates each
+ * node on the worker chosen for it. The partitioning is multilevel:
+ * the graph is coarsened by merging the pairs of nodes joined by the
+ * heaviest paths, the coarsest graph is split greedily, and the split
+ * is projected back level by level, moving the nodes on the border to
+ * the worker they exchange most traffic with whenever the balance
+ * allows it.
+ * <p>
+ * Hints are given in the script with "partition" lines:
+ * <pre>
+ * partition weight LABEL W        the load of a node (default 1)
+ * partition affinity NAME LABEL   keeps the nodes of a group together
+ * partition traffic FROM TO W     the traffic of a path (default 1)
+ * </pre>
+ * The partitioner is selected with "simmcast.partition": "mincut"
+ * (the default) or "roundrobin" for the former placement.
+ * <p>
+ * If "simmcast.partition.profile" names a file, the "partition" lines
+ * in it are read before those of the script, which take precedence.
+ * The LoadMonitor of the manager writes that file at the end of a run
+ * with the load measured on the workers.
+ */
+public class NodePartitioner {
+
+	public static final boolean ENABLED = !System.getProperty("simmcast.partition", "mincut").equalsIgnoreCase("roundrobin");
+
+	/**
+	 * How much the load of a worker may exceed the average.
+	 */
+	public static final double IMBALANCE = Double.parseDouble(System.getProperty("simmcast.partition.imbalance", "0.05"));
+
+	public static final String PROFILE_PROPERTY = "simmcast.partition.profile";
+
+	private static final int REFINE_PASSES = 8;
+	private static final int REPORT_EDGES = 20;
+
+	private int workers;
+
+	private ArrayList<String> labels;
+	private HashMap<String, Integer> index;
+	private HashMap<String, Double> weights;
+	private HashMap<String, String> affinity;
+	private ArrayList<String[]> paths;
+	private HashMap<String, Double> traffic;
+
+	/**
+	 * A level of the multilevel scheme.
+	 */
+	private static class Graph {
+		int n;
+		double[] weight;
+		ArrayList<HashMap<Integer, Double>> adj;
+
+		Graph(int mN)
+		{
+			n = mN;
+			weight = new double[mN];
+			adj = new ArrayList<HashMap<Integer, Double>>(mN);
+			for (int i=0;i<mN;i++)
+			{
+				adj.add(new HashMap<Integer, Double>());
+			}
+		}
+
+		void addEdge(int a, int b, double w)
+		{
+			if (a==b)
+			{
+				return;
+			}
+			Double old = adj.get(a).get(b);
+			adj.get(a).put(b, (old==null) ? w : old + w);
+			old = adj.get(b).get(a);
+			adj.get(b).put(a, (old==null) ? w : old + w);
+		}
+	}
+
+	public NodePartitioner(int mWorkers)
+	{
+		workers = mWorkers;
+		labels = new ArrayList<String>();
+		index = new HashMap<String, Integer>();
+		weights = new HashMap<String, Double>();
+		affinity = new HashMap<String, String>();
+		paths = new ArrayList<String[]>();
+		traffic = new HashMap<String, Double>();
+		String profile = System.getProperty(PROFILE_PROPERTY);
+		if ((profile!=null) && new File(profile).exists())
+		{
+			readProfile(profile);
+		}
+	}
+
+	private void readProfile(String file)
+	{
+		int count = 0;
+		try {
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			String line;
+			while ((line = br.readLine())!=null)
+			{
+				String[] words = line.trim().split("\\s+");
+				if ((words.length>1) && words[0].equals("partition"))
+				{
+					String[] args = new String[words.length - 1];
+					System.arraycopy(words, 1, args, 0, args.length);
+					if (hint(args))
+					{
+						count++;
+					}
+				}
+			}
+			br.close();
+			System.out.println("Read " + count + " hints from the load profile " + file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void addNode(String label)
+	{
+		if (!index.containsKey(label))
+		{
+			index.put(label, labels.size());
+			labels.add(label);
+		}
+	}
+
+	public void addPath(String from, String to)
+	{
+		paths.add(new String[] {from, to});
+	}
+
+	/**
+	 * Takes a "partition" line of the script.
+	 *
+	 * @param args The words after "partition".
+	 * @return false if the line is not understood.
+	 */
+	public boolean hint(String[] args)
+	{
+		try {
+			if (args[0].equals("weight") && args.length==3)
+			{
+				weights.put(args[1], Double.valueOf(args[2]));
+				return true;
+			}
+			if (args[0].equals("affinity") && args.length>=3)
+			{
+				for (int i=2;i<args.length;i++)
+				{
+					affinity.put(args[i], args[1]);
+				}
+				return true;
+			}
+			if (args[0].equals("traffic") && args.length==4)
+			{
+				traffic.put(args[1] + " " + args[2], Double.valueOf(args[3]));
+				return true;
+			}
+		} catch (NumberFormatException e) {
+		}
+		return false;
+	}
+
+	private double trafficOf(String from, String to)
+	{
+		Double t = traffic.get(from + " " + to);
+		return (t==null) ? 1 : t.doubleValue();
+	}
+
+	/**
+	 * @return The worker of each node, by label.
+	 */
+	public Map<String, Integer> partition()
+	{
+		// Level 0: the nodes, with the members of an affinity group
+		// already merged.
+		int[] group = new int[labels.size()];
+		HashMap<String, Integer> groups = new HashMap<String, Integer>();
+		int n = 0;
+		for (int i=0;i<labels.size();i++)
+		{
+			String name = affinity.get(labels.get(i));
+			if (name==null)
+			{
+				group[i] = n++;
+			}
+			else
+			{
+				Integer g = groups.get(name);
+				if (g==null)
+				{
+					g = n++;
+					groups.put(name, g);
+				}
+				group[i] = g;
+			}
+		}
+		Graph g = new Graph(n);
+		double total = 0;
+		for (int i=0;i<labels.size();i++)
+		{
+			Double w = weights.get(labels.get(i));
+			g.weight[group[i]] += (w==null) ? 1 : w.doubleValue();
+			total += (w==null) ? 1 : w.doubleValue();
+		}
+		for (int i=0;i<paths.size();i++)
+		{
+			Integer a = index.get(paths.get(i)[0]);
+			Integer b = index.get(paths.get(i)[1]);
+			if ((a!=null) && (b!=null))
+			{
+				g.addEdge(group[a], group[b], trafficOf(paths.get(i)[0], paths.get(i)[1]));
+			}
+		}
+		double cap = total / workers * (1 + IMBALANCE);
+		for (int i=0;i<g.n;i++)
+		{
+			cap = Math.max(cap, g.weight[i]);
+		}
+
+		// Coarsening
+		ArrayList<Graph> levels = new ArrayList<Graph>();
+		ArrayList<int[]> maps = new ArrayList<int[]>();
+		levels.add(g);
+		Random random = new Random(0);
+		while (g.n>8 * workers)
+		{
+			int[] map = new int[g.n];
+			Graph coarse = coarsen(g, map, total / workers, random);
+			if (coarse.n>0.9 * g.n)
+			{
+				break;
+			}
+			maps.add(map);
+			levels.add(coarse);
+			g = coarse;
+		}
+
+		// Initial split of the coarsest graph, then projection and
+		// refinement down to level 0
+		int[] parts = split(g, cap);
+		refine(g, parts, cap);
+		for (int l=levels.size() - 2;l>=0;l--)
+		{
+			int[] map = maps.get(l);
+			int[] fine = new int[map.length];
+			for (int i=0;i<map.length;i++)
+			{
+				fine[i] = parts[map[i]];
+			}
+			parts = fine;
+			refine(levels.get(l), parts, cap);
+		}
+
+		HashMap<String, Integer> placement = new HashMap<String, Integer>();
+		for (int i=0;i<labels.size();i++)
+		{
+			placement.put(labels.get(i), parts[group[i]]);
+		}
+		report(placement);
+		return placement;
+	}
+
+	/**
+	 * Merges each node with the unmatched neighbour it shares the
+	 * heaviest edge with, as long as both fit in maxWeight.
+	 */
+	private static Graph coarsen(Graph g, int[] map, double maxWeight, Random random)
+	{
+		ArrayList<Integer> order = new ArrayList<Integer>(g.n);
+		for (int i=0;i<g.n;i++)
+		{
+			order.add(i);
+		}
+		Collections.shuffle(order, random);
+		int[] match = new int[g.n];
+		java.util.Arrays.fill(match, -1);
+		int n = 0;
+		for (int k=0;k<g.n;k++)
+		{
+			int v = order.get(k);
+			if (match[v]>=0)
+			{
+				continue;
+			}
+			int best = -1;
+			double bestWeight = 0;
+			for (Iterator<Map.Entry<Integer, Double>> it = g.adj.get(v).entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<Integer, Double> e = it.next();
+				int u = e.getKey();
+				if ((match[u]<0) && (e.getValue()>bestWeight) && (g.weight[u] + g.weight[v]<=maxWeight))
+				{
+					best = u;
+					bestWeight = e.getValue();
+				}
+			}
+			match[v] = (best<0) ? v : best;
+			map[v] = n;
+			if (best>=0)
+			{
+				match[best] = v;
+				map[best] = n;
+			}
+			n++;
+		}
+		Graph coarse = new Graph(n);
+		for (int v=0;v<g.n;v++)
+		{
+			coarse.weight[map[v]] += g.weight[v];
+			for (Iterator<Map.Entry<Integer, Double>> it = g.adj.get(v).entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry<Integer, Double> e = it.next();
+				if (v<e.getKey())
+				{
+					coarse.addEdge(map[v], map[e.getKey()], e.getValue());
+				}
+			}
+		}
+		return coarse;
+	}
+
+	/**
+	 * Places the heaviest nodes first, each on the worker it is most
+	 * connected to among those with room left, or else on the least
+	 * loaded one.
+	 */
+	private int[] split(final Graph g, double cap)
+	{
+		Integer[] order = new Integer[g.n];
+		for (int i=0;i<g.n;i++)
+		{
+			order[i] = i;
+		}
+		java.util.Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(g.weight[b], g.weight[a]);
+			}
+		});
+		int[] parts = new int[g.n];
+		java.util.Arrays.fill(parts, -1);
+		double[] load = new double[workers];
+		for (int k=0;k<g.n;k++)
+		{
+			int v = order[k];
+			double[] conn = connections(g, parts, v);
+			int best = lightest(load);
+			for (int p=0;p<workers;p++)
+			{
+				if ((load[p] + g.weight[v]<=cap) && ((conn[p]>conn[best]) || (load[best] + g.weight[v]>cap)))
+				{
+					best = p;
+				}
+			}
+			parts[v] = best;
+			load[best] += g.weight[v];
+		}
+		return parts;
+	}
+
+	/**
+	 * Moves the nodes to the worker they exchange most traffic with,
+	 * when the move lowers the cut without overloading that worker,
+	 * or keeps the cut and evens the loads.
+	 */
+	private void refine(Graph g, int[] parts, double cap)
+	{
+		double[] load = new double[workers];
+		for (int v=0;v<g.n;v++)
+		{
+			load[parts[v]] += g.weight[v];
+		}
+		for (int pass=0;pass<REFINE_PASSES;pass++)
+		{
+			boolean moved = false;
+			for (int v=0;v<g.n;v++)
+			{
+				if (g.adj.get(v).isEmpty())
+				{
+					continue;
+				}
+				int own = parts[v];
+				double[] conn = connections(g, parts, v);
+				int best = own;
+				double bestGain = 0;
+				for (int p=0;p<workers;p++)
+				{
+					if ((p==own) || (load[p] + g.weight[v]>cap))
+					{
+						continue;
+					}
+					double gain = conn[p] - conn[own];
+					boolean better;
+					if (best==own)
+					{
+						better = (gain>0) || ((gain==0) && (load[p] + g.weight[v]<load[own]));
+					}
+					else
+					{
+						better = (gain>bestGain) || ((gain==bestGain) && (load[p]<load[best]));
+					}
+					if (better)
+					{
+						best = p;
+						bestGain = gain;
+					}
+				}
+				if (best!=own)
+				{
+					parts[v] = best;
+					load[own] -= g.weight[v];
+					load[best] += g.weight[v];
+					moved = true;
+				}
+			}
+			if (!moved)
+			{
+				break;
+			}
+		}
+	}
+
+	private double[] connections(Graph g, int[] parts, int v)
+	{
+		double[] conn = new double[workers];
+		for (Iterator<Map.Entry<Integer, Double>> it = g.adj.get(v).entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<Integer, Double> e = it.next();
+			if (parts[e.getKey()]>=0)
+			{
+				conn[parts[e.getKey()]] += e.getValue();
+			}
+		}
+		return conn;
+	}
+
+	private static int lightest(double[] load)
+	{
+		int best = 0;
+		for (int p=1;p<load.length;p++)
+		{
+			if (load[p]<load[best])
+			{
+				best = p;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Prints the load of each worker, the paths that cross workers
+	 * and the share of the traffic they carry.
+	 */
+	private void report(Map<String, Integer> placement)
+	{
+		double[] load = new double[workers];
+		for (int i=0;i<labels.size();i++)
+		{
+			Double w = weights.get(labels.get(i));
+			load[placement.get(labels.get(i))] += (w==null) ? 1 : w.doubleValue();
+		}
+		double all = 0;
+		double crossing = 0;
+		ArrayList<String> cut = new ArrayList<String>();
+		for (int i=0;i<paths.size();i++)
+		{
+			Integer a = placement.get(paths.get(i)[0]);
+			Integer b = placement.get(paths.get(i)[1]);
+			if ((a==null) || (b==null))
+			{
+				continue;
+			}
+			double t = trafficOf(paths.get(i)[0], paths.get(i)[1]);
+			all += t;
+			if (!a.equals(b))
+			{
+				crossing += t;
+				cut.add(paths.get(i)[0] + "(" + a + ") -> " + paths.get(i)[1] + "(" + b + ")");
+			}
+		}
+		StringBuffer loads = new StringBuffer();
+		for (int p=0;p<workers;p++)
+		{
+			loads.append((p==0) ? "" : ", ").append(load[p]);
+		}
+		System.out.println("Partition of " + labels.size() + " nodes on " + workers + " workers, loads [" + loads + "]");
+		System.out.println("Cut paths: " + cut.size() + " of " + paths.size() + ", cross-worker traffic " + crossing + " of " + all + ((all>0) ? " (" + Math.round(100 * crossing / all) + "%)" : ""));
+		for (int i=0;(i<cut.size()) && (i<REPORT_EDGES);i++)
+		{
+			System.out.println("  " + cut.get(i));
+		}
+		if (cut.size()>REPORT_EDGES)
+		{
+			System.out.println("  ... and " + (cut.size() - REPORT_EDGES) + " more");
+		}
+	}
+}
@@ -11,7 +11,9 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.Iterator;
 
 import simmcast.distribution.command.CommandActivateAt;
 import simmcast.distribution.command.CommandAddToPool;
@@ -19,12 +21,17 @@ import simmcast.distribution.command.CommandBlockedOrFinished;
 import simmcast.distribution.command.CommandCreate;
 import simmcast.distribution.command.CommandCreateObject;
 import simmcast.distribution.command.CommandInvoke;
+import simmcast.distribution.command.CommandLoadReport;
 import simmcast.distribution.command.CommandPacketArrival;
+import simmcast.distribution.command.CommandPacketBatch;
 import simmcast.distribution.command.CommandProtocol;
 import simmcast.distribution.command.CommandRemoveFromPool;
 import simmcast.distribution.command.CommandStopSimulation;
+import simmcast.distribution.command.CommandWindowDone;
 import simmcast.distribution.communication.CommunicationClient;
 import simmcast.distribution.communication.CommunicationClientNamedPipe;
+import simmcast.distribution.communication.CommunicationClientNio;
+import simmcast.distribution.communication.CommunicationClientShm;
 import simmcast.distribution.communication.CommunicationClientSocket;
 import simmcast.distribution.communication.Connection;
 import simmcast.distribution.interfaces.NodeInterface;
@@ -34,15 +41,18 @@ import simmcast.distribution.proxies.NodeProxy;
 import simmcast.distribution.proxies.ObjectProxy;
 import simmcast.distribution.proxies.Proxyable;
 import simmcast.distribution.proxies.RouterNodeProxy;
+import simmcast.engine.ConservativeScheduler;
 import simmcast.engine.Process;
 import simmcast.group.Group;
 import simmcast.network.Network;
 import simmcast.network.Packet;
+import simmcast.node.EventScheduler;
 import simmcast.node.Node;
 import simmcast.node.NodeVector;
+import simmcast.node.Path;
 import simmcast.script.ScriptParser;
 
-public class Worker implements Runnable {
+public class Worker implements Runnable, ConservativeScheduler.WindowListener {
 
 	private Connection connection;
 	private CommunicationClient commClient;
@@ -51,6 +61,12 @@ public class Worker implements Runnable {
 
 	private static final String PROXY_SUFFIX = "Proxy";
 
+	/**
+	 * How often the load of the nodes is reported to the manager, in
+	 * milliseconds ("simmcast.load.interval"); 0 turns the reports off.
+	 */
+	public static final long LOAD_INTERVAL = Long.parseLong(System.getProperty("simmcast.load.interval", "500"));
+
    /**
     * A simple "symbol table", where objects created during
     * the parsing of the configuration file are stored.
@@ -100,12 +116,37 @@ public class Worker implements Runnable {
    
    private int cmdIdOk;
 
+   /**
+    * Conservative mode: whether the lookahead of this worker
+    * was already sent to the manager.
+    */
+   private boolean lookaheadReported;
+
+   /**
+    * When the load was last reported, in milliseconds.
+    */
+   private long loadReported;
+
    private java.util.concurrent.LinkedBlockingQueue<CommandProtocol> in;
 
     public Worker(Network network)
 	{
     	this.network = network;
-    	commClient = (Manager.USE_SOCKETS) ? new CommunicationClientSocket() : new CommunicationClientNamedPipe();
+    	if (Manager.USE_SOCKETS)
+    	{
+    		if (Manager.USE_SHM)
+    		{
+    			commClient = new CommunicationClientShm();
+    		}
+    		else
+    		{
+    			commClient = (Manager.USE_NIO) ? new CommunicationClientNio() : new CommunicationClientSocket();
+    		}
+    	}
+    	else
+    	{
+    		commClient = new CommunicationClientNamedPipe();
+    	}
     	commClient.create();
 		symbols = new Hashtable();
 		symbols.put("network", network);
@@ -123,10 +164,18 @@ public class Worker implements Runnable {
 		return false;
 	}
 
+    /**
+     * The packets this worker sent must reach their destinations
+     * before the manager may end the timestep, so their acks are
+     * awaited first. The report itself travels on the same stream
+     * as the activations the process requested, and is not acked.
+     */
     public boolean processBlockedOrFinished(int pid)
     {
     	CommandBlockedOrFinished cbf= new CommandBlockedOrFinished(pid);
-    	return send(cbf)==null;
+    	reportLoad(false);
+    	connection.drain();
+    	return connection.post(cbf);
     }
 
     public boolean removeFromPool(int pid)
@@ -138,11 +187,21 @@ public class Worker implements Runnable {
     public boolean activateAt(double relativeTime_, ProcessInterface process_)
     {
     	CommandActivateAt cat = new CommandActivateAt(relativeTime_, process_.getPid());
-    	return send(cat)==null;
+    	if (Thread.currentThread()==thread)
+    	{
+    		// Requested while handling a command (a packet arrival):
+    		// the sender of that command waits for the activation.
+    		return send(cat)==null;
+    	}
+    	return connection.post(cat);
     }
 
     public String sendPacket(String where, double relativeTime_, Packet p_)
     {
+    	if (Manager.CONSERVATIVE)
+    	{
+    		return sendPacketAt(where, network.getSimulationScheduler().currentTime() + relativeTime_, p_);
+    	}
     	if (where.equals(commClient.getDescription(false)))
     	{
     		CommandPacketArrival cpa = new CommandPacketArrival(where, relativeTime_, p_);
@@ -155,8 +214,112 @@ public class Worker implements Runnable {
     	}
     	else
     	{
-    		return connection.sendPacket(where, relativeTime_, p_);
+    		connection.postPacket(where, network.simulationTime(), relativeTime_, p_, false);
+    		return null;
+    	}
+    }
+
+    /**
+     * Conservative mode: packets travel with their absolute arrival
+     * time, since sender and receiver clocks differ, and are applied
+     * by the receiving scheduler between timesteps.
+     */
+    private String sendPacketAt(String where, double time_, Packet p_)
+    {
+    	if (where.equals(commClient.getDescription(false)))
+    	{
+    		return deliverLater(new CommandPacketArrival(where, time_, p_, true));
     	}
+    	((ConservativeScheduler) network.getSimulationScheduler()).packetSent(time_);
+    	connection.postPacket(where, network.simulationTime(), time_, p_, true);
+    	return null;
+    }
+
+    private String deliverLater(final CommandProtocol cmd)
+    {
+    	((ConservativeScheduler) network.getSimulationScheduler()).deliver(new Runnable() {
+			public void run() {
+				cmd.run(network);
+			}
+		});
+    	return null;
+    }
+
+    public boolean windowCompleted(double nextTime_, double sentTime_)
+    {
+    	CommandWindowDone cwd = new CommandWindowDone(nextTime_, sentTime_, (lookaheadReported) ? null : computeLookahead());
+    	lookaheadReported = true;
+    	reportLoad(false);
+    	connection.drain();
+    	return connection.post(cwd);
+    }
+
+    /**
+     * The minimum delay of the paths from the nodes of this worker
+     * to the nodes of each other worker, indexed by worker id.
+     */
+    private double[] computeLookahead()
+    {
+    	double[] lookahead = new double[0];
+    	for (int i=0;i<network.nodes.size();i++)
+    	{
+    		if (!(network.nodes.nodeAt(i) instanceof Node))
+    			continue;
+    		Iterator iter = ((Node) network.nodes.nodeAt(i)).getPaths().values().iterator();
+    		while (iter.hasNext())
+    		{
+    			Path path = (Path) iter.next();
+    			if (path.getDestination() instanceof NodeProxy)
+    			{
+    				int workerId = ((NodeProxy) path.getDestination()).getWorkerId();
+    				if (workerId>=lookahead.length)
+    				{
+    					int old = lookahead.length;
+    					lookahead = Arrays.copyOf(lookahead, workerId + 1);
+    					Arrays.fill(lookahead, old, lookahead.length, ConservativeScheduler.NEVER);
+    				}
+    				lookahead[workerId] = Math.min(lookahead[workerId], path.getMinimumDelay());
+    			}
+    		}
+    	}
+    	return lookahead;
+    }
+
+    /**
+     * Posts the events handled by each node of this worker and the
+     * packets sent over each of their paths, once every LOAD_INTERVAL
+     * milliseconds unless forced. The report is not acked; the manager
+     * keeps the latest one of each worker.
+     */
+    private void reportLoad(boolean force)
+    {
+    	if (LOAD_INTERVAL<=0)
+    		return;
+    	synchronized (this)
+    	{
+	    	long now = System.currentTimeMillis();
+	    	if (!force && (now - loadReported < LOAD_INTERVAL))
+	    		return;
+	    	loadReported = now;
+    	}
+    	CommandLoadReport clr = new CommandLoadReport();
+    	for (int i=0;i<network.nodes.size();i++)
+    	{
+    		if (!(network.nodes.nodeAt(i) instanceof Node))
+    			continue;
+    		Node node = (Node) network.nodes.nodeAt(i);
+    		if (node.getScheduler() instanceof EventScheduler)
+    		{
+    			clr.addNode(node.getName(), ((EventScheduler) node.getScheduler()).getEventsHandled());
+    		}
+    		Iterator iter = node.getPaths().values().iterator();
+    		while (iter.hasNext())
+    		{
+    			Path path = (Path) iter.next();
+    			clr.addPath(node.getName() + " " + path.getDestination().getName(), path.getPacketsSent());
+    		}
+    	}
+    	connection.post(clr);
     }
 
     public boolean addToThreadPool(ProcessInterface process_) 
@@ -334,6 +497,10 @@ public class Worker implements Runnable {
 						connection.sendError(ci.getCmdId(), "Cannot find " + ((ci.getNetworkId()>-1) ? " Node " + ci.getNetworkId() : " Object " + ci.getName()));
 					}
 					break;
+
+				case CommandProtocol.ACTION_CONFIG:
+					cmd.run(network);
+					break;
 			}
 			cmd = in.take();
 		}
@@ -352,6 +519,7 @@ public class Worker implements Runnable {
     public boolean stopSimulation()
     {
     	CommandStopSimulation css = new CommandStopSimulation();
+    	reportLoad(true);
     	return send(css)==null;
     }
 
@@ -517,7 +685,17 @@ public class Worker implements Runnable {
 			while ((cmd.getAction()!=CommandProtocol.ACTION_STOP_SIMULATION) && (started))
 			{
 				cmd = in.take();
-				String ret = cmd.run(network);
+				String ret;
+				if (Manager.CONSERVATIVE && ((cmd.getAction()==CommandProtocol.ACTION_PACKET_ARRIVAL) || (cmd.getAction()==CommandProtocol.ACTION_PACKET_BATCH)))
+				{
+					ret = deliverLater(cmd);
+				}
+				else
+				{
+					ret = cmd.run(network);
+				}
+				// Packets sent while handling the command go out now.
+				connection.flushPackets();
 				if (ret!=null)
 				{
 					if (ret.startsWith(CommandProtocol.OK_PREFIX))
@@ -529,12 +707,16 @@ public class Worker implements Runnable {
 						connection.sendError(cmd.getCmdId(),ret);
 					}
 				}
-				else
+				else if (cmd.isReplyWanted())
 				{
 					if (cmd.getAction()==CommandProtocol.ACTION_PACKET_ARRIVAL)
 					{
 						connection.sendPacketOk(((CommandPacketArrival) cmd).getFromWorker(),cmd.getCmdId());
 					}
+					else if (cmd.getAction()==CommandProtocol.ACTION_PACKET_BATCH)
+					{
+						connection.sendPacketOk(((CommandPacketBatch) cmd).getFromWorker(),cmd.getCmdId());
+					}
 					else
 					{
 						connection.sendOk(cmd.getCmdId());
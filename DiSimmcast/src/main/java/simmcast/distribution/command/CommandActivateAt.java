@@ -24,15 +24,32 @@ public class CommandActivateAt extends CommandProtocol {
 		}
 	}
 
+	public CommandActivateAt(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		time = in.readDouble();
+		pid = in.readVarInt();
+	}
+
 	public CommandActivateAt(double time, int pid)
 	{
-		super(0, CommandProtocol.getNextCmdId(), ACTION_ACTIVATE_AT, "");
+		super(0, CommandProtocol.getNextCmdId(), ACTION_ACTIVATE_AT, null);
 		this.time = time;
 		this.pid = pid;
+	}
+
+	protected String formatParameters()
+	{
 /*		JsonObject gson = new JsonObject();
 		gson.addProperty(TIME, time);
 		gson.addProperty(PID, pid);*/
-		parameters = "{time:" + time + ",pid:" + pid + "}";//gson.toString();
+		return "{time:" + time + ",pid:" + pid + "}";//gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeDouble(time);
+		out.writeVarInt(pid);
 	}
 
 	public double getTime()
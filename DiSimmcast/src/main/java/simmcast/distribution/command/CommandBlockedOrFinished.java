@@ -20,13 +20,28 @@ public class CommandBlockedOrFinished extends CommandProtocol {
 		}
 	}
 
+	public CommandBlockedOrFinished(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		networkId = in.readVarInt();
+	}
+
 	public CommandBlockedOrFinished(int mNetworkId)
 	{
-		super(0, CommandProtocol.getNextCmdId(), ACTION_BLOCKED_FINISHED, "");
+		super(0, CommandProtocol.getNextCmdId(), ACTION_BLOCKED_FINISHED, null);
 		networkId = mNetworkId;
+	}
+
+	protected String formatParameters()
+	{
 /*		JsonObject gson = new JsonObject();
 		gson.addProperty(NETWORK_ID, networkId);*/
-		parameters = "{netId:" + networkId + "}"; //gson.toString();
+		return "{netId:" + networkId + "}"; //gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeVarInt(networkId);
 	}
 
 	public int getNetworkId()
@@ -0,0 +1,147 @@
+package simmcast.distribution.command;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The wire format of the commands. Every command is framed as its
+ * command id, its action and the length of its body; the command id
+ * is negated when the sender does not wait for the OK. In the binary
+ * format (the default) the body holds the fields the command encodes
+ * itself, and the command is rebuilt by a plain switch on the action;
+ * setup commands (CREATE, CREATE_OBJECT and INVOKE) and acks carry
+ * their parameter text, as UTF-8.
+ * <p>
+ * Setting the "simmcast.wire" system property to "json" restores the
+ * JSON bodies, decoded through createFromAction(). The manager and
+ * every worker must use the same format.
+ */
+public class CommandCodec {
+
+	public static final boolean JSON = "json".equals(System.getProperty("simmcast.wire", "binary"));
+
+	private static final String CHARSET = "UTF-8";
+
+	private static final ThreadLocal<WireOutput> buffers = new ThreadLocal<WireOutput>() {
+		protected WireOutput initialValue() {
+			return new WireOutput();
+		}
+	};
+
+	/**
+	 * Frames and writes a command. The body is encoded before the
+	 * stream lock is taken.
+	 *
+	 * @param os The stream, also used as the lock of the frame.
+	 * @param cp The command.
+	 * @param flush Whether to flush the stream after the frame.
+	 */
+	public static void write(DataOutputStream os, CommandProtocol cp, boolean flush) throws IOException
+	{
+		int cmdId = (cp.isReplyWanted()) ? cp.getCmdId() : -cp.getCmdId();
+		if (JSON)
+		{
+			byte[] body = cp.getParameters().getBytes(CHARSET);
+			synchronized (os)
+			{
+				os.writeInt(cmdId);
+				os.writeByte(cp.getAction());
+				os.writeInt(body.length);
+				os.write(body);
+				if (flush)
+				{
+					os.flush();
+				}
+			}
+			return;
+		}
+		WireOutput out = buffers.get();
+		out.reset();
+		cp.encode(out);
+		synchronized (os)
+		{
+			os.writeInt(cmdId);
+			os.writeByte(cp.getAction());
+			os.writeInt(out.size());
+			out.writeTo(os);
+			if (flush)
+			{
+				os.flush();
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds a command from its frame.
+	 *
+	 * @param workerId The id of the connection it arrived on.
+	 * @param cmdId The command id of the frame.
+	 * @param action The action of the frame.
+	 * @param body The body of the frame.
+	 * @return The command, or null if the action is unknown.
+	 */
+	public static CommandProtocol decode(int workerId, int cmdId, byte action, byte[] body)
+	{
+		CommandProtocol cp = decodeBody(workerId, Math.abs(cmdId), action, body);
+		if ((cp!=null) && (cmdId<0))
+		{
+			cp.setReplyWanted(false);
+		}
+		return cp;
+	}
+
+	private static CommandProtocol decodeBody(int workerId, int cmdId, byte action, byte[] body)
+	{
+		if (JSON)
+		{
+			return CommandProtocol.createFromAction(workerId, cmdId, action, text(body));
+		}
+		WireInput in = new WireInput(body);
+		switch (action)
+		{
+		case CommandProtocol.ACTION_START_SIMULATION:
+			return new CommandStartSimulation(cmdId, action, in.readString());
+		case CommandProtocol.ACTION_STOP_SIMULATION:
+			return new CommandStopSimulation(workerId, cmdId, action, in.readString());
+		case CommandProtocol.ACTION_ADD_TO_POOL:
+			return new CommandAddToPool(workerId, cmdId, action, in.readString());
+		case CommandProtocol.ACTION_REMOVE_FROM_POOL:
+			return new CommandRemoveFromPool(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_ACTIVATE_AT:
+			return new CommandActivateAt(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_RESUME_PROCESS:
+			return new CommandResumeProcess(cmdId, action, in);
+		case CommandProtocol.ACTION_BLOCKED_FINISHED:
+			return new CommandBlockedOrFinished(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_TERMINATE_PROCESS:
+			return new CommandTerminateProcess(cmdId, action, in);
+		case CommandProtocol.ACTION_PACKET_ARRIVAL:
+			return new CommandPacketArrival(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_WINDOW_DONE:
+			return new CommandWindowDone(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_OPEN_WINDOW:
+			return new CommandOpenWindow(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_PACKET_BATCH:
+			return new CommandPacketBatch(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_LOAD_REPORT:
+			return new CommandLoadReport(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_CONFIG:
+			return new CommandConfig(workerId, cmdId, action, in);
+		case CommandProtocol.ACTION_OK:
+		case CommandProtocol.ACTION_ERROR:
+			return new CommandProtocol(workerId, cmdId, action, in.readString());
+		default:
+			return CommandProtocol.createFromAction(workerId, cmdId, action, in.readString());
+		}
+	}
+
+	private static String text(byte[] body)
+	{
+		try {
+			return new String(body, CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			return new String(body);
+		}
+	}
+}
@@ -0,0 +1,334 @@
+package simmcast.distribution.command;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import simmcast.network.NetworkPacket;
+import simmcast.network.Packet;
+import simmcast.network.PacketType;
+import simmcast.network.TransportPacket;
+
+/**
+ * Round-trips a sample of every command type through the binary wire
+ * format, checks that each comes back equal to the original, field by
+ * field, and compares the time taken and the size of the bodies with
+ * the JSON format. Commands the JSON format does not bring back equal
+ * are marked in the report. The payloads are checked alone
+ * and inside a packet arrival. Applications with payloads of their own
+ * call run() with samples of them, after registering their codecs.
+ * <p>
+ * Must run with the binary wire format (simmcast.wire unset).
+ * <p>
+ * Usage: CommandCodecBenchmark [rounds]
+ */
+public class CommandCodecBenchmark {
+
+	private static int rounds = 100000;
+
+	/**
+	 * Fields that are not meant to survive the trip: the sequence
+	 * number is assigned by the receiving side, the others are local
+	 * state.
+	 */
+	private static final String[] IGNORED = {
+		"simmcast.network.Packet.seq",
+		"simmcast.network.Packet.recyclable",
+		"simmcast.network.Packet.released",
+		"simmcast.network.Packet.releasedAt",
+		"simmcast.network.Queueable.queued",
+		"simmcast.distribution.command.CommandProtocol.parameters"
+	};
+
+	private static final PacketType TYPE = new PacketType("DATA");
+
+	public static void main(String[] args)
+	{
+		if (args.length > 0)
+		{
+			rounds = Integer.parseInt(args[0]);
+		}
+		run(new Object[] { Integer.valueOf(-42), "d\u00e1t\u00e4 \u20ac", Double.valueOf(0.1), Character.valueOf('x') });
+	}
+
+	/**
+	 * Checks and times every command type, then the given payloads.
+	 *
+	 * @param payloads Samples of the payloads to check, carried alone
+	 * and as the data of a packet.
+	 * @throws IllegalStateException If a command or a payload does not
+	 * come back equal.
+	 */
+	public static void run(Object[] payloads)
+	{
+		if (CommandCodec.JSON)
+		{
+			throw new IllegalStateException("simmcast.wire must be unset");
+		}
+		List<CommandProtocol> commands = commands();
+		for (int i = 0; i < payloads.length; i++)
+		{
+			checkPayload(payloads[i]);
+			commands.add(new CommandPacketArrival("worker0", 2.5, new Packet(3, 4, TYPE, 100, payloads[i]), true));
+		}
+		for (int i = 0; i < commands.size(); i++)
+		{
+			CommandProtocol cp = commands.get(i);
+			CommandProtocol binary = CommandCodec.decode(0, cp.getCmdId(), cp.getAction(), encode(cp));
+			if (!same(cp, binary))
+			{
+				throw new IllegalStateException(name(cp) + " differs after the binary round trip");
+			}
+			// Warms up both formats before anything is timed.
+			timeBinary(cp);
+			timeJson(cp);
+		}
+		System.out.println("command                   binary (B)   json (B)  binary (ns)  json (ns)");
+		for (int i = 0; i < commands.size(); i++)
+		{
+			CommandProtocol cp = commands.get(i);
+			CommandProtocol json = CommandProtocol.createFromAction(0, cp.getCmdId(), cp.getAction(), cp.getParameters());
+			String mark = same(cp, json) ? "" : "  json loses fields";
+			long binaryTime = timeBinary(cp);
+			long jsonTime = timeJson(cp);
+			System.out.println(String.format("%-24s %12d %10d %12.1f %10.1f%s", name(cp), encode(cp).length,
+				utf8(cp.getParameters()).length, (double) binaryTime / rounds, (double) jsonTime / rounds, mark));
+		}
+		System.out.println("All commands and payloads came back equal.");
+	}
+
+	private static List<CommandProtocol> commands()
+	{
+		List<CommandProtocol> commands = new ArrayList<CommandProtocol>();
+		commands.add(new CommandCreate(7, "node7", "simmcast.node.Node", new String[] { "1", "a b" }));
+		commands.add(new CommandCreateObject("stream", "simmcast.stream.ConstantStream", new String[] { "10.0" }));
+		commands.add(new CommandInvoke("node7", "setName", new String[] { "\"n\u00f3 7\"" }));
+		commands.add(new CommandInvoke(7, "addPath", new String[] { "8", "0.5" }));
+		commands.add(new CommandStartSimulation());
+		commands.add(new CommandStopSimulation());
+		commands.add(new CommandAddToPool());
+		commands.add(new CommandRemoveFromPool(12));
+		commands.add(new CommandActivateAt(1234.5678, 12));
+		commands.add(new CommandResumeProcess(12, 1234.5678));
+		commands.add(new CommandBlockedOrFinished(12));
+		commands.add(new CommandTerminateProcess(12));
+		commands.add(new CommandPacketArrival("worker1", 0.25, new Packet(1, 2, TYPE, 64, Integer.valueOf(5))));
+		commands.add(new CommandWindowDone(10.5, 9.25, new double[] { 0.5, Double.MAX_VALUE }));
+		commands.add(new CommandWindowDone(10.5, 9.25, null));
+		commands.add(new CommandOpenWindow(10.0, 10.5));
+		CommandPacketBatch batch = new CommandPacketBatch("worker1");
+		batch.add(3.0, new Packet(1, 2, TYPE, 64, "hello"), true);
+		batch.add(0.5, new TransportPacket(1, 2, 80, TYPE, 64, Long.valueOf(1L << 40)), false);
+		batch.add(0.5, new NetworkPacket(1, 2, 84, new Packet(1, 2, TYPE, 64, Boolean.TRUE), 16), false);
+		commands.add(batch);
+		CommandLoadReport report = new CommandLoadReport();
+		report.addNode("node7", 1500);
+		report.addNode("node8", 3);
+		report.addPath("node7 node8", 200);
+		commands.add(report);
+		Map<String, Object> values = new HashMap<String, Object>();
+		values.put("WHN", Integer.valueOf(25));
+		values.put("simulationEnd", Double.valueOf(600.5));
+		values.put("label", "c\u00e9lula");
+		values.put("mark", Character.valueOf('M'));
+		values.put("unset", null);
+		commands.add(new CommandConfig(3, true, values));
+		commands.add(new CommandProtocol(0, 99, CommandProtocol.ACTION_OK, CommandProtocol.OK_PREFIX + "99"));
+		commands.add(new CommandProtocol(0, 100, CommandProtocol.ACTION_ERROR, "no such node"));
+		return commands;
+	}
+
+	/**
+	 * Round-trips a payload alone and as the data of a nested packet.
+	 */
+	private static void checkPayload(Object payload)
+	{
+		Object[] samples = { payload, new Packet(5, 6, TYPE, 10, new Packet(3, 4, TYPE, 100, payload)) };
+		for (int i = 0; i < samples.length; i++)
+		{
+			WireOutput out = new WireOutput();
+			out.writeObject(samples[i]);
+			Object back = new WireInput(out.toByteArray()).readObject();
+			if (!same(samples[i], back))
+			{
+				throw new IllegalStateException(samples[i].getClass().getName() + " differs after the binary round trip");
+			}
+		}
+	}
+
+	private static long timeBinary(CommandProtocol cp)
+	{
+		WireOutput out = new WireOutput();
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+		{
+			out.reset();
+			cp.encode(out);
+			CommandCodec.decode(0, cp.getCmdId(), cp.getAction(), out.toByteArray());
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long timeJson(CommandProtocol cp)
+	{
+		// Setup commands format their parameters once, when built.
+		boolean formats = declaresFormat(cp.getClass());
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+		{
+			if (formats)
+			{
+				cp.parameters = null;
+			}
+			byte[] body = utf8(cp.getParameters());
+			CommandProtocol.createFromAction(0, cp.getCmdId(), cp.getAction(), new String(body, 0, body.length, CHARSET));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static final java.nio.charset.Charset CHARSET = java.nio.charset.Charset.forName("UTF-8");
+
+	private static byte[] utf8(String s)
+	{
+		return s.getBytes(CHARSET);
+	}
+
+	private static byte[] encode(CommandProtocol cp)
+	{
+		WireOutput out = new WireOutput();
+		cp.encode(out);
+		return out.toByteArray();
+	}
+
+	private static boolean declaresFormat(Class c)
+	{
+		if (c == CommandProtocol.class)
+		{
+			return false;
+		}
+		try {
+			c.getDeclaredMethod("formatParameters");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static String name(CommandProtocol cp)
+	{
+		String name = cp.getClass().getName();
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+
+	// *****************************************************
+	// COMPARISON
+	// *****************************************************
+
+	/**
+	 * Compares two objects field by field, following collections,
+	 * maps and arrays.
+	 */
+	static boolean same(Object a, Object b)
+	{
+		if (a == b)
+		{
+			return true;
+		}
+		if ((a == null) || (b == null) || (a.getClass() != b.getClass()))
+		{
+			return false;
+		}
+		if ((a instanceof Number) || (a instanceof String) || (a instanceof Boolean) || (a instanceof Character))
+		{
+			return a.equals(b);
+		}
+		if (a.getClass().isArray())
+		{
+			int length = Array.getLength(a);
+			if (length != Array.getLength(b))
+			{
+				return false;
+			}
+			for (int i = 0; i < length; i++)
+			{
+				if (!same(Array.get(a, i), Array.get(b, i)))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		if (a instanceof List)
+		{
+			List la = (List) a;
+			List lb = (List) b;
+			if (la.size() != lb.size())
+			{
+				return false;
+			}
+			for (int i = 0; i < la.size(); i++)
+			{
+				if (!same(la.get(i), lb.get(i)))
+				{
+					return false;
+				}
+			}
+		}
+		else if (a instanceof Map)
+		{
+			Map ma = (Map) a;
+			Map mb = (Map) b;
+			if (ma.size() != mb.size())
+			{
+				return false;
+			}
+			for (Iterator it = ma.entrySet().iterator(); it.hasNext();)
+			{
+				Map.Entry e = (Map.Entry) it.next();
+				if (!mb.containsKey(e.getKey()) || !same(e.getValue(), mb.get(e.getKey())))
+				{
+					return false;
+				}
+			}
+		}
+		for (Class c = a.getClass(); (c != null) && !c.getName().startsWith("java."); c = c.getSuperclass())
+		{
+			Field[] fields = c.getDeclaredFields();
+			for (int i = 0; i < fields.length; i++)
+			{
+				if (Modifier.isStatic(fields[i].getModifiers()) || ignored(c, fields[i]))
+				{
+					continue;
+				}
+				try {
+					fields[i].setAccessible(true);
+					if (!same(fields[i].get(a), fields[i].get(b)))
+					{
+						return false;
+					}
+				} catch (IllegalAccessException e) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean ignored(Class c, Field f)
+	{
+		String name = c.getName() + "." + f.getName();
+		for (int i = 0; i < IGNORED.length; i++)
+		{
+			if (IGNORED[i].equals(name))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
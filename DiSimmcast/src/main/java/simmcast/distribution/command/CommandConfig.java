@@ -0,0 +1,123 @@
+package simmcast.distribution.command;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import simmcast.network.Network;
+
+/**
+ * Posted by the manager to every worker with the cacheable fields of
+ * the Network: all of them before the simulation starts, then the ones
+ * that changed, each time with a new version.
+ *
+ * @see simmcast.network.ConfigSnapshot
+ */
+public class CommandConfig extends CommandProtocol {
+
+	public final static String VERSION = "version";
+	public final static String FULL = "full";
+	public final static String NAMES = "names";
+	public final static String CLASSES = "classes";
+	public final static String VALUES = "values";
+
+	private int version;
+	private boolean full;
+	private HashMap<String, Object> values;
+
+	public CommandConfig(int mWorkerId, int mCmdId, byte mAction, String mParameter)
+	{
+		super(mWorkerId, mCmdId, mAction, mParameter);
+		values = new HashMap<String, Object>();
+		JsonObject jo = getJsonParameters();
+		if (jo!=null)
+		{
+			version = jo.get(VERSION).getAsInt();
+			full = jo.get(FULL).getAsBoolean();
+			JsonArray jn = jo.get(NAMES).getAsJsonArray();
+			JsonArray jc = jo.get(CLASSES).getAsJsonArray();
+			JsonArray jv = jo.get(VALUES).getAsJsonArray();
+			for (int i=0;i<jn.size();i++)
+			{
+				Object value = null;
+				if (!jc.get(i).isJsonNull())
+				{
+					String className = jc.get(i).getAsString();
+					String text = jv.get(i).getAsString();
+					value = (className.equals(Character.class.getName())) ? Character.valueOf(text.charAt(0)) : PayloadRegistry.fromText(className, text);
+				}
+				values.put(jn.get(i).getAsString(), value);
+			}
+		}
+	}
+
+	public CommandConfig(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		values = new HashMap<String, Object>();
+		version = in.readVarInt();
+		full = in.readBoolean();
+		int count = in.readVarInt();
+		for (int i=0;i<count;i++)
+		{
+			String name = in.readString();
+			values.put(name, in.readObject());
+		}
+	}
+
+	/**
+	 * @param mFull Whether the values are all the fields, or only the
+	 * ones that changed since the previous version.
+	 */
+	public CommandConfig(int mVersion, boolean mFull, Map<String, Object> mValues)
+	{
+		super(0, CommandProtocol.getNextCmdId(), ACTION_CONFIG, null);
+		version = mVersion;
+		full = mFull;
+		values = new HashMap<String, Object>(mValues);
+	}
+
+	protected String formatParameters()
+	{
+		JsonObject gson = new JsonObject();
+		gson.addProperty(VERSION, version);
+		gson.addProperty(FULL, full);
+		JsonArray jn = new JsonArray();
+		JsonArray jc = new JsonArray();
+		JsonArray jv = new JsonArray();
+		for (Iterator<Map.Entry<String, Object>> it = values.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<String, Object> e = it.next();
+			jn.add(new JsonPrimitive(e.getKey()));
+			jc.add((e.getValue()==null) ? null : new JsonPrimitive(e.getValue().getClass().getName()));
+			jv.add((e.getValue()==null) ? null : new JsonPrimitive(e.getValue().toString()));
+		}
+		gson.add(NAMES, jn);
+		gson.add(CLASSES, jc);
+		gson.add(VALUES, jv);
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeVarInt(version);
+		out.writeBoolean(full);
+		out.writeVarInt(values.size());
+		for (Iterator<Map.Entry<String, Object>> it = values.entrySet().iterator(); it.hasNext();)
+		{
+			Map.Entry<String, Object> e = it.next();
+			out.writeString(e.getKey());
+			out.writeObject(e.getValue());
+		}
+	}
+
+	public String run(Network network)
+	{
+		network.applyConfig(version, full, values);
+		return null;
+	}
+}
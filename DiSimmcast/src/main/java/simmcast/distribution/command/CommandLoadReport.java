@@ -0,0 +1,165 @@
+package simmcast.distribution.command;
+
+import java.util.ArrayList;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import simmcast.network.Network;
+
+/**
+ * Posted by a worker from time to time with the load of its nodes:
+ * the events each one handled and the packets sent over each of its
+ * paths, counted since the simulation started.
+ */
+public class CommandLoadReport extends CommandProtocol {
+
+	public final static String NODES = "nodes";
+	public final static String EVENTS = "events";
+	public final static String PATHS = "paths";
+	public final static String PACKETS = "packets";
+
+	private ArrayList<String> nodes;
+	private ArrayList<Long> events;
+	private ArrayList<String> paths;
+	private ArrayList<Long> packets;
+
+	public CommandLoadReport(int mWorkerId, int mCmdId, byte mAction, String mParameter)
+	{
+		super(mWorkerId, mCmdId, mAction, mParameter);
+		init();
+		JsonObject jo = getJsonParameters();
+		if (jo!=null)
+		{
+			JsonArray jn = jo.get(NODES).getAsJsonArray();
+			JsonArray je = jo.get(EVENTS).getAsJsonArray();
+			for (int i=0;i<jn.size();i++)
+			{
+				nodes.add(jn.get(i).getAsString());
+				events.add(je.get(i).getAsLong());
+			}
+			JsonArray jp = jo.get(PATHS).getAsJsonArray();
+			JsonArray jk = jo.get(PACKETS).getAsJsonArray();
+			for (int i=0;i<jp.size();i++)
+			{
+				paths.add(jp.get(i).getAsString());
+				packets.add(jk.get(i).getAsLong());
+			}
+		}
+	}
+
+	public CommandLoadReport(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		init();
+		int count = in.readVarInt();
+		for (int i=0;i<count;i++)
+		{
+			nodes.add(in.readString());
+			events.add(in.readVarLong());
+		}
+		count = in.readVarInt();
+		for (int i=0;i<count;i++)
+		{
+			paths.add(in.readString());
+			packets.add(in.readVarLong());
+		}
+	}
+
+	public CommandLoadReport()
+	{
+		super(0, CommandProtocol.getNextCmdId(), ACTION_LOAD_REPORT, null);
+		init();
+	}
+
+	private void init()
+	{
+		nodes = new ArrayList<String>();
+		events = new ArrayList<Long>();
+		paths = new ArrayList<String>();
+		packets = new ArrayList<Long>();
+	}
+
+	public void addNode(String mLabel, long mEvents)
+	{
+		nodes.add(mLabel);
+		events.add(mEvents);
+	}
+
+	/**
+	 * @param mPath The labels of the source and of the destination of
+	 * the path, separated by a space.
+	 */
+	public void addPath(String mPath, long mPackets)
+	{
+		paths.add(mPath);
+		packets.add(mPackets);
+	}
+
+	protected String formatParameters()
+	{
+		JsonObject gson = new JsonObject();
+		JsonArray jn = new JsonArray();
+		JsonArray je = new JsonArray();
+		for (int i=0;i<nodes.size();i++)
+		{
+			jn.add(new JsonPrimitive(nodes.get(i)));
+			je.add(new JsonPrimitive(events.get(i)));
+		}
+		gson.add(NODES, jn);
+		gson.add(EVENTS, je);
+		JsonArray jp = new JsonArray();
+		JsonArray jk = new JsonArray();
+		for (int i=0;i<paths.size();i++)
+		{
+			jp.add(new JsonPrimitive(paths.get(i)));
+			jk.add(new JsonPrimitive(packets.get(i)));
+		}
+		gson.add(PATHS, jp);
+		gson.add(PACKETS, jk);
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeVarInt(nodes.size());
+		for (int i=0;i<nodes.size();i++)
+		{
+			out.writeString(nodes.get(i));
+			out.writeVarLong(events.get(i));
+		}
+		out.writeVarInt(paths.size());
+		for (int i=0;i<paths.size();i++)
+		{
+			out.writeString(paths.get(i));
+			out.writeVarLong(packets.get(i));
+		}
+	}
+
+	public ArrayList<String> getNodes()
+	{
+		return nodes;
+	}
+
+	public ArrayList<Long> getEvents()
+	{
+		return events;
+	}
+
+	public ArrayList<String> getPaths()
+	{
+		return paths;
+	}
+
+	public ArrayList<Long> getPackets()
+	{
+		return packets;
+	}
+
+	public String run(Network network)
+	{
+		network.getManager().loadReported(getWorkerId(), this);
+		return null;
+	}
+}
@@ -0,0 +1,74 @@
+package simmcast.distribution.command;
+
+import com.google.gson.JsonObject;
+
+import simmcast.engine.ConservativeScheduler;
+import simmcast.network.Network;
+
+/**
+ * Sent by the manager in the conservative mode to let a worker
+ * execute its events up to the end of a new window.
+ */
+public class CommandOpenWindow extends CommandProtocol {
+
+	public final static String START = "start";
+	public final static String END = "end";
+
+	private double start;
+	private double end;
+
+	public CommandOpenWindow(int mWorkerId, int mCmdId, byte mAction, String mParameter)
+	{
+		super(mWorkerId, mCmdId, mAction, mParameter);
+		JsonObject jo = getJsonParameters();
+		if (jo!=null)
+		{
+			start = jo.get(START).getAsDouble();
+			end = jo.get(END).getAsDouble();
+		}
+	}
+
+	public CommandOpenWindow(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		start = in.readDouble();
+		end = in.readDouble();
+	}
+
+	public CommandOpenWindow(double mStart, double mEnd)
+	{
+		super(0, CommandProtocol.getNextCmdId(), ACTION_OPEN_WINDOW, null);
+		start = mStart;
+		end = mEnd;
+	}
+
+	protected String formatParameters()
+	{
+		JsonObject gson = new JsonObject();
+		gson.addProperty(START, start);
+		gson.addProperty(END, end);
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeDouble(start);
+		out.writeDouble(end);
+	}
+
+	public double getStart()
+	{
+		return start;
+	}
+
+	public double getEnd()
+	{
+		return end;
+	}
+
+	public String run(Network network)
+	{
+		((ConservativeScheduler) network.getSimulationScheduler()).openWindow(start, end);
+		return null;
+	}
+}
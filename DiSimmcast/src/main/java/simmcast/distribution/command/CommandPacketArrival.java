@@ -20,11 +20,18 @@ public class CommandPacketArrival extends CommandProtocol {
 	public final static String RELATIVE_TIME = "rtime";
 	public final static String PACKET = "packet";
 	public final static String PACKET_CLASS = "packet_class";
+	public final static String ABSOLUTE = "abs";
 
 	String fromWorker;
 	double relativeTime;
 	Packet packet;
 
+	/**
+	 * Whether relativeTime holds an absolute arrival time
+	 * (conservative mode).
+	 */
+	boolean absolute;
+
 	public CommandPacketArrival(int mWorkerId, int mCmdId, byte mAction, String mParameter)
 	{
 		super(mWorkerId, mCmdId, mAction, mParameter);
@@ -33,6 +40,7 @@ public class CommandPacketArrival extends CommandProtocol {
 		{
 			fromWorker = jo.get(FROM_WORKER).getAsString();
 			relativeTime = jo.get(RELATIVE_TIME).getAsDouble();
+			absolute = jo.has(ABSOLUTE) && jo.get(ABSOLUTE).getAsBoolean();
 			try {
 				JsonObject po = new JsonParser().parse(jo.get(PACKET).getAsString()).getAsJsonObject();
 				String className = jo.get(PACKET_CLASS).getAsString();
@@ -61,18 +69,61 @@ public class CommandPacketArrival extends CommandProtocol {
 		}
 	}
 
+	public CommandPacketArrival(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		fromWorker = in.readString();
+		relativeTime = in.readDouble();
+		absolute = in.readBoolean();
+		packet = (Packet) in.readObject();
+	}
+
 	public CommandPacketArrival(String mFromWorker, double mRelativeTime, Packet mPacket)
 	{
-		super(0, CommandProtocol.getNextCmdId(), ACTION_PACKET_ARRIVAL, "");
+		this(mFromWorker, mRelativeTime, mPacket, false);
+	}
+
+	public CommandPacketArrival(String mFromWorker, double mTime, Packet mPacket, boolean mAbsolute)
+	{
+		super(0, CommandProtocol.getNextCmdId(), ACTION_PACKET_ARRIVAL, null);
+		fromWorker = mFromWorker;
+		relativeTime = mTime;
+		packet = mPacket;
+		absolute = mAbsolute;
+	}
+
+	/**
+	 * A packet of a CommandPacketBatch, which carries the command id.
+	 */
+	CommandPacketArrival(int mCmdId, String mFromWorker, double mTime, Packet mPacket, boolean mAbsolute)
+	{
+		super(0, mCmdId, ACTION_PACKET_ARRIVAL, null);
 		fromWorker = mFromWorker;
-		relativeTime = mRelativeTime;
+		relativeTime = mTime;
 		packet = mPacket;
+		absolute = mAbsolute;
+	}
+
+	protected String formatParameters()
+	{
 		JsonObject gson = new JsonObject();
 		gson.addProperty(FROM_WORKER, fromWorker);
 		gson.addProperty(RELATIVE_TIME, relativeTime);
+		if (absolute)
+		{
+			gson.addProperty(ABSOLUTE, true);
+		}
 		gson.addProperty(PACKET, packet.getConstructorParameters());
 		gson.addProperty(PACKET_CLASS, packet.getClass().getName());
-		parameters = gson.toString();
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeString(fromWorker);
+		out.writeDouble(relativeTime);
+		out.writeBoolean(absolute);
+		out.writeObject(packet);
 	}
 
 	public String run(Network network)
@@ -81,7 +132,8 @@ public class CommandPacketArrival extends CommandProtocol {
 		{
 			PathAccountQueue a = new PathAccountQueue();
 			a.enqueue();
-			network.getNodeById(packet.getDestination()).getScheduler().schedulePacketArrival(relativeTime, packet, a);
+			double time = (absolute) ? relativeTime - network.simulationTime() : relativeTime;
+			network.getNodeById(packet.getDestination()).getScheduler().schedulePacketArrival(time, packet, a);
 		}
 		return null;
 	}
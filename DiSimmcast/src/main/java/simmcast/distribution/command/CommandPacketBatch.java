@@ -0,0 +1,116 @@
+package simmcast.distribution.command;
+
+import java.util.ArrayList;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import simmcast.network.Network;
+import simmcast.network.Packet;
+
+/**
+ * The packets a worker sent to another worker during one timestep,
+ * shipped as a single command and acked once. Each packet arrives
+ * as if it had been sent alone, in the order it was added.
+ */
+public class CommandPacketBatch extends CommandProtocol {
+
+	public final static String FROM_WORKER = "worker";
+	public final static String PACKETS = "packets";
+
+	private String fromWorker;
+	private ArrayList<CommandPacketArrival> arrivals;
+
+	public CommandPacketBatch(int mWorkerId, int mCmdId, byte mAction, String mParameter)
+	{
+		super(mWorkerId, mCmdId, mAction, mParameter);
+		arrivals = new ArrayList<CommandPacketArrival>();
+		JsonObject jo = getJsonParameters();
+		if (jo!=null)
+		{
+			fromWorker = jo.get(FROM_WORKER).getAsString();
+			JsonArray ja = jo.get(PACKETS).getAsJsonArray();
+			for (int i=0;i<ja.size();i++)
+			{
+				arrivals.add(new CommandPacketArrival(mWorkerId, mCmdId, ACTION_PACKET_ARRIVAL, ja.get(i).getAsString()));
+			}
+		}
+	}
+
+	public CommandPacketBatch(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		fromWorker = in.readString();
+		int count = in.readVarInt();
+		arrivals = new ArrayList<CommandPacketArrival>(count);
+		for (int i=0;i<count;i++)
+		{
+			double time = in.readDouble();
+			boolean absolute = in.readBoolean();
+			Packet packet = (Packet) in.readObject();
+			arrivals.add(new CommandPacketArrival(mCmdId, fromWorker, time, packet, absolute));
+		}
+	}
+
+	public CommandPacketBatch(String mFromWorker)
+	{
+		super(0, CommandProtocol.getNextCmdId(), ACTION_PACKET_BATCH, null);
+		fromWorker = mFromWorker;
+		arrivals = new ArrayList<CommandPacketArrival>();
+	}
+
+	/**
+	 * Adds a packet, with the same meaning of the time as in
+	 * CommandPacketArrival.
+	 */
+	public void add(double mTime, Packet mPacket, boolean mAbsolute)
+	{
+		arrivals.add(new CommandPacketArrival(cmdId, fromWorker, mTime, mPacket, mAbsolute));
+	}
+
+	public int size()
+	{
+		return arrivals.size();
+	}
+
+	protected String formatParameters()
+	{
+		JsonObject gson = new JsonObject();
+		gson.addProperty(FROM_WORKER, fromWorker);
+		JsonArray ja = new JsonArray();
+		for (int i=0;i<arrivals.size();i++)
+		{
+			ja.add(new JsonPrimitive(arrivals.get(i).getParameters()));
+		}
+		gson.add(PACKETS, ja);
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeString(fromWorker);
+		out.writeVarInt(arrivals.size());
+		for (int i=0;i<arrivals.size();i++)
+		{
+			CommandPacketArrival cpa = arrivals.get(i);
+			out.writeDouble(cpa.relativeTime);
+			out.writeBoolean(cpa.absolute);
+			out.writeObject(cpa.packet);
+		}
+	}
+
+	public String run(Network network)
+	{
+		for (int i=0;i<arrivals.size();i++)
+		{
+			arrivals.get(i).run(network);
+		}
+		return null;
+	}
+
+	public String getFromWorker()
+	{
+		return fromWorker;
+	}
+}
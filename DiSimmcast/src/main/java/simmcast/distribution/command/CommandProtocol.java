@@ -28,11 +28,18 @@ public class CommandProtocol {
 
 	public static final byte ACTION_PACKET_ARRIVAL = 12;
 
+	public static final byte ACTION_WINDOW_DONE = 13;
+	public static final byte ACTION_OPEN_WINDOW = 14;
+
+	public static final byte ACTION_PACKET_BATCH = 15;
+	public static final byte ACTION_LOAD_REPORT = 16;
+	public static final byte ACTION_CONFIG = 17;
+
 	public static final byte ACTION_OK = 100;
 	public static final byte ACTION_ERROR = 101;
 
-	public static final String[] ACTIONS_STRINGS = {"CREATE","CREATE_OBJECT","INVOKE","START_SIMULATION","STOP_SIMULATION","ADD_TO_POOL","REMOVE_FROM_POOL","ACTIVATE_AT","RESUME_PROCESS","BLOCKED_FINISHED","TERMINATE_PROCESS","PACKET_ARRIVAL"};
-	public static final Class[] ACTIONS_CLASSES = {CommandCreate.class,CommandCreateObject.class,CommandInvoke.class,CommandStartSimulation.class,CommandStopSimulation.class,CommandAddToPool.class,CommandRemoveFromPool.class,CommandActivateAt.class,CommandResumeProcess.class,CommandBlockedOrFinished.class,CommandTerminateProcess.class,CommandPacketArrival.class};
+	public static final String[] ACTIONS_STRINGS = {"CREATE","CREATE_OBJECT","INVOKE","START_SIMULATION","STOP_SIMULATION","ADD_TO_POOL","REMOVE_FROM_POOL","ACTIVATE_AT","RESUME_PROCESS","BLOCKED_FINISHED","TERMINATE_PROCESS","PACKET_ARRIVAL","WINDOW_DONE","OPEN_WINDOW","PACKET_BATCH","LOAD_REPORT","CONFIG"};
+	public static final Class[] ACTIONS_CLASSES = {CommandCreate.class,CommandCreateObject.class,CommandInvoke.class,CommandStartSimulation.class,CommandStopSimulation.class,CommandAddToPool.class,CommandRemoveFromPool.class,CommandActivateAt.class,CommandResumeProcess.class,CommandBlockedOrFinished.class,CommandTerminateProcess.class,CommandPacketArrival.class,CommandWindowDone.class,CommandOpenWindow.class,CommandPacketBatch.class,CommandLoadReport.class,CommandConfig.class};
 //	public static final int PARAMETER_SIZE = 32;
 
 	public static final Class[] CONSTRUCTOR_FULL = {int.class,int.class,byte.class,String.class};
@@ -45,6 +52,12 @@ public class CommandProtocol {
 	protected byte action;
 	protected String parameters;
 
+	/**
+	 * Whether the sender waits for the OK of this command. Commands
+	 * posted without waiting are only answered when they fail.
+	 */
+	protected boolean replyWanted = true;
+
 	private static int nextCmdId = 1;
 
 	synchronized public static int getNextCmdId()
@@ -75,15 +88,49 @@ public class CommandProtocol {
 		return action;
 	}
 
+	public boolean isReplyWanted()
+	{
+		return replyWanted;
+	}
+
+	public void setReplyWanted(boolean mReplyWanted)
+	{
+		replyWanted = mReplyWanted;
+	}
+
+	/**
+	 * Commands that travel in the binary format leave their parameters
+	 * null and only format them when asked (JSON wire format, logs).
+	 */
 	public String getParameters()
 	{
+		if (parameters == null)
+		{
+			parameters = formatParameters();
+		}
 		return parameters;
 	}
 
+	protected String formatParameters()
+	{
+		return "";
+	}
+
+	/**
+	 * Writes the parameters in the binary wire format. Commands that
+	 * are not encoded field by field travel as their parameter text.
+	 *
+	 * @see CommandCodec
+	 */
+	public void encode(WireOutput out)
+	{
+		out.writeString(getParameters());
+	}
+
 	public JsonObject getJsonParameters()
 	{
 		try {
-			return new JsonParser().parse(parameters).getAsJsonObject();
+			return new JsonParser().parse(getParameters()).getAsJsonObject();
 		} catch (JsonSyntaxException ex)
 		{
 			System.out.println(parameters);
@@ -101,7 +148,7 @@ public class CommandProtocol {
 
 	public String toString()
 	{
-		return ACTIONS_STRINGS[action - 1] + " - " + parameters;
+		return ACTIONS_STRINGS[action - 1] + " - " + getParameters();
 	}
 
 	public static CommandProtocol createFromAction(int workerId, int cmdid, byte action, String parameters)
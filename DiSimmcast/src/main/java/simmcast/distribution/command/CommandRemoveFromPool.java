@@ -23,13 +23,28 @@ public class CommandRemoveFromPool extends CommandProtocol {
 		}
 	}
 
+	public CommandRemoveFromPool(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		networkId = in.readVarInt();
+	}
+
 	public CommandRemoveFromPool(int mNetworkId)
 	{
-		super(0, CommandProtocol.getNextCmdId(), ACTION_REMOVE_FROM_POOL, "");
-		JsonObject gson = new JsonObject();
+		super(0, CommandProtocol.getNextCmdId(), ACTION_REMOVE_FROM_POOL, null);
 		networkId = mNetworkId;
+	}
+
+	protected String formatParameters()
+	{
+		JsonObject gson = new JsonObject();
 		gson.addProperty(NETWORK_ID, networkId);
-		parameters = gson.toString();
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeVarInt(networkId);
 	}
 
 	public String run(Network network)
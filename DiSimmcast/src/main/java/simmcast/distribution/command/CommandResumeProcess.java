@@ -24,15 +24,32 @@ public class CommandResumeProcess extends CommandProtocol {
 		}
 	}
 
+	public CommandResumeProcess(int mCmdId, byte mAction, WireInput in)
+	{
+		super(0, mCmdId, mAction, null);
+		networkId = in.readVarInt();
+		newTime = in.readDouble();
+	}
+
 	public CommandResumeProcess(int mNetworkId, double mNewTime)
 	{
-		super(0, CommandProtocol.getNextCmdId(), ACTION_RESUME_PROCESS, "");
+		super(0, CommandProtocol.getNextCmdId(), ACTION_RESUME_PROCESS, null);
 		networkId = mNetworkId;
 		newTime = mNewTime;
+	}
+
+	protected String formatParameters()
+	{
 		JsonObject gson = new JsonObject();
 		gson.addProperty(NETWORK_ID, networkId);
 		gson.addProperty(NEW_TIME, newTime);
-		parameters = gson.toString();
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeVarInt(networkId);
+		out.writeDouble(newTime);
 	}
 
 	public int getNetworkId()
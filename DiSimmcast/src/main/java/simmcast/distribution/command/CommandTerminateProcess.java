@@ -21,13 +21,28 @@ public class CommandTerminateProcess extends CommandProtocol {
 		}
 	}
 
+	public CommandTerminateProcess(int mCmdId, byte mAction, WireInput in)
+	{
+		super(0, mCmdId, mAction, null);
+		networkId = in.readVarInt();
+	}
+
 	public CommandTerminateProcess(int mNetworkId)
 	{
-		super(0, CommandProtocol.getNextCmdId(), ACTION_TERMINATE_PROCESS, "");
-		JsonObject gson = new JsonObject();
+		super(0, CommandProtocol.getNextCmdId(), ACTION_TERMINATE_PROCESS, null);
 		networkId = mNetworkId;
+	}
+
+	protected String formatParameters()
+	{
+		JsonObject gson = new JsonObject();
 		gson.addProperty(NETWORK_ID, networkId);
-		parameters = gson.toString();
+		return gson.toString();
+	}
+
+	public void encode(WireOutput out)
+	{
+		out.writeVarInt(networkId);
 	}
 
 	public int getNetworkId()
@@ -0,0 +1,128 @@
+package simmcast.distribution.command;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import simmcast.network.Network;
+
+/**
+ * Sent by a worker in the conservative mode when it has no more
+ * events inside its window. The first report of each worker also
+ * carries its lookahead towards every other worker.
+ */
+public class CommandWindowDone extends CommandProtocol {
+
+	public final static String NEXT_TIME = "next";
+	public final static String SENT_TIME = "sent";
+	public final static String LOOKAHEAD = "lookahead";
+
+	private double nextTime;
+	private double sentTime;
+	private double[] lookahead;
+
+	public CommandWindowDone(int mWorkerId, int mCmdId, byte mAction, String mParameter)
+	{
+		super(mWorkerId, mCmdId, mAction, mParameter);
+		JsonObject jo = getJsonParameters();
+		if (jo!=null)
+		{
+			nextTime = jo.get(NEXT_TIME).getAsDouble();
+			sentTime = jo.get(SENT_TIME).getAsDouble();
+			if (jo.has(LOOKAHEAD))
+			{
+				JsonArray ja = jo.get(LOOKAHEAD).getAsJsonArray();
+				lookahead = new double[ja.size()];
+				for (int i=0;i<lookahead.length;i++)
+				{
+					lookahead[i] = ja.get(i).getAsDouble();
+				}
+			}
+		}
+	}
+
+	public CommandWindowDone(int mWorkerId, int mCmdId, byte mAction, WireInput in)
+	{
+		super(mWorkerId, mCmdId, mAction, null);
+		nextTime = in.readDouble();
+		sentTime = in.readDouble();
+		int count = in.readVarInt();
+		if (count >= 0)
+		{
+			lookahead = new double[count];
+			for (int i=0;i<count;i++)
+			{
+				lookahead[i] = in.readDouble();
+			}
+		}
+	}
+
+	/**
+	 * @param mLookahead The minimum delay of the paths towards each
+	 * worker, indexed by worker id, or null if already reported.
+	 */
+	public CommandWindowDone(double mNextTime, double mSentTime, double[] mLookahead)
+	{
+		super(0, CommandProtocol.getNextCmdId(), ACTION_WINDOW_DONE, null);
+		nextTime = mNextTime;
+		sentTime = mSentTime;
+		lookahead = mLookahead;
+	}
+
+	protected String formatParameters()
+	{
+		JsonObject gson = new JsonObject();
+		gson.addProperty(NEXT_TIME, nextTime);
+		gson.addProperty(SENT_TIME, sentTime);
+		if (lookahead!=null)
+		{
+			JsonArray ja = new JsonArray();
+			for (int i=0;i<lookahead.length;i++)
+			{
+				ja.add(new JsonPrimitive(lookahead[i]));
+			}
+			gson.add(LOOKAHEAD, ja);
+		}
+		return gson.toString();
+	}
+
+	/**
+	 * A count of -1 stands for a missing lookahead.
+	 */
+	public void encode(WireOutput out)
+	{
+		out.writeDouble(nextTime);
+		out.writeDouble(sentTime);
+		if (lookahead == null)
+		{
+			out.writeVarInt(-1);
+			return;
+		}
+		out.writeVarInt(lookahead.length);
+		for (int i=0;i<lookahead.length;i++)
+		{
+			out.writeDouble(lookahead[i]);
+		}
+	}
+
+	public double getNextTime()
+	{
+		return nextTime;
+	}
+
+	public double getSentTime()
+	{
+		return sentTime;
+	}
+
+	public double[] getLookahead()
+	{
+		return lookahead;
+	}
+
+	public String run(Network network)
+	{
+		network.getManager().windowDone(getWorkerId(), nextTime, sentTime, lookahead);
+		return null;
+	}
+}
@@ -0,0 +1,14 @@
+package simmcast.distribution.command;
+
+/**
+ * Encodes and decodes the objects of one class for the binary wire
+ * format. Implementations are registered in the PayloadRegistry under
+ * a type id, which must be the same on the manager and on every
+ * worker.
+ */
+public interface PayloadCodec {
+
+	public void write(WireOutput out, Object o);
+
+	public Object read(WireInput in);
+}
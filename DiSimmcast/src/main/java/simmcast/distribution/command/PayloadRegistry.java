@@ -0,0 +1,286 @@
+package simmcast.distribution.command;
+
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import simmcast.distribution.CloneOnWorker;
+import simmcast.network.NetworkPacket;
+import simmcast.network.Packet;
+import simmcast.network.PacketType;
+import simmcast.network.TransportPacket;
+
+/**
+ * Maps the classes carried inside commands (packets and their data)
+ * to type ids and codecs. Objects are written as their type id
+ * followed by whatever their codec writes; lookups go by exact class,
+ * so a subclass needs its own registration.
+ * <p>
+ * Objects of unregistered classes still travel, as their class name
+ * followed by the text of getConstructorParameters() (or toString()),
+ * and are rebuilt through the reflective fromJson lookup used before
+ * the binary format existed. Simulations register their own payload
+ * classes from a static initializer of their Network subclass, with
+ * ids starting at FIRST_USER_TYPE.
+ */
+public class PayloadRegistry {
+
+	public static final int TYPE_NULL = 0;
+	public static final int TYPE_TEXT = 1;
+	public static final int TYPE_STRING = 2;
+	public static final int TYPE_INTEGER = 3;
+	public static final int TYPE_LONG = 4;
+	public static final int TYPE_DOUBLE = 5;
+	public static final int TYPE_FLOAT = 6;
+	public static final int TYPE_BOOLEAN = 7;
+	public static final int TYPE_SHORT = 8;
+	public static final int TYPE_BYTE = 9;
+	public static final int TYPE_CHARACTER = 10;
+	public static final int TYPE_PACKET = 16;
+	public static final int TYPE_TRANSPORT_PACKET = 17;
+	public static final int TYPE_NETWORK_PACKET = 18;
+
+	public static final int FIRST_USER_TYPE = 64;
+
+	/**
+	 * Both tables are replaced, never modified, so that lookups need
+	 * no lock.
+	 */
+	private static volatile HashMap<Class, Integer> ids = new HashMap<Class, Integer>();
+	private static volatile PayloadCodec[] codecs = new PayloadCodec[FIRST_USER_TYPE];
+
+	private static ConcurrentHashMap<String, PacketType> packetTypes = new ConcurrentHashMap<String, PacketType>();
+
+	/**
+	 * Associates a class with a type id.
+	 *
+	 * @param mTypeId The id, unique among all registered classes.
+	 * @param mClass The class whose objects the codec handles.
+	 * @param mCodec The codec.
+	 */
+	public static synchronized void register(int mTypeId, Class mClass, PayloadCodec mCodec)
+	{
+		if (mTypeId <= TYPE_TEXT)
+		{
+			throw new IllegalArgumentException("Reserved type id " + mTypeId);
+		}
+		Integer previous = ids.get(mClass);
+		if ((previous != null) && (previous.intValue() != mTypeId))
+		{
+			throw new IllegalArgumentException(mClass.getName() + " already registered as " + previous);
+		}
+		if ((mTypeId < codecs.length) && (codecs[mTypeId] != null) && (previous == null))
+		{
+			throw new IllegalArgumentException("Type id " + mTypeId + " already in use");
+		}
+		HashMap<Class, Integer> newIds = new HashMap<Class, Integer>(ids);
+		newIds.put(mClass, mTypeId);
+		PayloadCodec[] newCodecs = Arrays.copyOf(codecs, Math.max(codecs.length, mTypeId + 1));
+		newCodecs[mTypeId] = mCodec;
+		codecs = newCodecs;
+		ids = newIds;
+	}
+
+	public static void write(WireOutput out, Object o)
+	{
+		if (o == null)
+		{
+			out.writeVarInt(TYPE_NULL);
+			return;
+		}
+		Integer id = ids.get(o.getClass());
+		if (id != null)
+		{
+			out.writeVarInt(id.intValue());
+			codecs[id.intValue()].write(out, o);
+			return;
+		}
+		out.writeVarInt(TYPE_TEXT);
+		out.writeString(o.getClass().getName());
+		if (o instanceof CloneOnWorker)
+		{
+			out.writeString(((CloneOnWorker) o).getConstructorParameters());
+		}
+		else
+		{
+			out.writeString(o.toString());
+		}
+	}
+
+	public static Object read(WireInput in)
+	{
+		int id = in.readVarInt();
+		if (id == TYPE_NULL)
+		{
+			return null;
+		}
+		if (id == TYPE_TEXT)
+		{
+			String className = in.readString();
+			return fromText(className, in.readString());
+		}
+		PayloadCodec[] table = codecs;
+		if ((id < 0) || (id >= table.length) || (table[id] == null))
+		{
+			throw new IllegalStateException("Unregistered payload type " + id);
+		}
+		return table[id].read(in);
+	}
+
+	/**
+	 * Packet types are compared by name; sharing the instances just
+	 * saves an allocation per packet.
+	 */
+	public static PacketType packetType(String mName)
+	{
+		PacketType pt = packetTypes.get(mName);
+		if (pt == null)
+		{
+			pt = new PacketType(mName);
+			PacketType previous = packetTypes.putIfAbsent(mName, pt);
+			if (previous != null)
+			{
+				pt = previous;
+			}
+		}
+		return pt;
+	}
+
+	/**
+	 * Rebuilds an object of an unregistered class: through its static
+	 * fromJson(JsonObject), if any, or else through a constructor taking
+	 * the text or its JSON parse.
+	 */
+	static Object fromText(String className, String text)
+	{
+		try {
+			Class r = Class.forName(className);
+			try {
+				java.lang.reflect.Method mt = r.getMethod("fromJson", JsonObject.class);
+				Object n = mt.invoke(null, new JsonParser().parse(text).getAsJsonObject());
+				if (n != null)
+				{
+					return n;
+				}
+			} catch (NoSuchMethodException ne)
+			{
+			}
+			Constructor[] c = r.getConstructors();
+			for (int i=0;i<c.length;i++)
+			{
+				Class[] pt = c[i].getParameterTypes();
+				if (pt.length==1)
+				{
+					if (pt[0].equals(String.class))
+					{
+						return c[i].newInstance(text);
+					}
+					if (pt[0].equals(JsonObject.class))
+					{
+						return c[i].newInstance(new JsonParser().parse(text).getAsJsonObject());
+					}
+				}
+			}
+			System.out.println("Unrecognized class: " + className);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	static {
+		register(TYPE_STRING, String.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeString((String) o); }
+			public Object read(WireInput in) { return in.readString(); }
+		});
+		register(TYPE_INTEGER, Integer.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeVarInt(((Integer) o).intValue()); }
+			public Object read(WireInput in) { return Integer.valueOf(in.readVarInt()); }
+		});
+		register(TYPE_LONG, Long.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeVarLong(((Long) o).longValue()); }
+			public Object read(WireInput in) { return Long.valueOf(in.readVarLong()); }
+		});
+		register(TYPE_DOUBLE, Double.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeDouble(((Double) o).doubleValue()); }
+			public Object read(WireInput in) { return Double.valueOf(in.readDouble()); }
+		});
+		register(TYPE_FLOAT, Float.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeDouble(((Float) o).floatValue()); }
+			public Object read(WireInput in) { return Float.valueOf((float) in.readDouble()); }
+		});
+		register(TYPE_BOOLEAN, Boolean.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeBoolean(((Boolean) o).booleanValue()); }
+			public Object read(WireInput in) { return Boolean.valueOf(in.readBoolean()); }
+		});
+		register(TYPE_SHORT, Short.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeVarInt(((Short) o).shortValue()); }
+			public Object read(WireInput in) { return Short.valueOf((short) in.readVarInt()); }
+		});
+		register(TYPE_BYTE, Byte.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeByte(((Byte) o).byteValue()); }
+			public Object read(WireInput in) { return Byte.valueOf((byte) in.readByte()); }
+		});
+		register(TYPE_CHARACTER, Character.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) { out.writeVarInt(((Character) o).charValue()); }
+			public Object read(WireInput in) { return Character.valueOf((char) in.readVarInt()); }
+		});
+		register(TYPE_PACKET, Packet.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) {
+				Packet p = (Packet) o;
+				out.writeVarInt(p.getSource());
+				out.writeVarInt(p.getDestination());
+				out.writeString(p.getType().toString());
+				out.writeVarInt(p.getSize());
+				out.writeObject(p.getData());
+			}
+			public Object read(WireInput in) {
+				int from = in.readVarInt();
+				int to = in.readVarInt();
+				PacketType type = packetType(in.readString());
+				int size = in.readVarInt();
+				return Packet.obtain(from, to, type, size, in.readObject());
+			}
+		});
+		register(TYPE_TRANSPORT_PACKET, TransportPacket.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) {
+				TransportPacket p = (TransportPacket) o;
+				out.writeVarInt(p.getSource());
+				out.writeVarInt(p.getDestination());
+				out.writeVarInt(p.getPort());
+				out.writeString(p.getType().toString());
+				out.writeVarInt(p.getSize());
+				out.writeObject(p.getData());
+			}
+			public Object read(WireInput in) {
+				int from = in.readVarInt();
+				int to = in.readVarInt();
+				int port = in.readVarInt();
+				PacketType type = packetType(in.readString());
+				int size = in.readVarInt();
+				return new TransportPacket(from, to, port, type, size, in.readObject());
+			}
+		});
+		register(TYPE_NETWORK_PACKET, NetworkPacket.class, new PayloadCodec() {
+			public void write(WireOutput out, Object o) {
+				NetworkPacket p = (NetworkPacket) o;
+				out.writeVarInt(p.getSource());
+				out.writeVarInt(p.getDestination());
+				out.writeVarInt(p.getSize());
+				out.writeVarInt(p.getTTL());
+				out.writeObject(p.getData());
+			}
+			public Object read(WireInput in) {
+				int from = in.readVarInt();
+				int to = in.readVarInt();
+				int size = in.readVarInt();
+				int ttl = in.readVarInt();
+				return new NetworkPacket(from, to, size, (CloneOnWorker) in.readObject(), ttl);
+			}
+		});
+	}
+}
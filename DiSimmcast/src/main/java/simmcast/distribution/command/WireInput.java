@@ -0,0 +1,116 @@
+package simmcast.distribution.command;
+
+/**
+ * Reads back what a WireOutput wrote.
+ */
+public class WireInput {
+
+	private byte[] buf;
+	private int pos;
+	private int limit;
+
+	public WireInput(byte[] mBuf)
+	{
+		this(mBuf, 0, mBuf.length);
+	}
+
+	public WireInput(byte[] mBuf, int mOffset, int mLength)
+	{
+		buf = mBuf;
+		pos = mOffset;
+		limit = mOffset + mLength;
+	}
+
+	public int remaining()
+	{
+		return limit - pos;
+	}
+
+	public int readByte()
+	{
+		if (pos >= limit)
+		{
+			throw new IllegalStateException("Read past the end of the command");
+		}
+		return buf[pos++];
+	}
+
+	public boolean readBoolean()
+	{
+		return readByte() != 0;
+	}
+
+	public int readVarInt()
+	{
+		return (int) readVarLong();
+	}
+
+	public long readVarLong()
+	{
+		long zz = 0;
+		int shift = 0;
+		int b;
+		do
+		{
+			b = readByte();
+			zz |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (zz >>> 1) ^ -(zz & 1);
+	}
+
+	public double readDouble()
+	{
+		if (limit - pos < 8)
+		{
+			throw new IllegalStateException("Read past the end of the command");
+		}
+		long bits = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			bits = (bits << 8) | (buf[pos++] & 0xFF);
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	public String readString()
+	{
+		int bytes = readVarInt() - 1;
+		if (bytes < 0)
+		{
+			return null;
+		}
+		if (limit - pos < bytes)
+		{
+			throw new IllegalStateException("Read past the end of the command");
+		}
+		char[] chars = new char[bytes];
+		int len = 0;
+		int end = pos + bytes;
+		while (pos < end)
+		{
+			int b = buf[pos++] & 0xFF;
+			if (b < 0x80)
+			{
+				chars[len++] = (char) b;
+			}
+			else if (b < 0xE0)
+			{
+				chars[len++] = (char) (((b & 0x1F) << 6) | (buf[pos++] & 0x3F));
+			}
+			else
+			{
+				chars[len++] = (char) (((b & 0x0F) << 12) | ((buf[pos++] & 0x3F) << 6) | (buf[pos++] & 0x3F));
+			}
+		}
+		return new String(chars, 0, len);
+	}
+
+	/**
+	 * @see PayloadRegistry
+	 */
+	public Object readObject()
+	{
+		return PayloadRegistry.read(this);
+	}
+}
@@ -0,0 +1,148 @@
+package simmcast.distribution.command;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that commands and payloads are encoded into.
+ * Integers are written as zigzag varints, doubles as their eight raw
+ * bytes and strings as UTF-8 (so, unlike writeBytes, no character is
+ * truncated).
+ */
+public class WireOutput {
+
+	private byte[] buf;
+	private int size;
+
+	public WireOutput()
+	{
+		this(256);
+	}
+
+	public WireOutput(int mCapacity)
+	{
+		buf = new byte[mCapacity];
+		size = 0;
+	}
+
+	public void reset()
+	{
+		size = 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(buf, size);
+	}
+
+	public void writeTo(DataOutputStream os) throws IOException
+	{
+		os.write(buf, 0, size);
+	}
+
+	private void ensure(int extra)
+	{
+		if (size + extra > buf.length)
+		{
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+		}
+	}
+
+	public void writeByte(int b)
+	{
+		ensure(1);
+		buf[size++] = (byte) b;
+	}
+
+	public void writeBoolean(boolean b)
+	{
+		writeByte(b ? 1 : 0);
+	}
+
+	public void writeVarInt(int v)
+	{
+		writeVarLong(v);
+	}
+
+	public void writeVarLong(long v)
+	{
+		long zz = (v << 1) ^ (v >> 63);
+		ensure(10);
+		while ((zz & ~0x7FL) != 0)
+		{
+			buf[size++] = (byte) ((zz & 0x7F) | 0x80);
+			zz >>>= 7;
+		}
+		buf[size++] = (byte) zz;
+	}
+
+	public void writeDouble(double d)
+	{
+		long bits = Double.doubleToRawLongBits(d);
+		ensure(8);
+		for (int i = 56; i >= 0; i -= 8)
+		{
+			buf[size++] = (byte) (bits >>> i);
+		}
+	}
+
+	/**
+	 * Writes the length plus one (0 stands for null), then the UTF-8
+	 * bytes of the string.
+	 */
+	public void writeString(String s)
+	{
+		if (s == null)
+		{
+			writeVarInt(0);
+			return;
+		}
+		int len = s.length();
+		int bytes = len;
+		for (int i = 0; i < len; i++)
+		{
+			char c = s.charAt(i);
+			if (c >= 0x80)
+			{
+				bytes += (c >= 0x800) ? 2 : 1;
+			}
+		}
+		writeVarInt(bytes + 1);
+		ensure(bytes);
+		for (int i = 0; i < len; i++)
+		{
+			char c = s.charAt(i);
+			if (c < 0x80)
+			{
+				buf[size++] = (byte) c;
+			}
+			else if (c < 0x800)
+			{
+				buf[size++] = (byte) (0xC0 | (c >> 6));
+				buf[size++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else
+			{
+				buf[size++] = (byte) (0xE0 | (c >> 12));
+				buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[size++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Writes an object preceded by its registered type id.
+	 *
+	 * @see PayloadRegistry
+	 */
+	public void writeObject(Object o)
+	{
+		PayloadRegistry.write(this, o);
+	}
+}
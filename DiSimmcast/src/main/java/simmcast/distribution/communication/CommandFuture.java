@@ -0,0 +1,85 @@
+package simmcast.distribution.communication;
+
+import simmcast.distribution.command.CommandProtocol;
+
+/**
+ * The pending reply of a command sent through a Connection. The
+ * command is on the wire as soon as the future exists; get() only
+ * waits for the reply, so a caller can send several commands and
+ * then collect their replies, paying one round trip for all.
+ */
+public class CommandFuture {
+
+	private final int cmdId;
+	private CommandProtocol reply;
+	private String failure;
+	private boolean done;
+
+	/**
+	 * Whether nobody will call get(): errors are then printed when
+	 * the reply arrives.
+	 */
+	final boolean detached;
+
+	CommandFuture(int mCmdId, boolean mDetached)
+	{
+		cmdId = mCmdId;
+		detached = mDetached;
+	}
+
+	public int getCmdId()
+	{
+		return cmdId;
+	}
+
+	synchronized void complete(CommandProtocol mReply)
+	{
+		reply = mReply;
+		done = true;
+		notifyAll();
+	}
+
+	synchronized void fail(String mFailure)
+	{
+		failure = mFailure;
+		done = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isDone()
+	{
+		return done;
+	}
+
+	/**
+	 * Waits for the reply.
+	 *
+	 * @return null if the command succeeded without data, the data
+	 * prefixed by OK_PREFIX if it succeeded with data, or else the
+	 * error text.
+	 */
+	public synchronized String get()
+	{
+		try {
+			while (!done)
+			{
+				wait();
+			}
+		} catch (InterruptedException e) {
+			return "Interrupted exception";
+		}
+		if (failure!=null)
+		{
+			return failure;
+		}
+		if (reply.getAction()==CommandProtocol.ACTION_OK)
+		{
+			if (reply.getParameters().length()>0)
+			{
+				return CommandProtocol.OK_PREFIX + reply.getParameters();
+			}
+			return null;
+		}
+		return reply.getParameters();
+	}
+}
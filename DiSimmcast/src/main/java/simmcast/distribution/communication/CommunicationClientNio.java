@@ -0,0 +1,154 @@
+package simmcast.distribution.communication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import simmcast.distribution.command.CommandProtocol;
+
+/**
+ * The worker side of the NIO transport ("simmcast.transport" set to
+ * "nio"). The link to the manager, the packet server and the links
+ * to the other workers are all served by the selector thread of the
+ * process. Workers are addressed as with sockets: by host address,
+ * on WORKER_PORT. Links are kept by the host and port of the other
+ * end, so that the link opened to a worker and the one accepted from
+ * it are both kept.
+ */
+public class CommunicationClientNio implements CommunicationClient, CommunicationStreams {
+
+	private NioSelector selector;
+	private SocketChannel managerChannel;
+	private ServerSocketChannel packetServer;
+	private Connection connection;
+	private String thisAddress;
+	private Map<String, NioLink> links;
+	private boolean connected;
+
+	@Override
+	public boolean create() {
+		links = Collections.synchronizedMap(new HashMap<String, NioLink>());
+		return true;
+	}
+
+	@Override
+	public Connection connect(String manager) {
+		try {
+			selector = NioSelector.get();
+			InetSocketAddress managerAddr = new InetSocketAddress(manager, CommunicationServerSocket.MANAGER_PORT);
+			managerChannel = SocketChannel.open();
+			managerChannel.socket().connect(managerAddr, 10000);
+			System.out.println("Connected to " + managerAddr.getHostName() + ":" + managerAddr.getPort());
+
+			thisAddress = CommunicationServerSocket.getFirstAddress().getHostAddress();
+			packetServer = ServerSocketChannel.open();
+			packetServer.socket().setReuseAddress(true);
+			packetServer.socket().bind(new InetSocketAddress(thisAddress, CommunicationClientSocket.WORKER_PORT));
+
+			connected = true;
+			NioLink link = new NioLink(managerChannel, selector);
+			connection = new Connection(-1, managerChannel.socket().getLocalAddress().getHostName(), null, link.getOutputStream(), new java.util.concurrent.LinkedBlockingQueue<CommandProtocol>(), this);
+			link.start(connection);
+			listenWorkers();
+			return connection;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean disconnect() {
+		if (!connected)
+		{
+			return false;
+		}
+		connected = false;
+		connection.disconnect();
+		try {
+			managerChannel.close();
+			packetServer.close();
+		} catch (IOException e) {
+			return false;
+		}
+		ArrayList<NioLink> open;
+		synchronized (links) {
+			open = new ArrayList<NioLink>(links.values());
+			links.clear();
+		}
+		for (Iterator<NioLink> it = open.iterator(); it.hasNext();)
+		{
+			it.next().close();
+		}
+		return true;
+	}
+
+	@Override
+	public String getDescription(boolean full) {
+		return thisAddress + ((full) ? (":" + managerChannel.socket().getLocalPort()) : "");
+	}
+
+	@Override
+	synchronized public DataOutputStream getOutputStream(String worker)
+	{
+		String key = worker + ":" + CommunicationClientSocket.WORKER_PORT;
+		NioLink link = links.get(key);
+		if (link!=null)
+		{
+			return link.getOutputStream();
+		}
+		try {
+			SocketChannel channel = SocketChannel.open();
+			channel.socket().connect(new InetSocketAddress(worker, CommunicationClientSocket.WORKER_PORT), 10000);
+			link = new NioLink(channel, selector);
+			links.put(key, link);
+			link.start(connection);
+			return link.getOutputStream();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Frames from other workers are handed to the connection by the
+	 * selector thread; there is no stream to read them from.
+	 */
+	@Override
+	public DataInputStream getInputStream(String worker) {
+		return null;
+	}
+
+	@Override
+	public void listenWorkers() {
+		try {
+			packetServer.configureBlocking(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		selector.register(packetServer, SelectionKey.OP_ACCEPT, new NioSelector.Handler() {
+			public void ready(SelectionKey key) throws IOException {
+				SocketChannel workerFrom = packetServer.accept();
+				if (workerFrom!=null)
+				{
+					NioLink link = new NioLink(workerFrom, selector);
+					links.put(workerFrom.socket().getInetAddress().getHostAddress() + ":" + workerFrom.socket().getPort(), link);
+					link.start(connection);
+				}
+			}
+
+			public void closed() {
+			}
+		});
+	}
+}
@@ -0,0 +1,215 @@
+package simmcast.distribution.communication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import simmcast.distribution.command.CommandProtocol;
+
+/**
+ * The worker side of the shared memory transport ("simmcast.transport"
+ * set to "shm"). Workers are addressed by the name the manager gave
+ * them. The first of two workers that has something to send to the
+ * other creates the SharedRing file of the pair, named after both;
+ * each worker watches the directory for the files created for it.
+ */
+public class CommunicationClientShm implements CommunicationClient, CommunicationStreams {
+
+	/**
+	 * How often the directory is searched for new links, in
+	 * milliseconds.
+	 */
+	public static final int PROBE = 5;
+
+	private Connection connection;
+	private String name;
+	private File dir;
+	private HashMap<String, Link> links;
+	private HashSet<String> attached;
+	private ArrayList<File> created;
+	private Thread watcher;
+	private boolean connected;
+
+	private class Link {
+		public DataOutputStream os;
+		public DataInputStream is;
+		public Thread th;
+	}
+
+	@Override
+	public boolean create() {
+		links = new HashMap<String, Link>();
+		attached = new HashSet<String>();
+		created = new ArrayList<File>();
+		return true;
+	}
+
+	@Override
+	public Connection connect(String manager) {
+		try {
+			Socket hs = new Socket();
+			hs.connect(new InetSocketAddress(manager, CommunicationServerSocket.MANAGER_PORT), 10000);
+			DataInputStream his = new DataInputStream(hs.getInputStream());
+			File managerFile = new File(his.readUTF());
+			name = his.readUTF();
+			dir = managerFile.getParentFile();
+			SharedRing[] rings = SharedRing.open(managerFile);
+			hs.getOutputStream().write(1);
+			hs.close();
+			System.out.println("Connected to " + manager + " through " + managerFile + " as " + name);
+
+			connected = true;
+			connection = new Connection(-1, name, new DataInputStream(rings[1].getInputStream()), new DataOutputStream(rings[0].getOutputStream()), new java.util.concurrent.LinkedBlockingQueue<CommandProtocol>(), this);
+			connection.start();
+			listenWorkers();
+			return connection;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	@Override
+	public boolean disconnect() {
+		if (!connected)
+		{
+			return false;
+		}
+		connected = false;
+		connection.disconnect();
+		if (watcher!=null)
+		{
+			watcher.interrupt();
+		}
+		synchronized (this) {
+			for (Iterator<Link> it = links.values().iterator(); it.hasNext();)
+			{
+				Link link = it.next();
+				try {
+					link.os.close();
+					link.is.close();
+				} catch (IOException e) {
+				}
+			}
+			links.clear();
+			for (int i=0;i<created.size();i++)
+			{
+				created.get(i).delete();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String getDescription(boolean full) {
+		return name + ((full) ? ("@" + dir) : "");
+	}
+
+	/**
+	 * Starts reading a link and keeps it, unless a link to the same
+	 * worker is already kept; it is then only read.
+	 */
+	private Link attach(String worker, File file, SharedRing[] rings)
+	{
+		attached.add(file.getName());
+		Link link = new Link();
+		link.os = new DataOutputStream(rings[0].getOutputStream());
+		link.is = new DataInputStream(rings[1].getInputStream());
+		final SharedRing ring = rings[1];
+		final DataInputStream dins = link.is;
+		link.th = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (connected && !ring.isFinished())
+				{
+					connection.receive(dins);
+				}
+			}
+		});
+		link.th.setDaemon(true);
+		link.th.start();
+		if (!links.containsKey(worker))
+		{
+			links.put(worker, link);
+		}
+		return links.get(worker);
+	}
+
+	@Override
+	synchronized public DataOutputStream getOutputStream(String worker)
+	{
+		Link link = links.get(worker);
+		if (link!=null)
+		{
+			return link.os;
+		}
+		try {
+			File theirs = new File(dir, worker + "-" + name + SharedRing.SUFFIX);
+			if (theirs.exists() && !attached.contains(theirs.getName()))
+			{
+				return attach(worker, theirs, SharedRing.open(theirs)).os;
+			}
+			File ours = new File(dir, name + "-" + worker + SharedRing.SUFFIX);
+			SharedRing[] rings = SharedRing.create(ours);
+			created.add(ours);
+			return attach(worker, ours, rings).os;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Frames from other workers are read by a thread per link; there
+	 * is no stream to hand out.
+	 */
+	@Override
+	public DataInputStream getInputStream(String worker) {
+		return null;
+	}
+
+	@Override
+	public void listenWorkers() {
+		final String suffix = "-" + name + SharedRing.SUFFIX;
+		watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (connected)
+				{
+					String[] names = dir.list();
+					for (int i=0;(names!=null) && (i<names.length);i++)
+					{
+						if (names[i].endsWith(suffix) && !names[i].startsWith(CommunicationServerShm.MANAGER_PREFIX))
+						{
+							synchronized (CommunicationClientShm.this) {
+								if (connected && !attached.contains(names[i]))
+								{
+									File file = new File(dir, names[i]);
+									try {
+										attach(names[i].substring(0, names[i].length() - suffix.length()), file, SharedRing.open(file));
+									} catch (IOException e) {
+										e.printStackTrace();
+									}
+								}
+							}
+						}
+					}
+					try {
+						Thread.sleep(PROBE);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		});
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+}
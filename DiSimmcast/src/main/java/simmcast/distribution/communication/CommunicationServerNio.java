@@ -0,0 +1,72 @@
+package simmcast.distribution.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import simmcast.distribution.command.CommandProtocol;
+
+/**
+ * The manager side of the NIO transport ("simmcast.transport" set to
+ * "nio"). Workers are accepted one by one, as with sockets, but their
+ * links are then served by the selector thread instead of a thread
+ * per connection.
+ */
+public class CommunicationServerNio implements CommunicationServer {
+
+	private ServerSocketChannel server;
+
+	@Override
+	public boolean create() {
+		return create(null);
+	}
+
+	@Override
+	public boolean create(String inetAddr) {
+		try {
+			server = ServerSocketChannel.open();
+			server.socket().setReuseAddress(true);
+			server.socket().bind(new InetSocketAddress(CommunicationServerSocket.getFirstAddress(inetAddr), CommunicationServerSocket.MANAGER_PORT));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public Connection listen(int connNumber, java.util.concurrent.LinkedBlockingQueue<CommandProtocol> inqueue)
+	{
+		try {
+			SocketChannel client = server.accept();
+			NioLink link = new NioLink(client, NioSelector.get());
+			Connection cn = new Connection(connNumber, client.socket().getInetAddress().getHostAddress(), null, link.getOutputStream(), inqueue);
+			link.start(cn);
+			return cn;
+		} catch (ClosedChannelException e) {
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	@Override
+	public String getDescription() {
+		return server.socket().getInetAddress().getHostAddress() + ":" + CommunicationServerSocket.MANAGER_PORT;
+	}
+
+	@Override
+	public boolean disconnect() {
+		try {
+			server.close();
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,121 @@
+package simmcast.distribution.communication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Vector;
+
+import simmcast.distribution.command.CommandProtocol;
+
+/**
+ * The manager side of the shared memory transport ("simmcast.transport"
+ * set to "shm"), for workers running on the same host as the manager.
+ * A worker still connects to MANAGER_PORT, but only to learn the
+ * directory of the ring files and the name given to it; the commands
+ * then travel through a SharedRing file created for that worker.
+ */
+public class CommunicationServerShm implements CommunicationServer {
+
+	public static final String MANAGER_PREFIX = "m-";
+	public static final String WORKER_PREFIX = "w";
+
+	private ServerSocket server;
+	private File dir;
+	private Vector<File> files;
+
+	/**
+	 * @return The directory of the ring files, from "simmcast.shm.dir".
+	 */
+	public static File getDirectory()
+	{
+		return new File(System.getProperty("simmcast.shm.dir", System.getProperty("java.io.tmpdir") + File.separator + "simmcast"));
+	}
+
+	@Override
+	public boolean create() {
+		return create(null);
+	}
+
+	@Override
+	public boolean create(String inetAddr) {
+		files = new Vector<File>();
+		dir = getDirectory();
+		dir.mkdirs();
+		File[] stale = dir.listFiles();
+		for (int i=0;(stale!=null) && (i<stale.length);i++)
+		{
+			if (stale[i].getName().endsWith(SharedRing.SUFFIX))
+			{
+				stale[i].delete();
+			}
+		}
+		try {
+			server = new ServerSocket();
+			server.setReuseAddress(true);
+			server.bind(new InetSocketAddress(CommunicationServerSocket.getFirstAddress(inetAddr), CommunicationServerSocket.MANAGER_PORT));
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	@Override
+	public Connection listen(int connNumber, java.util.concurrent.LinkedBlockingQueue<CommandProtocol> inqueue)
+	{
+		try {
+			Socket client = server.accept();
+			String name = WORKER_PREFIX + connNumber;
+			File file = new File(dir, MANAGER_PREFIX + name + SharedRing.SUFFIX);
+			SharedRing[] rings = SharedRing.create(file);
+			files.add(file);
+
+			DataOutputStream hs = new DataOutputStream(client.getOutputStream());
+			hs.writeUTF(file.getAbsolutePath());
+			hs.writeUTF(name);
+			hs.flush();
+			new DataInputStream(client.getInputStream()).readByte();
+			client.close();
+
+			Connection cn = new Connection(connNumber, name, new DataInputStream(rings[1].getInputStream()), new DataOutputStream(rings[0].getOutputStream()), inqueue);
+			cn.start();
+			return cn;
+		} catch (IOException e) {
+			if (!(e instanceof SocketException))
+			{
+				e.printStackTrace();
+			}
+			return null;
+		}
+	}
+
+	@Override
+	public String getDescription() {
+		return server.getInetAddress().getHostAddress() + ":" + CommunicationServerSocket.MANAGER_PORT + " (" + dir + ")";
+	}
+
+	/**
+	 * Stops accepting workers. The ring files are unlinked, but stay
+	 * mapped by the manager and its workers.
+	 */
+	@Override
+	public boolean disconnect() {
+		for (int i=0;i<files.size();i++)
+		{
+			files.get(i).delete();
+		}
+		try {
+			server.close();
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+}
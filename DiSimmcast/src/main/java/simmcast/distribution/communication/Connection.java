@@ -8,18 +8,46 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
+import simmcast.distribution.command.CommandCodec;
 import simmcast.distribution.command.CommandPacketArrival;
+import simmcast.distribution.command.CommandPacketBatch;
 import simmcast.distribution.command.CommandProtocol;
 
 public class Connection extends Thread implements Runnable {
 	
 	private java.util.concurrent.LinkedBlockingQueue<CommandProtocol> in;
-	private HashMap<Integer, Integer> acksMutex;
-	private HashMap<Integer,CommandProtocol> acks;
+
+	/**
+	 * Commands waiting for their reply, by command id. A command is
+	 * registered before it is written, so its reply always finds it.
+	 */
+	private ConcurrentHashMap<Integer, CommandFuture> pending;
+
+	/**
+	 * Bounds the commands in flight: senders block once WINDOW replies
+	 * are outstanding.
+	 */
+	private Semaphore window;
+
+	/**
+	 * Detached commands (posted packets) whose reply did not arrive yet.
+	 */
+	private int detachedInFlight;
+	private final Object detachedLock = new Object();
+
+	/**
+	 * The packets posted during the current timestep, by destination
+	 * worker, and that timestep.
+	 */
+	private HashMap<String, CommandPacketBatch> batches;
+	private double batchTime;
+
 	private DataInputStream is;
 //	private DataInputStream is2;
 	private DataOutputStream os;
@@ -30,13 +58,24 @@ public class Connection extends Thread implements Runnable {
 
 	private static final String THREAD_PKT_PREFIX = "TH_PKT_";
 
+	public static final int WINDOW = Integer.parseInt(System.getProperty("simmcast.connection.window", "64"));
+
+	/**
+	 * The packets a batch may hold before it is sent; 1 sends every
+	 * packet on its own.
+	 */
+	public static final int BATCH = Integer.parseInt(System.getProperty("simmcast.connection.batch", "256"));
+
 	public Connection(int mConnId, String mDescription, DataInputStream mIs, DataOutputStream mOs, java.util.concurrent.LinkedBlockingQueue<CommandProtocol> mIn, CommunicationStreams mCss)
 	{
 		connId = mConnId;
 		description = mDescription;
 		in = mIn;
-		acksMutex = new HashMap<Integer,Integer>();
-		acks = new HashMap<Integer, CommandProtocol>();
+		pending = new ConcurrentHashMap<Integer, CommandFuture>();
+		window = new Semaphore(WINDOW);
+		detachedInFlight = 0;
+		batches = new HashMap<String, CommandPacketBatch>();
+		batchTime = Double.NaN;
 		is = mIs;
 		os = mOs;
 		//is2 = mIs2;
@@ -54,128 +93,223 @@ public class Connection extends Thread implements Runnable {
 		this(mConnId,mDescription,mIs,mOs,new java.util.concurrent.LinkedBlockingQueue<CommandProtocol>());
 	}
 
-	private CommandProtocol waitForAck(int cmdId)
+	private CommandFuture register(int cmdId, boolean detached)
 	{
-/*		synchronized (acks) {
-			Iterator<Integer> ackskeys = acks.keySet().iterator();
-			while (ackskeys.hasNext())
+		window.acquireUninterruptibly();
+		CommandFuture f = new CommandFuture(cmdId, detached);
+		if (detached)
+		{
+			synchronized (detachedLock) {
+				detachedInFlight++;
+			}
+		}
+		pending.put(cmdId, f);
+		return f;
+	}
+
+	private void settle(CommandFuture f, CommandProtocol reply, String failure)
+	{
+		window.release();
+		if (failure!=null)
+		{
+			f.fail(failure);
+		}
+		else
+		{
+			f.complete(reply);
+		}
+		if (f.detached)
+		{
+			if (failure==null && reply.getAction()==CommandProtocol.ACTION_ERROR)
 			{
-				Integer key = ackskeys.next();
-				if (key.intValue() == cmdId)
-				{
-					CommandProtocol cp = acks.get(key);
-					acks.remove(key);
-					return cp;
-				}
+				failure = reply.getParameters();
 			}
-		}*/
-		Integer cmdInt = new Integer(cmdId);
-		try {
-			synchronized (cmdInt) {
-				synchronized (acksMutex)
+			if (failure!=null)
+			{
+				System.err.println("Error on command " + f.getCmdId() + ": " + failure);
+			}
+			synchronized (detachedLock) {
+				detachedInFlight--;
+				if (detachedInFlight==0)
 				{
-					acksMutex.put(cmdInt,cmdInt);
+					detachedLock.notifyAll();
 				}
-				cmdInt.wait();
-			}
-			synchronized (acksMutex) {
-				acksMutex.remove(cmdInt);
 			}
-			synchronized (acks) {
-				CommandProtocol cp = acks.get(cmdInt);
-				acks.remove(cmdInt);
-				return cp;
-			}
-		} catch (InterruptedException e) {
-			return null;
+		}
+	}
+
+	private void abort(CommandFuture f, IOException e)
+	{
+		if (pending.remove(f.getCmdId())!=null)
+		{
+			settle(f, null, e.toString());
 		}
 	}
 
 	public String sendPacket(String where, double relativeTime_, simmcast.network.Packet p)
+	{
+		return sendPacket(where, relativeTime_, p, false);
+	}
+
+	public String sendPacket(String where, double time_, simmcast.network.Packet p, boolean absolute_)
 	{
 		if (css==null)
 			return "Not connected to " + where;
-		DataOutputStream dos = css.getOutputStream(where);
-		try {
-			CommandPacketArrival cpa = new CommandPacketArrival(description, relativeTime_, p);
-			String packetData = cpa.getParameters();
-			synchronized (dos) {
-				dos.writeInt(cpa.getCmdId());
-				dos.writeByte(cpa.getAction());
-				dos.writeInt(packetData.length());
-				dos.writeBytes(packetData);
-				dos.flush();
+		return sendPacketAsync(where, time_, p, absolute_, false).get();
+	}
+
+	/**
+	 * Sends a packet to another worker without waiting for its ack.
+	 * The packets posted for a worker during one timestep are batched
+	 * and acked together: a batch is sent when it is full, when the
+	 * timestep advances, and by flushPackets() and drain(). Errors are
+	 * printed when the ack arrives, and drain() waits for the acks of
+	 * all the packets posted this way.
+	 *
+	 * @param now The simulation time of the sender.
+	 */
+	public void postPacket(String where, double now, double time_, simmcast.network.Packet p, boolean absolute_)
+	{
+		if (css==null)
+		{
+			System.err.println("Not connected to " + where);
+			return;
+		}
+		if (BATCH<=1)
+		{
+			sendPacketAsync(where, time_, p, absolute_, true);
+			return;
+		}
+		synchronized (batches) {
+			if (now!=batchTime)
+			{
+				flushPackets();
+				batchTime = now;
 			}
-			while (true)
+			CommandPacketBatch batch = batches.get(where);
+			if (batch==null)
 			{
-				CommandProtocol ack = waitForAck(cpa.getCmdId());
-				if (ack.getAction()==CommandProtocol.ACTION_OK)
-				{
-					if (ack.getParameters().length()>0)
-					{
-						return CommandProtocol.OK_PREFIX + ack.getParameters();
-					}
-					else
-					{
-						return null;
-					}
-				}
-				else
-				{
-					return ack.getParameters();
-				}
+				batch = new CommandPacketBatch(description);
+				batches.put(where, batch);
+			}
+			batch.add(time_, p, absolute_);
+			if (batch.size()>=BATCH)
+			{
+				batches.remove(where);
+				sendBatch(where, batch);
+			}
+		}
+	}
+
+	/**
+	 * Sends the packets batched so far, without waiting for their ack.
+	 */
+	public void flushPackets()
+	{
+		ArrayList<String> targets;
+		synchronized (batches) {
+			if (batches.isEmpty())
+			{
+				return;
+			}
+			targets = new ArrayList<String>(batches.keySet());
+			for (Iterator<String> it = targets.iterator(); it.hasNext();)
+			{
+				String where = it.next();
+				sendBatch(where, batches.remove(where));
 			}
+		}
+	}
+
+	private void sendBatch(String where, CommandPacketBatch batch)
+	{
+		DataOutputStream dos = css.getOutputStream(where);
+		CommandFuture f = register(batch.getCmdId(), true);
+		try {
+			CommandCodec.write(dos, batch, true);
 		} catch (IOException e) {
 			e.printStackTrace();
-			return e.toString();
+			abort(f, e);
 		}
 	}
 
-
-	public String sendCmd(CommandProtocol cp)
+	private CommandFuture sendPacketAsync(String where, double time_, simmcast.network.Packet p, boolean absolute_, boolean detached)
 	{
+		DataOutputStream dos = css.getOutputStream(where);
+		CommandPacketArrival cpa = new CommandPacketArrival(description, time_, p, absolute_);
+		CommandFuture f = register(cpa.getCmdId(), detached);
 		try {
-			synchronized (os)
-			{
-				os.writeInt(cp.getCmdId());
-				os.writeByte(cp.getAction());
-				os.writeInt(cp.getParameters().length());
-				if (cp.getParameters().length()>0)
+			CommandCodec.write(dos, cpa, true);
+		} catch (IOException e) {
+			e.printStackTrace();
+			abort(f, e);
+		}
+		return f;
+	}
+
+	/**
+	 * Sends the batched packets, then blocks until every packet sent
+	 * with postPacket() was acked.
+	 */
+	public void drain()
+	{
+		flushPackets();
+		synchronized (detachedLock) {
+			try {
+				while (detachedInFlight>0)
 				{
-					os.writeBytes(cp.getParameters());
+					detachedLock.wait();
 				}
+			} catch (InterruptedException e) {
 			}
+		}
+	}
 
-			if ((cp.getAction()==CommandProtocol.ACTION_OK) || (cp.getAction()==CommandProtocol.ACTION_ERROR) || (cp.getAction()==CommandProtocol.ACTION_STOP_SIMULATION))
-			{
+	public String sendCmd(CommandProtocol cp)
+	{
+		if ((cp.getAction()==CommandProtocol.ACTION_OK) || (cp.getAction()==CommandProtocol.ACTION_ERROR) || (cp.getAction()==CommandProtocol.ACTION_STOP_SIMULATION))
+		{
+			try {
+				CommandCodec.write(os, cp, true);
 				return "";
+			} catch (IOException e) {
+				return e.toString();
 			}
+		}
+		return sendCmdAsync(cp).get();
+	}
 
-			while (true)
-			{
-				CommandProtocol ack = waitForAck(cp.getCmdId());
-				if (ack==null)
-				{
-					return "Interrupted exception";
-				}
-				if (ack.getAction()==CommandProtocol.ACTION_OK)
-				{
-					if (ack.getParameters().length()>0)
-					{
-						return CommandProtocol.OK_PREFIX + ack.getParameters();
-					}
-					else
-					{
-						return null;
-					}
-				}
-				else
-				{
-					return ack.getParameters();
-				}
-			}
+	/**
+	 * Sends a command and returns at once; the reply is collected
+	 * from the future.
+	 */
+	public CommandFuture sendCmdAsync(CommandProtocol cp)
+	{
+		CommandFuture f = register(cp.getCmdId(), false);
+		try {
+			CommandCodec.write(os, cp, true);
+		} catch (IOException e) {
+			abort(f, e);
+		}
+		return f;
+	}
+
+	/**
+	 * Sends a command whose OK carries no data, without waiting for
+	 * it. The receiver only answers if the command fails, and the
+	 * error is printed when it arrives.
+	 *
+	 * @return false if the command could not be written.
+	 */
+	public boolean post(CommandProtocol cp)
+	{
+		cp.setReplyWanted(false);
+		try {
+			CommandCodec.write(os, cp, true);
+			return true;
 		} catch (IOException e) {
-			return e.toString();
+			System.err.println(e.toString());
+			return false;
 		}
 	}
 
@@ -186,14 +320,7 @@ public class Connection extends Thread implements Runnable {
 		DataOutputStream dos = css.getOutputStream(where);
 		try {
 			CommandProtocol cp = new CommandProtocol(connId, cmdId, CommandProtocol.ACTION_OK, "");
-			String packetData = cp.getParameters();
-			synchronized (dos) {
-				dos.writeInt(cp.getCmdId());
-				dos.writeByte(cp.getAction());
-				dos.writeInt(packetData.length());
-				dos.writeBytes(packetData);
-				dos.flush();
-			}
+			CommandCodec.write(dos, cp, true);
 			return true;
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -229,7 +356,10 @@ public class Connection extends Thread implements Runnable {
 		connected = false;
 		try {
 			interrupt();
-			is.close();
+			if (is!=null)
+			{
+				is.close();
+			}
 			os.close();
 			if (css!=null)
 			{
@@ -255,7 +385,6 @@ public class Connection extends Thread implements Runnable {
 
 	public void receive(DataInputStream instr)
 	{
-		CommandProtocol cp = null;
 		try
 		{
 			int cmdid = 0;
@@ -273,47 +402,41 @@ public class Connection extends Thread implements Runnable {
 					totread += instr.read(param, totread, parametersSize - totread);
 				}
 			}
-			String parameters = new String(param);
-			cp = CommandProtocol.createFromAction(connId,cmdid,action,parameters);
+			receive(cmdid, action, param);
 		} catch (IOException e) {
 		}
+	}
+
+	/**
+	 * Handles a frame already read off the wire: replies complete
+	 * their pending command, anything else goes to the input queue.
+	 * Never blocks, so transports may call it from their I/O thread.
+	 */
+	public void receive(int cmdid, byte action, byte[] param)
+	{
+		CommandProtocol cp = CommandCodec.decode(connId,cmdid,action,param);
 		if (cp!=null)
 		{
-			try
+			if ((cp.getAction()==CommandProtocol.ACTION_OK) || (cp.getAction()==CommandProtocol.ACTION_ERROR)) 
 			{
-				if ((cp.getAction()==CommandProtocol.ACTION_OK) || (cp.getAction()==CommandProtocol.ACTION_ERROR)) 
+				CommandFuture f = pending.remove(cp.getCmdId());
+				if (f!=null)
 				{
-					Integer cmdInt = null;
-					while (cmdInt==null)
-					{
-						synchronized (acksMutex) {
-							cmdInt = acksMutex.get(cp.getCmdId());
-						}
-						if (cmdInt!=null)
-						{
-							synchronized (acks) {
-								acks.put(cp.getCmdId(),cp);
-							}
-							synchronized (cmdInt) {
-								cmdInt.notify();
-							}
-						}
-						else
-						{
-//							System.err.println("\nACK FOR CMDID " + cp.getCmdId() + " ABSENT. waiting...");
-							Thread.sleep(100);
-/*						synchronized (acks) {
-							acks.put(new Integer(cp.getCmdId()),cp);
-						}*/
-						}
-					}
+					settle(f, cp, null);
 				}
-				else
+				else if (cp.getAction()==CommandProtocol.ACTION_ERROR)
+				{
+					System.err.println("Error on command " + cp.getCmdId() + ": " + cp.getParameters());
+				}
+			}
+			else
+			{
+				try
 				{
 					in.put(cp);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
 				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
 			}
 		}
 	}
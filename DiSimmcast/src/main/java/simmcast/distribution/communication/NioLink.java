@@ -0,0 +1,232 @@
+package simmcast.distribution.communication;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One socket of the NIO transport. Incoming bytes land in a direct
+ * buffer and are cut into frames (command id, action, body length,
+ * body) that go straight to the Connection, on the selector thread.
+ * Outgoing frames are queued by the senders and written by the
+ * selector thread, as many per gathering write as are queued.
+ */
+public class NioLink implements NioSelector.Handler {
+
+	static final int HEADER = 9;
+	static final int READ_BUFFER = 64 * 1024;
+	static final int MAX_GATHER = 64;
+
+	private SocketChannel channel;
+	private NioSelector selector;
+	private Connection connection;
+
+	private ByteBuffer readBuf;
+
+	private ConcurrentLinkedQueue<ByteBuffer> outgoing;
+	private AtomicBoolean writeRequested;
+	private Runnable writer;
+	private ByteBuffer[] gather;
+
+	private DataOutputStream out;
+
+	/**
+	 * Collects the bytes of the frames written by a sender; each
+	 * flush hands them to the selector thread.
+	 * Senders serialize on the DataOutputStream wrapping it.
+	 */
+	private class FrameStream extends OutputStream {
+
+		private byte[] buf = new byte[256];
+		private int count = 0;
+
+		public void write(int b)
+		{
+			if (count==buf.length)
+			{
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			}
+			buf[count++] = (byte) b;
+		}
+
+		public void write(byte[] b, int off, int len)
+		{
+			if (count + len > buf.length)
+			{
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + len));
+			}
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		}
+
+		public void flush()
+		{
+			if (count==0)
+			{
+				return;
+			}
+			outgoing.add(ByteBuffer.wrap(Arrays.copyOf(buf, count)));
+			count = 0;
+			requestWrite();
+		}
+
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+
+	public NioLink(SocketChannel mChannel, NioSelector mSelector) throws IOException
+	{
+		channel = mChannel;
+		selector = mSelector;
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+		readBuf = ByteBuffer.allocateDirect(READ_BUFFER);
+		outgoing = new ConcurrentLinkedQueue<ByteBuffer>();
+		writeRequested = new AtomicBoolean(false);
+		gather = new ByteBuffer[MAX_GATHER];
+		out = new DataOutputStream(new FrameStream());
+		writer = new Runnable() {
+			public void run() {
+				try {
+					write();
+				} catch (IOException e) {
+					close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Starts reading: the frames received are handed to mConnection.
+	 * Frames queued before the channel is registered are written once
+	 * it is: the selector thread runs its tasks in order.
+	 */
+	public void start(Connection mConnection)
+	{
+		connection = mConnection;
+		selector.register(channel, SelectionKey.OP_READ, this);
+		selector.execute(writer);
+	}
+
+	public DataOutputStream getOutputStream()
+	{
+		return out;
+	}
+
+	public void close()
+	{
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	public void ready(SelectionKey key) throws IOException
+	{
+		if (key.isReadable())
+		{
+			read();
+		}
+		if (key.isValid() && key.isWritable())
+		{
+			write();
+		}
+	}
+
+	public void closed()
+	{
+		close();
+	}
+
+	private void read() throws IOException
+	{
+		if (channel.read(readBuf)<0)
+		{
+			throw new EOFException();
+		}
+		readBuf.flip();
+		while (readBuf.remaining()>=HEADER)
+		{
+			int len = readBuf.getInt(readBuf.position() + 5);
+			if (readBuf.remaining()<HEADER + len)
+			{
+				if (HEADER + len>readBuf.capacity())
+				{
+					ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(readBuf.capacity() * 2, HEADER + len));
+					bigger.put(readBuf);
+					readBuf = bigger;
+					return;
+				}
+				break;
+			}
+			int cmdid = readBuf.getInt();
+			byte action = readBuf.get();
+			readBuf.getInt();
+			byte[] body = new byte[len];
+			readBuf.get(body);
+			connection.receive(cmdid, action, body);
+		}
+		readBuf.compact();
+	}
+
+	private void requestWrite()
+	{
+		if (writeRequested.compareAndSet(false, true))
+		{
+			selector.execute(writer);
+		}
+	}
+
+	/**
+	 * Writes the queued frames, MAX_GATHER at a time. Whatever the
+	 * socket does not take waits for it to become writable. Before the
+	 * channel is registered nothing is written; start() writes again
+	 * after registering it.
+	 */
+	private void write() throws IOException
+	{
+		writeRequested.set(false);
+		SelectionKey key = selector.keyFor(channel);
+		if ((key==null) || !key.isValid())
+		{
+			return;
+		}
+		while (true)
+		{
+			int n = 0;
+			Iterator<ByteBuffer> it = outgoing.iterator();
+			while (it.hasNext() && n<MAX_GATHER)
+			{
+				gather[n++] = it.next();
+			}
+			if (n==0)
+			{
+				key.interestOps(SelectionKey.OP_READ);
+				return;
+			}
+			channel.write(gather, 0, n);
+			boolean stalled = gather[n - 1].hasRemaining();
+			Arrays.fill(gather, 0, n, null);
+			ByteBuffer head;
+			while (((head = outgoing.peek())!=null) && !head.hasRemaining())
+			{
+				outgoing.poll();
+			}
+			if (stalled)
+			{
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+	}
+}
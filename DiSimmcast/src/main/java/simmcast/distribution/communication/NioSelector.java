@@ -0,0 +1,121 @@
+package simmcast.distribution.communication;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The I/O thread of the NIO transport: one selector per process
+ * serves every link to the manager and to the other workers.
+ * Channels are registered, and their interest changed, only from
+ * this thread; other threads hand it tasks.
+ */
+public class NioSelector implements Runnable {
+
+	/**
+	 * Receives the readiness events of a registered channel.
+	 */
+	public interface Handler {
+		public void ready(SelectionKey key) throws IOException;
+		public void closed();
+	}
+
+	private static NioSelector instance;
+
+	private Selector selector;
+	private ConcurrentLinkedQueue<Runnable> tasks;
+	private Thread thread;
+
+	private NioSelector() throws IOException
+	{
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<Runnable>();
+		thread = new Thread(this, "NIO selector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public static synchronized NioSelector get() throws IOException
+	{
+		if (instance==null)
+		{
+			instance = new NioSelector();
+		}
+		return instance;
+	}
+
+	/**
+	 * Runs a task on the selector thread.
+	 */
+	public void execute(Runnable task)
+	{
+		tasks.add(task);
+		if (Thread.currentThread()!=thread)
+		{
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * @return The key of a channel registered with this selector, or
+	 * null if its registration did not run yet.
+	 */
+	SelectionKey keyFor(SelectableChannel channel)
+	{
+		return channel.keyFor(selector);
+	}
+
+	public void register(final SelectableChannel channel, final int ops, final Handler handler)
+	{
+		execute(new Runnable() {
+			public void run() {
+				try {
+					channel.register(selector, ops, handler);
+				} catch (ClosedChannelException e) {
+					handler.closed();
+				}
+			}
+		});
+	}
+
+	public void run()
+	{
+		while (true)
+		{
+			try {
+				selector.select();
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+			Runnable task;
+			while ((task = tasks.poll())!=null)
+			{
+				task.run();
+			}
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			while (it.hasNext())
+			{
+				SelectionKey key = it.next();
+				it.remove();
+				Handler handler = (Handler) key.attachment();
+				try {
+					if (key.isValid())
+					{
+						handler.ready(key);
+					}
+				} catch (IOException e) {
+					key.cancel();
+					handler.closed();
+				} catch (CancelledKeyException e) {
+					handler.closed();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package simmcast.distribution.communication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer, single-consumer byte ring in a memory-mapped
+ * file, seen as a stream by each side. A link between two processes
+ * is a file holding two rings, one per direction: the side that
+ * creates the file writes the first one and reads the second.
+ * <p>
+ * The read and write positions grow without bound and are published
+ * in the file, each on its own cache line; the data between them is
+ * copied with plain memory accesses, so the fast path makes no system
+ * call. A position is stored after the data it covers, and loaded
+ * before that data is read. The mapping itself is only accessed
+ * through the buffer, with plain accesses; each position goes through
+ * a volatile store of an AtomicLong of the ring, before it is stored
+ * and after it is loaded; HotSpot makes a volatile store a full fence,
+ * which keeps the accesses to the data on their side of it. A side with nothing to do spins, yielding the
+ * processor, then parks for short periods.
+ */
+public class SharedRing {
+
+	public static final String SUFFIX = ".ring";
+
+	/**
+	 * The data bytes of each ring; a power of two.
+	 */
+	public static final int CAPACITY = Integer.highestOneBit(Integer.parseInt(System.getProperty("simmcast.shm.ring", "1048576")));
+
+	/**
+	 * How many times a side polls, yielding the processor in between,
+	 * before it starts parking.
+	 */
+	public static final int SPIN = Integer.parseInt(System.getProperty("simmcast.shm.spin", "10000"));
+
+	/**
+	 * How long a side parks between polls, in nanoseconds.
+	 */
+	public static final long PARK = Long.parseLong(System.getProperty("simmcast.shm.park", "50000"));
+
+	private static final int MAGIC = 0x53524E47;
+	private static final int FILE_HEADER = 64;
+
+	// Layout of a ring: the read position, the write position and the
+	// closed flag of the writer, each a long in the native byte order,
+	// then the data.
+	private static final int HEAD = 0;
+	private static final int TAIL = 64;
+	private static final int CLOSED = 72;
+	private static final int DATA = 128;
+
+	private MappedByteBuffer map;
+	private int base;
+	private int capacity;
+	private int mask;
+
+	/**
+	 * The positions of the ring, in the native byte order.
+	 */
+	private ByteBuffer positions;
+
+	/**
+	 * The last position stored or loaded by this side.
+	 */
+	private AtomicLong handoff;
+
+	private SharedRing(MappedByteBuffer mMap, int mBase, int mCapacity)
+	{
+		map = mMap;
+		base = mBase;
+		capacity = mCapacity;
+		mask = mCapacity - 1;
+		positions = mMap.duplicate().order(ByteOrder.nativeOrder());
+		handoff = new AtomicLong();
+	}
+
+	/**
+	 * Creates the file of a link. The file only appears under its name
+	 * once initialized, so the other side never maps half of it.
+	 *
+	 * @return The ring written by this side, then the ring it reads.
+	 */
+	public static SharedRing[] create(File file) throws IOException
+	{
+		File tmp = new File(file.getPath() + ".tmp");
+		long size = FILE_HEADER + 2L * (DATA + CAPACITY);
+		MappedByteBuffer mb = map(tmp, size);
+		mb.putInt(0, MAGIC);
+		mb.putInt(4, CAPACITY);
+		mb.force();
+		if (!tmp.renameTo(file))
+		{
+			throw new IOException("Cannot create " + file);
+		}
+		return rings(mb, CAPACITY, false);
+	}
+
+	/**
+	 * Maps the file of a link created by the other side.
+	 *
+	 * @return The ring written by this side, then the ring it reads.
+	 */
+	public static SharedRing[] open(File file) throws IOException
+	{
+		MappedByteBuffer mb = map(file, file.length());
+		if (mb.getInt(0)!=MAGIC)
+		{
+			throw new IOException("Not a ring file: " + file);
+		}
+		return rings(mb, mb.getInt(4), true);
+	}
+
+	private static MappedByteBuffer map(File file, long size) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static SharedRing[] rings(MappedByteBuffer mb, int mCapacity, boolean opened)
+	{
+		SharedRing first = new SharedRing(mb, FILE_HEADER, mCapacity);
+		SharedRing second = new SharedRing(mb, FILE_HEADER + DATA + mCapacity, mCapacity);
+		return (opened) ? new SharedRing[] {second, first} : new SharedRing[] {first, second};
+	}
+
+	/**
+	 * Loads a position; the accesses that follow are not moved before
+	 * it.
+	 */
+	private long get(int offset)
+	{
+		long v = positions.getLong(base + offset);
+		handoff.set(v);
+		return v;
+	}
+
+	/**
+	 * Stores a position; the accesses that precede it are not moved
+	 * after it.
+	 */
+	private void put(int offset, long v)
+	{
+		handoff.set(v);
+		positions.putLong(base + offset, v);
+	}
+
+	/**
+	 * @return A view of the data of this ring, for one side.
+	 */
+	private ByteBuffer slice()
+	{
+		ByteBuffer view = map.duplicate();
+		view.position(base + DATA);
+		view.limit(base + DATA + capacity);
+		return view.slice();
+	}
+
+	/**
+	 * Waits after an unsuccessful poll.
+	 *
+	 * @param polls The polls made so far.
+	 */
+	private static void idle(int polls)
+	{
+		if (polls<SPIN)
+		{
+			Thread.yield();
+		}
+		else
+		{
+			LockSupport.parkNanos(PARK);
+		}
+	}
+
+	/**
+	 * @return Whether the writer closed the ring and the reader took
+	 * everything it wrote.
+	 */
+	public boolean isFinished()
+	{
+		return (get(CLOSED)!=0) && (get(TAIL)==get(HEAD));
+	}
+
+	public OutputStream getOutputStream()
+	{
+		return new Output();
+	}
+
+	public InputStream getInputStream()
+	{
+		return new Input();
+	}
+
+	/**
+	 * The writing side. Bytes become visible to the reader on flush,
+	 * or when the ring fills up.
+	 */
+	private class Output extends OutputStream {
+
+		private ByteBuffer data;
+		private long tail;
+		private long head;
+
+		Output()
+		{
+			data = slice();
+			tail = get(TAIL);
+			head = get(HEAD);
+		}
+
+		/**
+		 * @return The bytes that can be written at once, without
+		 * wrapping around.
+		 */
+		private int room() throws IOException
+		{
+			int polls = 0;
+			while (tail - head==capacity)
+			{
+				if (polls==0)
+				{
+					put(TAIL, tail);
+				}
+				head = get(HEAD);
+				if (tail - head<capacity)
+				{
+					break;
+				}
+				idle(polls++);
+			}
+			return Math.min(capacity - (int) (tail - head), capacity - (int) (tail & mask));
+		}
+
+		public void write(int b) throws IOException
+		{
+			room();
+			data.put((int) (tail & mask), (byte) b);
+			tail++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			while (len>0)
+			{
+				int n = Math.min(len, room());
+				data.position((int) (tail & mask));
+				data.put(b, off, n);
+				tail += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		public void flush()
+		{
+			put(TAIL, tail);
+		}
+
+		public void close()
+		{
+			flush();
+			put(CLOSED, 1);
+		}
+	}
+
+	/**
+	 * The reading side. Blocks until bytes are published; returns the
+	 * end of the stream once the writer closed the ring and everything
+	 * was read, or once this side was closed.
+	 */
+	private class Input extends InputStream {
+
+		private ByteBuffer data;
+		private long head;
+		private long tail;
+		private volatile boolean closed;
+
+		Input()
+		{
+			data = slice();
+			head = get(HEAD);
+			tail = get(TAIL);
+		}
+
+		/**
+		 * @return The bytes that can be read at once, without wrapping
+		 * around, or -1 at the end of the stream.
+		 */
+		private int ready()
+		{
+			int polls = 0;
+			while (tail==head)
+			{
+				tail = get(TAIL);
+				if (tail!=head)
+				{
+					break;
+				}
+				if (closed || (get(CLOSED)!=0 && get(TAIL)==head))
+				{
+					return -1;
+				}
+				idle(polls++);
+			}
+			return Math.min((int) (tail - head), capacity - (int) (head & mask));
+		}
+
+		public int read()
+		{
+			if (ready()<0)
+			{
+				return -1;
+			}
+			int b = data.get((int) (head & mask)) & 0xFF;
+			head++;
+			put(HEAD, head);
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len)
+		{
+			if (len==0)
+			{
+				return 0;
+			}
+			int n = ready();
+			if (n<0)
+			{
+				return -1;
+			}
+			n = Math.min(n, len);
+			data.position((int) (head & mask));
+			data.get(b, off, n);
+			head += n;
+			put(HEAD, head);
+			return n;
+		}
+
+		public int available()
+		{
+			return (int) (get(TAIL) - head);
+		}
+
+		public void close()
+		{
+			closed = true;
+		}
+	}
+}
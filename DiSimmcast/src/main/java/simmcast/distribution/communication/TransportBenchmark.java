@@ -0,0 +1,186 @@
+package simmcast.distribution.communication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import simmcast.distribution.command.CommandActivateAt;
+import simmcast.distribution.command.CommandCodec;
+import simmcast.distribution.command.CommandProtocol;
+
+/**
+ * Compares the latency and the throughput of the links of the socket,
+ * named pipe and shared memory transports, on one host. Both ends run
+ * in this process, each on its own thread, and exchange command frames
+ * as a Connection does: ping-pong round trips, then a stream of
+ * frames acked at the end.
+ * <p>
+ * Usage: TransportBenchmark [round trips] [frames]
+ */
+public class TransportBenchmark {
+
+	private static int roundTrips = 20000;
+	private static int frames = 500000;
+
+	/**
+	 * The two directions of a link: a writes to b, b writes to a.
+	 */
+	private static class Link {
+		DataOutputStream aOut;
+		DataInputStream bIn;
+		DataOutputStream bOut;
+		DataInputStream aIn;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length>0)
+		{
+			roundTrips = Integer.parseInt(args[0]);
+		}
+		if (args.length>1)
+		{
+			frames = Integer.parseInt(args[1]);
+		}
+		System.out.println("transport     round trip (us)    frames/s");
+		run("socket", socketLink());
+		Link pipes = pipeLink();
+		if (pipes!=null)
+		{
+			run("named pipe", pipes);
+		}
+		run("shm", shmLink());
+	}
+
+	private static CommandProtocol readFrame(DataInputStream is) throws IOException
+	{
+		int cmdId = is.readInt();
+		byte action = is.readByte();
+		byte[] body = new byte[is.readInt()];
+		is.readFully(body);
+		return CommandCodec.decode(0, cmdId, action, body);
+	}
+
+	private static void run(String name, final Link link) throws Exception
+	{
+		final CommandActivateAt cmd = new CommandActivateAt(1.5, 7);
+		Thread echo = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (int i=0;i<roundTrips;i++)
+					{
+						readFrame(link.bIn);
+						CommandCodec.write(link.bOut, cmd, true);
+					}
+					for (int i=0;i<frames;i++)
+					{
+						readFrame(link.bIn);
+					}
+					CommandCodec.write(link.bOut, cmd, true);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		echo.start();
+
+		long start = System.nanoTime();
+		for (int i=0;i<roundTrips;i++)
+		{
+			CommandCodec.write(link.aOut, cmd, true);
+			readFrame(link.aIn);
+		}
+		long latency = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i=0;i<frames;i++)
+		{
+			CommandCodec.write(link.aOut, cmd, true);
+		}
+		readFrame(link.aIn);
+		long stream = System.nanoTime() - start;
+		echo.join();
+
+		System.out.println(String.format("%-12s %16.2f %12.0f", name, latency / 1000.0 / roundTrips, frames * 1e9 / stream));
+		link.aOut.close();
+		link.bOut.close();
+	}
+
+	private static Link socketLink() throws IOException
+	{
+		InetAddress loopback = InetAddress.getByName("127.0.0.1");
+		ServerSocket server = new ServerSocket(0, 1, loopback);
+		Socket a = new Socket();
+		a.connect(new InetSocketAddress(loopback, server.getLocalPort()));
+		Socket b = server.accept();
+		server.close();
+		a.setTcpNoDelay(true);
+		b.setTcpNoDelay(true);
+		Link link = new Link();
+		link.aOut = new DataOutputStream(a.getOutputStream());
+		link.aIn = new DataInputStream(a.getInputStream());
+		link.bOut = new DataOutputStream(b.getOutputStream());
+		link.bIn = new DataInputStream(b.getInputStream());
+		return link;
+	}
+
+	/**
+	 * @return The link, or null where mkfifo is missing.
+	 */
+	private static Link pipeLink() throws IOException, InterruptedException
+	{
+		final File ab = File.createTempFile("bench", "_ab");
+		final File ba = File.createTempFile("bench", "_ba");
+		ab.delete();
+		ba.delete();
+		try {
+			if ((Runtime.getRuntime().exec(CommunicationServerNamedPipe.CREATE_PIPE_COMMAND + ab).waitFor()!=0) || (Runtime.getRuntime().exec(CommunicationServerNamedPipe.CREATE_PIPE_COMMAND + ba).waitFor()!=0))
+			{
+				return null;
+			}
+		} catch (IOException e) {
+			return null;
+		}
+		ab.deleteOnExit();
+		ba.deleteOnExit();
+		final Link link = new Link();
+		// Opening a pipe blocks until the other end is opened.
+		Thread other = new Thread(new Runnable() {
+			public void run() {
+				try {
+					link.bIn = new DataInputStream(new FileInputStream(ab));
+					link.bOut = new DataOutputStream(new FileOutputStream(ba));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		other.start();
+		link.aOut = new DataOutputStream(new FileOutputStream(ab));
+		link.aIn = new DataInputStream(new FileInputStream(ba));
+		other.join();
+		return link;
+	}
+
+	private static Link shmLink() throws IOException
+	{
+		File file = File.createTempFile("bench", SharedRing.SUFFIX);
+		file.delete();
+		SharedRing[] a = SharedRing.create(file);
+		SharedRing[] b = SharedRing.open(file);
+		file.delete();
+		Link link = new Link();
+		link.aOut = new DataOutputStream(a[0].getOutputStream());
+		link.aIn = new DataInputStream(a[1].getInputStream());
+		link.bOut = new DataOutputStream(b[0].getOutputStream());
+		link.bIn = new DataInputStream(b[1].getInputStream());
+		return link;
+	}
+}
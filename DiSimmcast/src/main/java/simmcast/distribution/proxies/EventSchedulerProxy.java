@@ -4,6 +4,7 @@ import simmcast.distribution.interfaces.NodeInterface;
 import simmcast.network.Network;
 import simmcast.network.Packet;
 import simmcast.network.PathAccountQueue;
+import simmcast.node.Node;
 import simmcast.node.Path;
 
 public class EventSchedulerProxy implements EventSchedulerInterface {
@@ -11,6 +12,16 @@ public class EventSchedulerProxy implements EventSchedulerInterface {
 	private NodeInterface node;
 	private Network network;
 
+	/**
+	 * Where packets for the node go: the scheduler of the node when
+	 * it turns out to live on this worker, or this proxy when it lives
+	 * on another one. Looked up with the first packet, once every node
+	 * of the worker exists, and null until then. Packets are sent from
+	 * several threads; each either sees it unset and looks it up again,
+	 * with the same result, or sees it fully set.
+	 */
+	private volatile EventSchedulerInterface target;
+
 	public EventSchedulerProxy(NodeInterface mNode, Network mNetwork)
 	{
 		node = mNode;
@@ -19,6 +30,20 @@ public class EventSchedulerProxy implements EventSchedulerInterface {
 
 	public void schedulePacketArrival(double relativeTime_, Packet packet_,
 			PathAccountQueue pathAccount_) {
+		EventSchedulerInterface local = target;
+		if (local==null)
+		{
+			NodeInterface n = network.getNodeById(node.getNetworkId());
+			local = (n instanceof Node) ? n.getScheduler() : this;
+			target = local;
+		}
+		if (local!=this)
+		{
+			// Same worker: scheduled right away, as a Path does for
+			// a local node, and the packet is shared, not copied.
+			local.schedulePacketArrival(relativeTime_, packet_, pathAccount_);
+			return;
+		}
 		// crear el CommandPacketArrival
 		// darselo a Worker y que el CommandPacketArrival
 		// se encargue de hacer lo que corresponda
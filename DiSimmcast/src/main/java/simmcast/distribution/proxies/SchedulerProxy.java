@@ -7,6 +7,7 @@ import java.util.Vector;
 import simmcast.distribution.interfaces.ProcessInterface;
 import simmcast.distribution.interfaces.SchedulerInterface;
 import simmcast.engine.Process;
+import simmcast.engine.SchedulerTrace;
 import simmcast.network.Network;
 
 public class SchedulerProxy implements SchedulerInterface {
@@ -64,6 +65,8 @@ public class SchedulerProxy implements SchedulerInterface {
 			synchronized (running) {
 				running.add(p);
 			}
+			if (SchedulerTrace.ENABLED)
+				SchedulerTrace.record(SchedulerTrace.RESUME, now, pid);
 			p.resumeProcess();
 		}
 		return p;
@@ -72,6 +75,8 @@ public class SchedulerProxy implements SchedulerInterface {
 	public void processBlockedOrFinished(int pid) {
 		if (!started)
 			return;
+		if (SchedulerTrace.ENABLED)
+			SchedulerTrace.record(SchedulerTrace.BLOCK, now, pid);
 		synchronized (running) {
 			for (int i=0;i<running.size();i++)
 			{
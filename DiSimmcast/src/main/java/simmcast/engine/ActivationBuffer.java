@@ -0,0 +1,147 @@
+package simmcast.engine;
+
+import java.util.Arrays;
+
+import simmcast.distribution.interfaces.ProcessInterface;
+
+/**
+ * Holds the activations requested while a timestep is being executed,
+ * so that they reach the time wheel in an order that does not depend
+ * on how the processes of the step were interleaved.
+ * <p>
+ * Each activation is tagged with the pid of the process that
+ * requested it. When the step completes, the activations are applied
+ * ordered by requesting pid and, for the same pid, in the order that
+ * process requested them: the time wheel ends up as if the processes
+ * of the step had run one after the other, in pid order.
+ * Activations requested from threads that are not processes (such as
+ * the command handlers of the manager, on behalf of processes of the
+ * workers) are applied last, ordered by the pid of the activated
+ * process, then by activation time, so that their order does not
+ * depend on which handler got the lock first either.
+ * This class is not thread-safe; the scheduler guards it with the
+ * time wheel lock.
+ */
+public class ActivationBuffer {
+
+	// **************************************************
+	// ATTRIBUTES
+	// **************************************************
+
+	/**
+	 * Sort keys: requesting pid in the high half, arrival index in
+	 * the low half.
+	 */
+	long[] keys = new long[64];
+
+	/**
+	 * Number of keys.
+	 */
+	int keyCount = 0;
+
+	/**
+	 * Arrival indexes of the activations that do not come from a
+	 * process.
+	 */
+	int[] external = new int[16];
+
+	/**
+	 * Number of activations that do not come from a process.
+	 */
+	int externalCount = 0;
+
+	/**
+	 * Absolute activation times, by arrival index.
+	 */
+	double[] times = new double[64];
+
+	/**
+	 * Activated processes, by arrival index.
+	 */
+	ProcessInterface[] targets = new ProcessInterface[64];
+
+	/**
+	 * Number of buffered activations.
+	 */
+	int size = 0;
+
+	// **************************************************
+	// BUFFER CONTROL
+	// **************************************************
+
+	/**
+	 * Buffers an activation.
+	 *
+	 * @param source_ The pid of the requesting process, or -1 if the
+	 * request does not come from a process.
+	 * @param time_ Absolute activation time.
+	 * @param process_ The process to be activated.
+	 */
+	public void add(int source_, double time_, ProcessInterface process_) {
+		if (size == times.length) {
+			times = Arrays.copyOf(times, size * 2);
+			targets = Arrays.copyOf(targets, size * 2);
+		}
+		if (source_ >= 0) {
+			if (keyCount == keys.length)
+				keys = Arrays.copyOf(keys, keyCount * 2);
+			keys[keyCount++] = (((long) source_) << 32) | size;
+		} else {
+			if (externalCount == external.length)
+				external = Arrays.copyOf(external, externalCount * 2);
+			external[externalCount++] = size;
+		}
+		times[size] = time_;
+		targets[size] = process_;
+		size++;
+	}
+
+	/**
+	 * Applies the buffered activations to a time wheel and empties
+	 * the buffer.
+	 *
+	 * @param timeWheel_ The time wheel.
+	 */
+	public void flush(TimeWheel timeWheel_) {
+		Arrays.sort(keys, 0, keyCount);
+		for (int i = 0; i < keyCount; i++) {
+			int index = (int) keys[i];
+			timeWheel_.insertAt(times[index], targets[index]);
+		}
+		// Few activations come from outside the processes: an
+		// insertion sort will do.
+		for (int i = 1; i < externalCount; i++) {
+			int index = external[i];
+			int j = i;
+			for (; (j > 0) && before(index, external[j - 1]); j--)
+				external[j] = external[j - 1];
+			external[j] = index;
+		}
+		for (int i = 0; i < externalCount; i++)
+			timeWheel_.insertAt(times[external[i]], targets[external[i]]);
+		Arrays.fill(targets, 0, size, null);
+		size = 0;
+		keyCount = 0;
+		externalCount = 0;
+	}
+
+	/**
+	 * @return Whether an activation from outside the processes is
+	 * applied before another: by activated pid, then by time, then
+	 * by arrival.
+	 */
+	private boolean before(int a_, int b_) {
+		int pa = targets[a_].getPid();
+		int pb = targets[b_].getPid();
+		if (pa != pb)
+			return pa < pb;
+		if (times[a_] != times[b_])
+			return times[a_] < times[b_];
+		return a_ < b_;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+}
@@ -0,0 +1,80 @@
+package simmcast.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes scheduler trace records to a file in a compact binary format.
+ * Records are collected in a ring of primitive arrays and written out
+ * a block at a time when the ring fills up, so recording does not
+ * allocate and rarely touches the stream.
+ * <p>
+ * The file starts with the MAGIC int and the VERSION int, followed by
+ * 13-byte records: time (double), pid (int) and action (byte), all
+ * big-endian. SchedulerTraceReader decodes it.
+ */
+public class BinarySchedulerTracer implements SchedulerTracer {
+
+	public static final int MAGIC = 0x534d5452; // "SMTR"
+	public static final int VERSION = 1;
+
+	/**
+	 * Records held before a block is written.
+	 */
+	static final int DEFAULT_CAPACITY = 65536;
+
+	double[] times;
+	int[] pids;
+	byte[] actions;
+	int size = 0;
+
+	DataOutputStream out;
+
+	public BinarySchedulerTracer(String fileName_) throws IOException {
+		int capacity = Integer.getInteger("simmcast.trace.buffer", DEFAULT_CAPACITY).intValue();
+		times = new double[capacity];
+		pids = new int[capacity];
+		actions = new byte[capacity];
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName_), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	public synchronized void record(byte action_, double time_, int pid_) {
+		times[size] = time_;
+		pids[size] = pid_;
+		actions[size] = action_;
+		if (++size == times.length)
+			writeBlock();
+	}
+
+	public synchronized void close() {
+		if (out == null)
+			return;
+		writeBlock();
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+
+	private void writeBlock() {
+		if (out == null)
+			return;
+		try {
+			for (int i = 0; i < size; i++) {
+				out.writeDouble(times[i]);
+				out.writeInt(pids[i]);
+				out.writeByte(actions[i]);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		size = 0;
+	}
+
+}
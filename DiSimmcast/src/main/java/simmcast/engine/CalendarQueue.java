@@ -0,0 +1,383 @@
+package simmcast.engine;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A calendar queue (R. Brown, "Calendar queues: a fast O(1) priority
+ * queue implementation for the simulation event set problem",
+ * CACM 31(10), 1988) kept entirely in primitive arrays.
+ * <p>
+ * Events are nodes of doubly linked lists, one list per bucket, each
+ * list sorted by time. Node fields live in parallel arrays and freed
+ * nodes are recycled, so scheduling does not allocate once the arrays
+ * have grown to the working set. A table indexed by pid points at the
+ * node of each scheduled process, which makes cancellation O(1).
+ * The bucket count follows the number of pending events and the
+ * bucket width is re-estimated on every resize.
+ */
+public class CalendarQueue implements EventSet {
+
+	// **************************************************
+	// ATTRIBUTES
+	// **************************************************
+
+	/**
+	 * The bucket table never shrinks below this size.
+	 */
+	static final int MIN_BUCKETS = 16;
+
+	/**
+	 * How many events are sampled to estimate the bucket width.
+	 */
+	static final int WIDTH_SAMPLE = 32;
+
+	/**
+	 * Event nodes: time, pid, links inside the bucket list and
+	 * the bucket the node is linked in.
+	 */
+	double[] times;
+	int[] pids;
+	int[] next;
+	int[] prev;
+	int[] bucketOf;
+
+	/**
+	 * First recycled node, linked through next[].
+	 */
+	int free = -1;
+
+	/**
+	 * Nodes ever handed out.
+	 */
+	int used = 0;
+
+	/**
+	 * Node of each scheduled pid, or -1.
+	 */
+	int[] nodeOf;
+
+	/**
+	 * First and last node of each bucket, or -1.
+	 */
+	int[] head;
+	int[] tail;
+
+	/**
+	 * Bucket count minus one (the count is a power of two).
+	 */
+	int mask;
+
+	/**
+	 * The time span covered by each bucket.
+	 */
+	double width = 1.0;
+
+	/**
+	 * The virtual bucket (time / width) where the search for the
+	 * next event starts. No pending event lies before it.
+	 */
+	long lastVirtual = 0;
+
+	/**
+	 * Number of pending events.
+	 */
+	int size = 0;
+
+	/**
+	 * The node of the next event, or -1 when it must be searched.
+	 */
+	int first = -1;
+
+	// **************************************************
+	// CONSTRUCTORS
+	// **************************************************
+
+	public CalendarQueue() {
+		int capacity = 64;
+		times = new double[capacity];
+		pids = new int[capacity];
+		next = new int[capacity];
+		prev = new int[capacity];
+		bucketOf = new int[capacity];
+		nodeOf = new int[capacity];
+		Arrays.fill(nodeOf, -1);
+		head = new int[MIN_BUCKETS];
+		tail = new int[MIN_BUCKETS];
+		Arrays.fill(head, -1);
+		Arrays.fill(tail, -1);
+		mask = MIN_BUCKETS - 1;
+	}
+
+	// **************************************************
+	// EVENT SET
+	// **************************************************
+
+	public void insert(double time_, int pid_) {
+		if (pid_ < 0)
+			throw new IllegalArgumentException("Invalid pid " + pid_);
+		if (pid_ >= nodeOf.length) {
+			int old = nodeOf.length;
+			nodeOf = Arrays.copyOf(nodeOf, Math.max(old * 2, pid_ + 1));
+			Arrays.fill(nodeOf, old, nodeOf.length, -1);
+		}
+		int n = allocNode();
+		times[n] = time_;
+		pids[n] = pid_;
+		nodeOf[pid_] = n;
+		long virtual = virtual(time_);
+		link(n, (int) (virtual & mask));
+		size++;
+		if (virtual < lastVirtual)
+			lastVirtual = virtual;
+		if (first != -1 && time_ < times[first])
+			first = n;
+		if (size > 2 * head.length)
+			resize(head.length * 2);
+	}
+
+	public boolean cancel(int pid_) {
+		if (pid_ < 0 || pid_ >= nodeOf.length)
+			return false;
+		int n = nodeOf[pid_];
+		if (n == -1)
+			return false;
+		release(n);
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double firstTime() {
+		return times[findFirst()];
+	}
+
+	public int firstPid() {
+		return pids[findFirst()];
+	}
+
+	public int removeFirst() {
+		int n = findFirst();
+		int pid = pids[n];
+		release(n);
+		return pid;
+	}
+
+	/**
+	 * Events with the same time share a bucket and are adjacent in
+	 * its list, so the whole run is unlinked at once.
+	 */
+	public int drainFirst(EventBatch batch_) {
+		if (size == 0) {
+			batch_.reset(0);
+			return 0;
+		}
+		int n = findFirst();
+		double time = times[n];
+		int bucket = bucketOf[n];
+		batch_.reset(time);
+		int count = 0;
+		int before = prev[n];
+		while (n != -1 && times[n] == time) {
+			int after = next[n];
+			batch_.add(pids[n]);
+			nodeOf[pids[n]] = -1;
+			next[n] = free;
+			free = n;
+			count++;
+			n = after;
+		}
+		if (before == -1)
+			head[bucket] = n;
+		else
+			next[before] = n;
+		if (n == -1)
+			tail[bucket] = before;
+		else
+			prev[n] = before;
+		size -= count;
+		first = -1;
+		if (size < head.length / 2 && head.length > MIN_BUCKETS)
+			resize(Math.max(MIN_BUCKETS, Integer.highestOneBit(Math.max(size, 1)) * 2));
+		return count;
+	}
+
+	// **************************************************
+	// INTERNALS
+	// **************************************************
+
+	long virtual(double time_) {
+		return (long) Math.floor(time_ / width);
+	}
+
+	/**
+	 * Locates the next event, scanning at most one "year" of buckets
+	 * from the last position and falling back to a direct search of
+	 * the bucket heads when the calendar is sparse.
+	 */
+	int findFirst() {
+		if (first != -1)
+			return first;
+		if (size == 0)
+			throw new NoSuchElementException();
+		long virtual = lastVirtual;
+		for (int i = 0; i < head.length; i++, virtual++) {
+			int h = head[(int) (virtual & mask)];
+			if (h != -1 && virtual(times[h]) <= virtual) {
+				lastVirtual = virtual;
+				first = h;
+				return h;
+			}
+		}
+		int best = -1;
+		for (int b = 0; b < head.length; b++) {
+			int h = head[b];
+			if (h != -1 && (best == -1 || times[h] < times[best]))
+				best = h;
+		}
+		lastVirtual = virtual(times[best]);
+		first = best;
+		return best;
+	}
+
+	/**
+	 * Links a node into a bucket, after every node with a time lower
+	 * than or equal to its own. Insertions usually land at the tail,
+	 * so the list is walked backwards.
+	 */
+	void link(int n, int bucket) {
+		double time = times[n];
+		int p = tail[bucket];
+		while (p != -1 && times[p] > time)
+			p = prev[p];
+		bucketOf[n] = bucket;
+		prev[n] = p;
+		if (p == -1) {
+			next[n] = head[bucket];
+			head[bucket] = n;
+		}
+		else {
+			next[n] = next[p];
+			next[p] = n;
+		}
+		if (next[n] == -1)
+			tail[bucket] = n;
+		else
+			prev[next[n]] = n;
+	}
+
+	void unlink(int n) {
+		int bucket = bucketOf[n];
+		if (prev[n] == -1)
+			head[bucket] = next[n];
+		else
+			next[prev[n]] = next[n];
+		if (next[n] == -1)
+			tail[bucket] = prev[n];
+		else
+			prev[next[n]] = prev[n];
+	}
+
+	/**
+	 * Removes a node from the calendar and recycles it.
+	 */
+	void release(int n) {
+		unlink(n);
+		nodeOf[pids[n]] = -1;
+		next[n] = free;
+		free = n;
+		size--;
+		if (first == n)
+			first = -1;
+		if (size < head.length / 2 && head.length > MIN_BUCKETS)
+			resize(head.length / 2);
+	}
+
+	int allocNode() {
+		if (free != -1) {
+			int n = free;
+			free = next[n];
+			return n;
+		}
+		if (used == times.length) {
+			int capacity = times.length * 2;
+			times = Arrays.copyOf(times, capacity);
+			pids = Arrays.copyOf(pids, capacity);
+			next = Arrays.copyOf(next, capacity);
+			prev = Arrays.copyOf(prev, capacity);
+			bucketOf = Arrays.copyOf(bucketOf, capacity);
+		}
+		return used++;
+	}
+
+	/**
+	 * Rebuilds the calendar with a new bucket count and a freshly
+	 * estimated width. Nodes keep their indexes; each bucket is
+	 * relinked in list order, so events with equal times keep their
+	 * relative order.
+	 */
+	void resize(int buckets) {
+		int[] order = new int[size];
+		int count = 0;
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (int b = 0; b < head.length; b++) {
+			for (int n = head[b]; n != -1; n = next[n]) {
+				order[count++] = n;
+				if (times[n] < min)
+					min = times[n];
+				if (times[n] > max)
+					max = times[n];
+			}
+		}
+		if (count > 1 && max > min)
+			width = estimateWidth(order, count, min, max);
+		head = new int[buckets];
+		tail = new int[buckets];
+		Arrays.fill(head, -1);
+		Arrays.fill(tail, -1);
+		mask = buckets - 1;
+		for (int i = 0; i < count; i++) {
+			int n = order[i];
+			link(n, (int) (virtual(times[n]) & mask));
+		}
+		lastVirtual = (count > 0) ? virtual(min) : 0;
+		first = -1;
+	}
+
+	/**
+	 * Estimates the bucket width as three times the average distance
+	 * between distinct event times. Simulations often schedule many
+	 * processes for the same instant, so the number of distinct times
+	 * is extrapolated from a strided sample rather than taken from the
+	 * event count.
+	 */
+	double estimateWidth(int[] order, int count, double min, double max) {
+		int samples = Math.min(count, WIDTH_SAMPLE);
+		double[] sample = new double[samples];
+		int stride = count / samples;
+		for (int i = 0; i < samples; i++)
+			sample[i] = times[order[i * stride]];
+		Arrays.sort(sample);
+		int distinct = 1;
+		for (int i = 1; i < samples; i++)
+			if (sample[i] != sample[i - 1])
+				distinct++;
+		double distinctTimes = Math.max(2.0, (double) count * distinct / samples);
+		return 3.0 * (max - min) / (distinctTimes - 1);
+	}
+
+	/**
+	 * Returns the string representation of the pending events,
+	 * grouped by time as the original time wheel printed them.
+	 */
+	public String toString() {
+		TreeMapEventSet sorted = new TreeMapEventSet();
+		for (int b = 0; b < head.length; b++)
+			for (int n = head[b]; n != -1; n = next[n])
+				sorted.insert(times[n], pids[n]);
+		return sorted.toString();
+	}
+}
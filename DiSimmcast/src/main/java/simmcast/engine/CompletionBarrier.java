@@ -0,0 +1,127 @@
+package simmcast.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The per-timestep completion barrier of the scheduler. Before the
+ * processes of a timestep are resumed, the scheduler registers their
+ * pids; each process then arrives, when it blocks or finishes, and the
+ * scheduler awaits until every registered pid has arrived.
+ * <p>
+ * Arrivals are accounted in O(1) without locks: a pid-indexed flag
+ * is cleared with a compare-and-set, so an arrival from a pid that is
+ * not (or no longer) registered is ignored, and a shared counter is
+ * decremented. The arrival that brings the counter to zero unparks
+ * the awaiting thread.
+ * Processes resumed in the step may schedule new activations for the
+ * current time while the barrier is open; they stay in the time wheel
+ * and are resumed in a following round of the same timestep.
+ */
+public class CompletionBarrier {
+
+	// **************************************************
+	// ATTRIBUTES
+	// **************************************************
+
+	/**
+	 * 1 for each pid that was resumed and has not arrived yet.
+	 */
+	volatile AtomicIntegerArray pending = new AtomicIntegerArray(1024);
+
+	/**
+	 * Number of registered pids that have not arrived yet.
+	 */
+	final AtomicInteger outstanding = new AtomicInteger();
+
+	/**
+	 * The thread blocked in await(), if any.
+	 */
+	volatile Thread waiter;
+
+	// **************************************************
+	// BARRIER CONTROL
+	// **************************************************
+
+	/**
+	 * Registers a process that is about to be resumed. All processes
+	 * of a round must be registered before the first one is resumed;
+	 * only the scheduler thread registers.
+	 *
+	 * @param pid_ The pid of the process.
+	 */
+	public void register(int pid_) {
+		AtomicIntegerArray flags = pending;
+		if (pid_ >= flags.length()) {
+			// No process is outstanding while a round is being
+			// registered, so the flags can be copied safely.
+			int length = flags.length();
+			while (length <= pid_)
+				length *= 2;
+			AtomicIntegerArray grown = new AtomicIntegerArray(length);
+			for (int i = 0; i < flags.length(); i++)
+				grown.set(i, flags.get(i));
+			pending = flags = grown;
+		}
+		if (flags.compareAndSet(pid_, 0, 1))
+			outstanding.incrementAndGet();
+	}
+
+	/**
+	 * Notifies that a process has blocked or finished.
+	 *
+	 * @param pid_ The pid of the process.
+	 * @return true if the pid was registered in the current round.
+	 */
+	public boolean arrive(int pid_) {
+		AtomicIntegerArray flags = pending;
+		if (pid_ < 0 || pid_ >= flags.length() || !flags.compareAndSet(pid_, 1, 0))
+			return false;
+		if (outstanding.decrementAndGet() == 0) {
+			Thread t = waiter;
+			if (t != null)
+				LockSupport.unpark(t);
+		}
+		return true;
+	}
+
+	/**
+	 * Blocks until every registered process has arrived.
+	 */
+	public void await() throws InterruptedException {
+		waiter = Thread.currentThread();
+		try {
+			while (outstanding.get() > 0) {
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		} finally {
+			waiter = null;
+		}
+	}
+
+	/**
+	 * @return The number of processes that have not arrived yet.
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @return Whether a process was resumed and has not arrived yet.
+	 */
+	public boolean isPending(int pid_) {
+		AtomicIntegerArray flags = pending;
+		return pid_ >= 0 && pid_ < flags.length() && flags.get(pid_) == 1;
+	}
+
+	/**
+	 * @return The number of pid slots currently tracked.
+	 */
+	public int getCapacity() {
+		return pending.length();
+	}
+
+}
@@ -0,0 +1,239 @@
+package simmcast.engine;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import simmcast.distribution.interfaces.ProcessInterface;
+
+/**
+ * The local scheduler of a worker in the conservative distributed
+ * mode ("simmcast.sync" set to "conservative").
+ * <p>
+ * The worker runs its processes itself, without a round trip to the
+ * manager for every activation, but only inside the time windows
+ * the manager grants. A window is granted from the lower bound on
+ * the timestamp of any future event (the minimum, over all workers,
+ * of the next local event and of the packets sent to other workers)
+ * and ends one lookahead later: the minimum propagation delay of the
+ * paths that lead into this worker. No packet from another worker
+ * can arrive inside the window, so its events can be executed in
+ * time order without further synchronization. When the next local
+ * event falls outside the window, the scheduler reports to the
+ * manager and waits for the next one.
+ * <p>
+ * Packets from other workers are handed to deliver() and applied by
+ * the scheduler thread between timesteps, never while processes are
+ * running.
+ */
+public class ConservativeScheduler extends Scheduler {
+
+	// **************************************************
+	// CONSTANTS
+	// **************************************************
+
+	/**
+	 * The time reported for "no event": it survives the textual
+	 * encoding of the commands, unlike an infinity.
+	 */
+	public static final double NEVER = Double.MAX_VALUE;
+
+	// **************************************************
+	// INNER TYPES
+	// **************************************************
+
+	/**
+	 * Receives the report issued whenever the scheduler runs out of
+	 * events inside its window (and once before the first window).
+	 */
+	public interface WindowListener {
+
+		/**
+		 * @param nextTime_ The time of the next local event, or NEVER.
+		 * @param sentTime_ The lowest timestamp of the packets sent to
+		 * other workers since the previous report, or NEVER.
+		 * @return false if the report could not be delivered, which
+		 * stops the scheduler.
+		 */
+		public boolean windowCompleted(double nextTime_, double sentTime_);
+
+	}
+
+	// **************************************************
+	// ATTRIBUTES
+	// **************************************************
+
+	/**
+	 * Where the window reports go.
+	 */
+	WindowListener listener;
+
+	/**
+	 * Packet deliveries waiting for the scheduler thread.
+	 */
+	ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * Guards the window fields.
+	 */
+	final Object windowLock = new Object();
+
+	/**
+	 * Whether a window was granted and not yet taken.
+	 */
+	boolean granted = false;
+
+	/**
+	 * Lower bound of the granted window: no event anywhere in the
+	 * simulation is earlier.
+	 */
+	double windowStart = 0.0;
+
+	/**
+	 * Events before this time are inside the granted window.
+	 */
+	double windowEnd = 0.0;
+
+	/**
+	 * The lowest timestamp of the packets sent to other workers
+	 * since the last report. Guarded by the time wheel lock.
+	 */
+	double sentTime = NEVER;
+
+	/**
+	 * PID generator: processes are registered locally.
+	 */
+	int pidGen = 0;
+
+	// **************************************************
+	// CONSTRUCTORS
+	// **************************************************
+
+	public ConservativeScheduler(WindowListener listener_) {
+		listener = listener_;
+	}
+
+	// **************************************************
+	// SIMULATION CONTROL
+	// **************************************************
+
+	public void run() {
+		started = true;
+
+		try {
+			while (started && report())
+			{
+				awaitWindow();
+				deliverInbox();
+				while (started && insideWindow())
+				{
+					step();
+					deliverInbox();
+				}
+			}
+		} catch (InterruptedException e) {
+		}
+		started = false;
+		terminate();
+	}
+
+	/**
+	 * Grants a window. Called by the worker when the manager
+	 * opens one.
+	 *
+	 * @param start_ The lower bound on the time of every future event.
+	 * @param end_ Events before this time may be executed.
+	 */
+	public void openWindow(double start_, double end_) {
+		synchronized (windowLock) {
+			windowStart = start_;
+			windowEnd = end_;
+			granted = true;
+			windowLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Queues the delivery of a packet received from another worker.
+	 * The delivery runs on the scheduler thread, between timesteps.
+	 *
+	 * @param delivery_ The delivery.
+	 */
+	public void deliver(Runnable delivery_) {
+		inbox.add(delivery_);
+	}
+
+	/**
+	 * Accounts a packet sent to another worker.
+	 *
+	 * @param time_ The absolute arrival time of the packet.
+	 */
+	public void packetSent(double time_) {
+		synchronized (timeWheel) {
+			if (time_ < sentTime)
+				sentTime = time_;
+		}
+	}
+
+	// **************************************************
+	// WINDOW MANAGEMENT
+	// **************************************************
+
+	/**
+	 * Blocks until a window is granted and moves the clock to its
+	 * start: every local event is at or after it, so processes see
+	 * the idle time as elapsed.
+	 */
+	void awaitWindow() throws InterruptedException {
+		double start;
+		synchronized (windowLock) {
+			while (!granted)
+				windowLock.wait();
+			granted = false;
+			start = windowStart;
+		}
+		if (start > now && start < NEVER)
+			now = start;
+	}
+
+	/**
+	 * A window always admits the events at its start, so that it
+	 * makes progress even with a zero lookahead.
+	 *
+	 * @return Whether the next local event is inside the window.
+	 */
+	boolean insideWindow() {
+		double next = timeWheel.firstTime();
+		synchronized (windowLock) {
+			return next <= windowStart || next < windowEnd;
+		}
+	}
+
+	void deliverInbox() {
+		Runnable delivery;
+		while ((delivery = inbox.poll()) != null)
+			delivery.run();
+	}
+
+	boolean report() {
+		double next = Math.min(timeWheel.firstTime(), NEVER);
+		double sent;
+		synchronized (timeWheel) {
+			sent = sentTime;
+			sentTime = NEVER;
+		}
+		return listener.windowCompleted(next, sent);
+	}
+
+	// **************************************************
+	// THREAD POOL MANAGEMENT
+	// **************************************************
+
+	/**
+	 * Processes get their pids from this scheduler instead of the
+	 * manager.
+	 */
+	public synchronized void addToThreadPool(ProcessInterface process_) {
+		process_.setPid(pidGen++);
+		super.addToThreadPool(process_);
+	}
+
+}
@@ -0,0 +1,59 @@
+package simmcast.engine;
+
+import java.util.Arrays;
+
+/**
+ * The events of one timestep, as drained from the time wheel: a
+ * timestamp and the pids scheduled at it, in scheduling order.
+ * A batch is meant to be reused from step to step; its pid array
+ * only grows, so draining does not allocate once it has reached
+ * the largest step of the simulation.
+ */
+public class EventBatch {
+
+	/**
+	 * The time of the drained events.
+	 */
+	double time;
+
+	/**
+	 * The drained pids; only the first size entries are valid.
+	 */
+	int[] pids = new int[64];
+
+	/**
+	 * Number of drained pids.
+	 */
+	int size;
+
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * @return The pid array. Only the first getSize() entries are
+	 * valid, and the array is overwritten by the next drain.
+	 */
+	public int[] getPids() {
+		return pids;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Empties the batch, setting the time of the events to come.
+	 */
+	void reset(double time_) {
+		time = time_;
+		size = 0;
+	}
+
+	void add(int pid_) {
+		if (size == pids.length)
+			pids = Arrays.copyOf(pids, size * 2);
+		pids[size++] = pid_;
+	}
+
+}
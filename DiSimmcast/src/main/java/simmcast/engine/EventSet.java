@@ -0,0 +1,66 @@
+package simmcast.engine;
+
+/**
+ * The future event set behind the time wheel. It holds (time, pid)
+ * pairs and hands them back in non-decreasing time order; pairs
+ * scheduled for the same time come back in the order they were
+ * inserted. A given pid is present at most once: the time wheel
+ * cancels the previous schedule of a process before inserting the
+ * new one.
+ * Implementations are not thread-safe; the time wheel serializes
+ * all accesses.
+ */
+public interface EventSet {
+
+	/**
+	 * Adds an event.
+	 *
+	 * @param time_ Absolute time for execution.
+	 * @param pid_ The process to be scheduled at this time. It must
+	 * not be already present in the set.
+	 */
+	public void insert(double time_, int pid_);
+
+	/**
+	 * Removes the pending event of a process, if any.
+	 *
+	 * @param pid_ The identifier of the process.
+	 * @return true if an event was removed.
+	 */
+	public boolean cancel(int pid_);
+
+	/**
+	 * @return The number of pending events.
+	 */
+	public int size();
+
+	/**
+	 * @return The time of the next event. Must not be called on an
+	 * empty set.
+	 */
+	public double firstTime();
+
+	/**
+	 * @return The pid of the next event. Must not be called on an
+	 * empty set.
+	 */
+	public int firstPid();
+
+	/**
+	 * Consumes the next event.
+	 *
+	 * @return The pid of the consumed event. Must not be called on an
+	 * empty set.
+	 */
+	public int removeFirst();
+
+	/**
+	 * Consumes every event scheduled at the time of the next event.
+	 *
+	 * @param batch_ Receives the time and the pids of the consumed
+	 * events, in insertion order.
+	 * @return The number of consumed events (0 if the set is empty).
+	 */
+	public int drainFirst(EventBatch batch_);
+
+}
@@ -0,0 +1,120 @@
+package simmcast.engine;
+
+import java.util.Random;
+
+/**
+ * Compares the CalendarQueue with the TreeMapEventSet, on the hold
+ * model: the first event is removed and its process is scheduled a
+ * random time later, with the set kept at a given depth. Part of the
+ * processes are rescheduled before their time, as the time wheel does
+ * when a process is activated again, which cancels them by pid. Both
+ * sets are first checked to hand out the same events in the same
+ * order.
+ * <p>
+ * Usage: EventSetBenchmark [operations]
+ */
+public class EventSetBenchmark {
+
+	private static int operations = 1000000;
+
+	private static final int[] DEPTHS = { 10, 100, 1000, 10000, 100000 };
+
+	/**
+	 * One rescheduling before the event's time every this many
+	 * operations.
+	 */
+	private static final int CANCEL_EVERY = 4;
+
+	public static void main(String[] args) {
+		if (args.length > 0)
+			operations = Integer.parseInt(args[0]);
+		checkOrder();
+		System.out.println("depth         treemap (ns)  calendar (ns)");
+		for (int d = 0; d < DEPTHS.length; d++) {
+			int depth = DEPTHS[d];
+			int count = Math.min(operations, Math.max(100000, operations / depth * 100));
+			// Once to warm up, then timed.
+			hold(new TreeMapEventSet(), depth, count);
+			hold(new CalendarQueue(), depth, count);
+			long tree = hold(new TreeMapEventSet(), depth, count);
+			long calendar = hold(new CalendarQueue(), depth, count);
+			System.out.println(String.format("%-10d %15.1f %14.1f", depth, (double) tree / count, (double) calendar / count));
+		}
+	}
+
+	/**
+	 * @return The time taken by the operations, in nanoseconds.
+	 */
+	private static long hold(EventSet set, int depth, int count) {
+		Random random = new Random(depth);
+		for (int pid = 0; pid < depth; pid++)
+			set.insert(random.nextDouble() * depth, pid);
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			double now = set.firstTime();
+			if (i % CANCEL_EVERY == 0) {
+				int pid = random.nextInt(depth);
+				if (set.cancel(pid))
+					set.insert(now + random.nextDouble() * depth, pid);
+			} else {
+				int pid = set.removeFirst();
+				set.insert(now + random.nextDouble() * depth, pid);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Feeds both sets the same insertions, cancellations, removals
+	 * and drains, with many events due at the same time, and stops
+	 * if they hand out different events.
+	 */
+	private static void checkOrder() {
+		EventSet tree = new TreeMapEventSet();
+		EventSet calendar = new CalendarQueue();
+		EventBatch treeBatch = new EventBatch();
+		EventBatch calendarBatch = new EventBatch();
+		boolean[] present = new boolean[1000];
+		Random random = new Random(1);
+		double now = 0;
+		for (int i = 0; i < 1000000; i++) {
+			int action = random.nextInt(8);
+			int pid = random.nextInt(present.length);
+			if ((action < 4) && !present[pid]) {
+				// Whole times, so that events often fall on the same time.
+				double time = now + random.nextInt(action == 0 ? 1000 : 4);
+				tree.insert(time, pid);
+				calendar.insert(time, pid);
+				present[pid] = true;
+			} else if (action < 6) {
+				if (tree.cancel(pid) != calendar.cancel(pid))
+					throw new IllegalStateException("Cancellation of " + pid + " differs at operation " + i);
+				present[pid] = false;
+			} else if (tree.size() > 0) {
+				now = tree.firstTime();
+				if ((calendar.size() != tree.size()) || (calendar.firstTime() != now) || (calendar.firstPid() != tree.firstPid()))
+					throw new IllegalStateException("First events differ at operation " + i);
+				if (action == 6) {
+					present[tree.removeFirst()] = false;
+					calendar.removeFirst();
+				} else {
+					int n = tree.drainFirst(treeBatch);
+					if (calendar.drainFirst(calendarBatch) != n)
+						throw new IllegalStateException("Drains differ at operation " + i);
+					for (int j = 0; j < n; j++) {
+						if (treeBatch.pids[j] != calendarBatch.pids[j])
+							throw new IllegalStateException("Drains differ at operation " + i);
+						present[treeBatch.pids[j]] = false;
+					}
+				}
+			}
+		}
+		while (tree.size() > 0) {
+			if ((calendar.firstTime() != tree.firstTime()) || (calendar.removeFirst() != tree.removeFirst()))
+				throw new IllegalStateException("Events differ at the end");
+		}
+		if (calendar.size() != 0)
+			throw new IllegalStateException("Events left in the calendar queue");
+		System.out.println("Same order as the TreeMapEventSet.");
+	}
+}
@@ -22,6 +22,9 @@ package simmcast.engine;
 
 import java.util.Iterator;
 import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import simmcast.distribution.interfaces.ProcessInterface;
 import simmcast.distribution.interfaces.SchedulerInterface;
@@ -33,6 +36,27 @@ import simmcast.distribution.interfaces.SchedulerInterface;
  * thread: once it is executing user code, a process can only
  * be executed when the user code calls a predefined method
  * from this class.
+ * <p>
+ * Two execution modes are available, selected at startup with the
+ * "simmcast.process.mode" system property:
+ * <ul>
+ * <li>"thread" (the default): each process hands control over
+ * through wait()/notify() on its own mutex;</li>
+ * <li>"cooperative": the handoff is done with LockSupport.park() and
+ * unpark(), and process bodies only execute while holding one of a
+ * small, fixed set of carrier slots ("simmcast.process.carriers",
+ * the number of processors by default). Processes resumed in the
+ * same timestep then take turns on the carriers instead of all
+ * competing for the CPUs at once.</li>
+ * </ul>
+ * The cooperative mode bounds how many processes execute at once, not
+ * how many threads exist: every process still owns a thread. In both
+ * modes the stack size of process threads can be lowered with
+ * "simmcast.process.stacksize" (in bytes), which together with the
+ * thread limit of the system bounds the number of processes a JVM can
+ * hold.
+ *
+ * @see ProcessBenchmark
  *
  * @author Hisham H. Muhammad
  */
@@ -42,6 +66,38 @@ abstract public class Process extends Thread implements ProcessInterface {
 	// ATTRIBUTES
 	// **************************************************
 
+	/**
+	 * Execution mode: hand over through the process mutex.
+	 */
+	public static final int MODE_THREAD = 0;
+
+	/**
+	 * Execution mode: park/unpark handoff over a carrier pool.
+	 */
+	public static final int MODE_COOPERATIVE = 1;
+
+	/**
+	 * The execution mode of all processes in this JVM.
+	 */
+	public static final int MODE = 
+		System.getProperty("simmcast.process.mode", "thread").equalsIgnoreCase("cooperative") ? MODE_COOPERATIVE : MODE_THREAD;
+
+	/**
+	 * Stack size requested for process threads (0 is the JVM default).
+	 */
+	static final long STACK_SIZE = Long.getLong("simmcast.process.stacksize", 0).longValue();
+
+	/**
+	 * The carrier slots of the cooperative mode.
+	 */
+	static final Semaphore carriers = (MODE == MODE_COOPERATIVE) ?
+		new Semaphore(Integer.getInteger("simmcast.process.carriers", Runtime.getRuntime().availableProcessors()).intValue()) : null;
+
+	/**
+	 * Sequence used for naming process threads.
+	 */
+	static final AtomicInteger threadSeq = new AtomicInteger();
+
 	/**
 	 * A handle to the simulation scheduler, the core of the engine.
 	 */
@@ -69,6 +125,16 @@ abstract public class Process extends Thread implements ProcessInterface {
 	 */
 	Object mutex = new Object();
 
+	/**
+	 * The semaphore counter of the cooperative mode.
+	 */
+	final AtomicInteger signal = new AtomicInteger(1);
+
+	/**
+	 * Whether this process currently holds a carrier slot.
+	 */
+	boolean holdsCarrier = false;
+
 	/**
 	 * A list of other processes that are on hold waiting for this
 	 * thread to finish. In other words, the list of processes that
@@ -93,6 +159,14 @@ abstract public class Process extends Thread implements ProcessInterface {
 	 */
 	double lastSchedule = 0.0;
 
+	// **************************************************
+	// CONSTRUCTORS
+	// **************************************************
+
+	protected Process() {
+		super(null, null, "Process-" + threadSeq.getAndIncrement(), STACK_SIZE);
+	}
+
 	// **************************************************
 	// GETTERS/SETTERS
 	// **************************************************
@@ -114,7 +188,24 @@ abstract public class Process extends Thread implements ProcessInterface {
 	 * to this process.
 	 */
 	public void run() {
-		runProcess();
+		if (MODE == MODE_COOPERATIVE) {
+			try {
+				carriers.acquire();
+				holdsCarrier = true;
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				runProcess();
+			} finally {
+				if (holdsCarrier) {
+					holdsCarrier = false;
+					carriers.release();
+				}
+			}
+		}
+		else
+			runProcess();
 		isProcRunning = false;
 		Iterator<Process> iter = joinList.iterator();
 		while ( iter.hasNext() ) {
@@ -147,10 +238,12 @@ abstract public class Process extends Thread implements ProcessInterface {
 /* fin QUE HACEMOS CON ESTO ************************************////////////////
 		assert this != Thread.currentThread(): "resumed thread is already running";
 
-		if (started) {
+		if (started && MODE == MODE_COOPERATIVE) {
+			if (signal.incrementAndGet() > 0)
+				LockSupport.unpark(this);
+		} else if (started) {
 			synchronized (mutex) {
 				counter++;
-System.out.println(this.getName());
 				// FIXME Is this correct? Check.
 				if (counter > 0) // was: counter >= 0 
 					mutex.notify();
@@ -199,6 +292,10 @@ System.out.println(this.getName());
 		}
 		if (next != this) {
 			next.resumeProcess();*/
+		if (MODE == MODE_COOPERATIVE) {
+			handOff();
+			return;
+		}
 		simulationScheduler.processBlockedOrFinished(getPid());
 			synchronized (mutex) {
 				try {
@@ -216,6 +313,32 @@ System.out.println(this.getName());
 		//}
 	}
 
+	/**
+	 * The cooperative version of sleepProcess(): gives the carrier
+	 * back, reports to the scheduler and parks until resumeProcess()
+	 * signals again, then waits for a free carrier.
+	 */
+	private void handOff() throws TerminatedException {
+		holdsCarrier = false;
+		carriers.release();
+		isProcRunning = false;
+		simulationScheduler.processBlockedOrFinished(getPid());
+		if (signal.decrementAndGet() == 0) {
+			while (signal.get() <= 0) {
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new TerminatedException();
+			}
+		}
+		try {
+			carriers.acquire();
+			holdsCarrier = true;
+		} catch (InterruptedException e) {
+			throw new TerminatedException();
+		}
+		isProcRunning = true;
+	}
+
 	/**
 	 * Holds the execution of a process for a given amount of time.
 	 *
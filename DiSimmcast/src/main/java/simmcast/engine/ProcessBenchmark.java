@@ -0,0 +1,78 @@
+package simmcast.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures how many processes a JVM holds and how many events per
+ * second the scheduler executes with them, in the execution mode
+ * selected by the simmcast.process.* properties. Each process sleeps
+ * one time unit per step, so every step resumes all of them.
+ * <p>
+ * The cooperative mode bounds how many processes run at once, not how
+ * many exist: every process still owns a thread, so the number of
+ * processes is bounded by the thread limit of the system and by the
+ * stack size. The report shows the peak number of live threads along
+ * with the throughput. If a process thread cannot be started, the run
+ * stops and reports how many threads were live.
+ * <p>
+ * Usage: ProcessBenchmark [processes [steps]], for instance
+ * <pre>
+ * java -Dsimmcast.process.mode=cooperative -Dsimmcast.process.stacksize=65536 simmcast.engine.ProcessBenchmark 10000 20
+ * </pre>
+ */
+public class ProcessBenchmark {
+
+	private static int processes = 10000;
+
+	private static int steps = 20;
+
+	/**
+	 * Sleeps one time unit per step.
+	 */
+	private static class Sleeper extends Process {
+		public void runProcess() {
+			try {
+				for (int i = 0; i < steps; i++)
+					sleepProcess(1.0);
+			} catch (TerminatedException e) {
+			}
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length > 0)
+			processes = Integer.parseInt(args[0]);
+		if (args.length > 1)
+			steps = Integer.parseInt(args[1]);
+		System.out.println("mode " + ((Process.MODE == Process.MODE_COOPERATIVE) ? "cooperative" : "thread")
+			+ ", carriers " + ((Process.carriers != null) ? String.valueOf(Process.carriers.availablePermits()) : "-")
+			+ ", stack size " + ((Process.STACK_SIZE > 0) ? String.valueOf(Process.STACK_SIZE) : "default"));
+
+		// Process threads are started by the scheduler on their first
+		// resume, so running out of threads surfaces there.
+		Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			public void uncaughtException(Thread t, Throwable e) {
+				System.out.println("stopped with " + Thread.activeCount() + " live threads: " + e);
+				System.exit(1);
+			}
+		});
+		Scheduler scheduler = new Scheduler();
+		long start = System.nanoTime();
+		for (int pid = 0; pid < processes; pid++) {
+			Sleeper process = new Sleeper();
+			process.setPid(pid);
+			process.setScheduler(scheduler);
+			process.startProcess();
+		}
+		scheduler.start();
+		scheduler.join();
+		long elapsed = System.nanoTime() - start;
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long events = (long) processes * (steps + 1);
+		System.out.println(String.format("%d processes, %d steps: %.0f events/s, %.2f s, peak threads %d",
+			processes, steps, events / (elapsed / 1e9), elapsed / 1e9, threads.getPeakThreadCount()));
+		System.exit(0);
+	}
+}
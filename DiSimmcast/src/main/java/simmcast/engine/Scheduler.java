@@ -20,7 +20,7 @@
 
 package simmcast.engine;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.TreeMap;
 import java.util.Vector;
@@ -31,6 +31,11 @@ import simmcast.distribution.interfaces.SchedulerInterface;
 /**
  * This object is the core of the simulation engine.
  * It is internally used by the simulator. 
+ * <p>
+ * The processes of a timestep run at once, each on its own thread.
+ * When "simmcast.scheduler.ordered" is set, activations requested
+ * during a timestep are held in an ActivationBuffer and reach the
+ * time wheel in a deterministic order once the step completes.
  */
 public class Scheduler extends Thread implements SchedulerInterface {
 
@@ -38,6 +43,25 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	// ATTRIBUTES
 	// **************************************************
 
+	/**
+	 * Whether activations requested during a timestep are ordered
+	 * before reaching the time wheel.
+	 */
+	boolean ordered = Boolean.getBoolean("simmcast.scheduler.ordered");
+
+	/**
+	 * The activations requested during the current timestep, when
+	 * ordering is on.
+	 */
+	ActivationBuffer pendingActivations = new ActivationBuffer();
+
+	/**
+	 * Whether a timestep is being executed, that is, whether its
+	 * processes have been resumed and have not all completed.
+	 * Guarded by the time wheel lock.
+	 */
+	boolean stepOpen = false;
+
 	/**
 	 * The current simulation time.
 	 */
@@ -50,9 +74,10 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	TimeWheel timeWheel = new TimeWheel();
 
 	/**
-	 * A handle to the currently running process.
+	 * Tracks the processes resumed in the current timestep that
+	 * have not blocked or finished yet.
 	 */
-	Vector<ProcessInterface> running = new Vector<ProcessInterface>();
+	CompletionBarrier running = new CompletionBarrier();
 
 	/**
 	 * A flag to indicate that the simulation has started.
@@ -66,6 +91,33 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	 */
 	public TreeMap<Integer, ProcessInterface> threadPool = new TreeMap<Integer, ProcessInterface>();
 
+	/**
+	 * The thread pool indexed by pid, for dispatching without
+	 * boxing the pids.
+	 */
+	volatile ProcessInterface[] processes = new ProcessInterface[1024];
+
+	/**
+	 * The events of the timestep being dispatched. Reused from
+	 * step to step.
+	 */
+	EventBatch batch = new EventBatch();
+
+	/**
+	 * The processes of the batch, resolved once when the batch is
+	 * compacted: a process removed from the pool later in the step
+	 * is still resumed, so that it arrives at the barrier it was
+	 * registered in.
+	 */
+	ProcessInterface[] stepProcesses = new ProcessInterface[64];
+
+	/**
+	 * The pid of the process running inline in each thread.
+	 *
+	 * @see #enterCallback
+	 */
+	static final ThreadLocal<int[]> callbackPid = new ThreadLocal<int[]>();
+
 	// **************************************************
 	// GETTERS/SETTERS
 	// **************************************************
@@ -86,12 +138,21 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	}
 
 	/**
-	 * Returns the handle to the process that is currently
-	 * scheduled as current.
+	 * Returns the processes resumed in the current timestep that
+	 * have not blocked or finished yet. The vector is a snapshot.
 	 */
 	public Vector<ProcessInterface> currentProcesses() {
-		return running;
-	} 
+		Vector<ProcessInterface> current = new Vector<ProcessInterface>();
+		int capacity = running.getCapacity();
+		for (int pid = 0; pid < capacity; pid++) {
+			if (running.isPending(pid)) {
+				ProcessInterface p = getFromThreadPool(pid);
+				if (p != null)
+					current.add(p);
+			}
+		}
+		return current;
+	}
 
 	// **************************************************
 	// SIMULATION CONTROL
@@ -110,107 +171,68 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	public Scheduler() {
 		setName("["+getClass()+"]");
 	}
-	/**
-	 * The object that serves a  s the object mutex.
-	 */
-	java.util.concurrent.LinkedBlockingQueue<Integer> mutex = new java.util.concurrent.LinkedBlockingQueue<Integer>();
 
 	/* Thread principal del scheduler */
 	public void run() {
 		started = true;
 
-		while (started)
-		{
-			if (resumeAllProcessesOnTime()) //(resumeNextProcess())
-			{
-				while (running.size()>0)
-				{
-					try {
-						Integer pid = mutex.take();
-						synchronized (running) {
-							for (int i=0;i<running.size();i++)
-							{
-								if (running.get(i).getPid()==pid)
-								{
-									running.remove(i);
-								}
-							}
-						}
-					} catch (InterruptedException e) {
-						started = false;
-						terminate();
-						return;
-					}
-				}
-			}
-			else
-			{
-				started = false;
-			}
+		try {
+			while (started && step())
+				;
+		} catch (InterruptedException e) {
 		}
+		started = false;
 		terminate();
 	}
 
+	/**
+	 * Executes the next timestep: resumes its processes and waits
+	 * until all of them have blocked or finished.
+	 *
+	 * @return false if there was nothing left to execute.
+	 */
+	boolean step() throws InterruptedException {
+		if (!resumeAllProcessesOnTime())
+			return false;
+		running.await();
+		synchronized (timeWheel) {
+			stepOpen = false;
+			if (!pendingActivations.isEmpty())
+				pendingActivations.flush(timeWheel);
+		}
+		return true;
+	}
+
 	public void processBlockedOrFinished(int pid)
 	{
 		if (!started)
 			return;
-//		ProcessInterface p = ((ProcessInterface) Thread.currentThread());
-		try {
-			mutex.put(pid); //p.getPid());
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+		if (SchedulerTrace.ENABLED)
+			SchedulerTrace.record(SchedulerTrace.BLOCK, now, pid);
+		running.arrive(pid);
 	}
+
 	/**
 	 * Terminate the simulation. This is part of the public simulation
 	 * control interface. All processes are asked to interrupt, throwing
 	 * TerminationException exceptions.
 	 */
-	public void terminate() {
+	public synchronized void terminate() {
 		for (Iterator<ProcessInterface> iter = threadPool.values().iterator(); iter.hasNext();) {
 			ProcessInterface walk = iter.next();
 			walk.interrupt();
 		}
 		threadPool.clear();
+		processes = new ProcessInterface[processes.length];
 	}
 
 	// **************************************************
 	// TIME WHEEL MANAGEMENT
 	// **************************************************
 
-	/**
-	 * Returns a handle to the next process that is ready to execute.
-	 * This called when a thread is about to resume: it removes it
-	 * from the timewheel.
-	 *
-	 * @return A handle to the next process, or null if there are no
-	 * events remaining in the timewheel.
-	 */   
-	private boolean /*Process*/ resumeNextProcess() {
-		Event event;
-		event = timeWheel.removeFirst();
-		if (event != null) {
-			now = event.time;
-			ProcessInterface next = threadPool.get(event.pid);
-			if (running.get(0) == next) // HACE FALTA DISTINGUIR ESTO??
-			{
-				running.get(0).resumeProcess();
-			}
-			else
-			{
-				running.set(0, next);
-				running.get(0).resumeProcess();
-			}
-			return true;
-		}
-		else
-			return false;
-	}
-
 	public ProcessInterface resumeProcess(int pid)
 	{
-		return threadPool.get(pid);
+		return getFromThreadPool(pid);
 	}
 
 	/**
@@ -222,55 +244,47 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	 * events remaining in the timewheel.
 	 */   
 	private boolean /*Process*/ resumeAllProcessesOnTime() {
-		ArrayList<ProcessInterface> willResume = new ArrayList<ProcessInterface>();
-		Event event;
+		int count;
 		synchronized (timeWheel) {
-			event = timeWheel.removeFirst();
-			if (event != null) {
-				now = event.time;
-				boolean sameTime = true;
-				while (sameTime)
-				{
-					ProcessInterface next = threadPool.get(event.pid);
-					if (next!=null)
-					{
-						willResume.add(next);
-					}
-					event = timeWheel.peekFirst();
-					if (event!=null)
-					{
-						sameTime = (event.time == now);
-						if (sameTime)
-						{
-							event = timeWheel.removeFirst();
-						}
-					}
-					else
-					{
-						sameTime = false;
-					}
-				}
+			count = timeWheel.drainFirst(batch);
+			if (count > 0) {
+				now = batch.getTime();
+				stepOpen = ordered;
 			}
 		}
-		if (willResume.size()>0)
+		int[] pids = batch.getPids();
+		int resumed = 0;
+		for (int i=0;i<count;i++)
 		{
-			System.out.print("Resuming time " + now + " processes: " + willResume.size() + " ");
-			Iterator<ProcessInterface> pi = willResume.iterator();
-			while (pi.hasNext())
+			// Processes no longer in the pool are dropped; the batch
+			// is compacted in place.
+			ProcessInterface p = getFromThreadPool(pids[i]);
+			if (p != null)
 			{
-				ProcessInterface next = pi.next();
-				System.out.print(next.getPid() + ",");
-				synchronized (running) {
-					running.add(next);
-				}
-				next.resumeProcess();
+				running.register(pids[i]);
+				if (resumed == stepProcesses.length)
+					stepProcesses = Arrays.copyOf(stepProcesses, resumed * 2);
+				stepProcesses[resumed] = p;
+				pids[resumed++] = pids[i];
+			}
+		}
+		if (SchedulerTrace.ENABLED && resumed>0)
+			SchedulerTrace.record(SchedulerTrace.STEP, now, resumed);
+		if (resumed>0)
+		{
+			for (int i=0;i<resumed;i++)
+			{
+				ProcessInterface p = stepProcesses[i];
+				stepProcesses[i] = null;
+				if (SchedulerTrace.ENABLED)
+					SchedulerTrace.record(SchedulerTrace.RESUME, now, pids[i]);
+				p.resumeProcess();
 			}
-			System.out.println();
 			return true;
 		}
 		else
 		{
-			return false;
+			return count>0;
 		}
 	}
 
@@ -282,9 +296,14 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	 * @param process_ The process to be executed.
 	 */
 	public void activateAt(double relativeTime_, ProcessInterface process_) {
+		if (SchedulerTrace.ENABLED)
+			SchedulerTrace.record(SchedulerTrace.ACTIVATE, now + relativeTime_, process_.getPid());
 		synchronized (timeWheel)
 		{
-			timeWheel.insertAt(now + relativeTime_, process_);
+			if (stepOpen)
+				pendingActivations.add(currentPid(), now + relativeTime_, process_);
+			else
+				timeWheel.insertAt(now + relativeTime_, process_);
 		}
 	}
 
@@ -294,12 +313,45 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	 * @param process_ The process to be executed immediately.
 	 */
 	public void activateNow(ProcessInterface process_) {
+		if (SchedulerTrace.ENABLED)
+			SchedulerTrace.record(SchedulerTrace.ACTIVATE, now, process_.getPid());
 		synchronized (timeWheel)
 		{
-			timeWheel.insertAt(now, process_);
+			if (stepOpen)
+				pendingActivations.add(currentPid(), now, process_);
+			else
+				timeWheel.insertAt(now, process_);
 		}
 	}
 
+	/**
+	 * @return The pid of the process running in the calling thread,
+	 * or -1 if the caller is not a process.
+	 */
+	private static int currentPid() {
+		Thread current = Thread.currentThread();
+		if (current instanceof ProcessInterface)
+			return ((ProcessInterface) current).getPid();
+		int[] callback = callbackPid.get();
+		return (callback != null) ? callback[0] : -1;
+	}
+
+	/**
+	 * Called by a process that runs inline, on the thread that
+	 * resumed it, instead of in its own thread: the activations it
+	 * requests are ordered by its pid, as if it had a thread.
+	 *
+	 * @param pid_ The pid of the process, or -1 when it returns.
+	 */
+	public static void enterCallback(int pid_) {
+		int[] callback = callbackPid.get();
+		if (callback == null) {
+			callback = new int[1];
+			callbackPid.set(callback);
+		}
+		callback[0] = pid_;
+	}
+
 	// **************************************************
 	// THREAD POOL MANAGEMENT
 	// **************************************************
@@ -309,8 +361,18 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	 *
 	 * @param process_ The process to be scheduled.
 	 */
-	public void addToThreadPool(ProcessInterface process_) {
-		threadPool.put(process_.getPid(), process_);
+	public synchronized void addToThreadPool(ProcessInterface process_) {
+		int pid = process_.getPid();
+		ProcessInterface[] table = processes;
+		if (pid >= table.length) {
+			int length = table.length;
+			while (length <= pid)
+				length *= 2;
+			table = Arrays.copyOf(table, length);
+		}
+		table[pid] = process_;
+		processes = table;
+		threadPool.put(pid, process_);
 	}
 
 	/**
@@ -318,14 +380,20 @@ public class Scheduler extends Thread implements SchedulerInterface {
 	 *
 	 * @param process_ The process to be removed.
 	 */
-	public void removeFromThreadPool(ProcessInterface process_) {
+	public synchronized void removeFromThreadPool(ProcessInterface process_) {
 		if (!started)
 			return;
-		threadPool.remove(process_.getPid());
+		int pid = process_.getPid();
+		ProcessInterface[] table = processes;
+		if (pid < table.length)
+			table[pid] = null;
+		processes = table;
+		threadPool.remove(pid);
 	}
 
 	public ProcessInterface getFromThreadPool(int pid) {
-		return threadPool.get(pid);
+		ProcessInterface[] table = processes;
+		return (pid >= 0 && pid < table.length) ? table[pid] : null;
 	}
 
 	// **************************************************
@@ -350,7 +418,7 @@ public class Scheduler extends Thread implements SchedulerInterface {
 		return "\n" +
 		"========================================\n" +
 		"now: " + now + "\n" +
-		"running: " + running + "\n" +
+		"running: " + currentProcesses() + "\n" +
 		"----------------------------------------\n" +
 		"timeWheel: " + timeWheel + "\n" +
 		"----------------------------------------\n" +
@@ -0,0 +1,102 @@
+package simmcast.engine;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Entry point of scheduler tracing. Tracing is off unless the
+ * "simmcast.trace.scheduler" system property is set when the JVM
+ * starts; its value is either the name of the file that receives the
+ * records of a BinarySchedulerTracer, or "class:" followed by the name
+ * of a SchedulerTracer implementation with a public no-argument
+ * constructor.
+ * <p>
+ * Call sites test ENABLED before recording. It is a static final
+ * field, so with tracing off the JIT folds the test and the calls
+ * cost nothing.
+ */
+public final class SchedulerTrace {
+
+	// **************************************************
+	// ACTIONS
+	// **************************************************
+
+	/**
+	 * A timestep starts; pid holds the number of its processes.
+	 */
+	public static final byte STEP = 1;
+
+	/**
+	 * A process is resumed.
+	 */
+	public static final byte RESUME = 2;
+
+	/**
+	 * A process blocked or finished.
+	 */
+	public static final byte BLOCK = 3;
+
+	/**
+	 * A process was scheduled; time is the absolute activation time.
+	 */
+	public static final byte ACTIVATE = 4;
+
+	static final String[] ACTION_NAMES = { "?", "STEP", "RESUME", "BLOCK", "ACTIVATE" };
+
+	// **************************************************
+	// ATTRIBUTES
+	// **************************************************
+
+	public static final String PROPERTY = "simmcast.trace.scheduler";
+
+	/**
+	 * Whether scheduler tracing is on.
+	 */
+	public static final boolean ENABLED = System.getProperty(PROPERTY) != null;
+
+	/**
+	 * The installed tracer, when ENABLED.
+	 */
+	static final SchedulerTracer tracer = ENABLED ? createTracer(System.getProperty(PROPERTY)) : null;
+
+	private SchedulerTrace() {
+	}
+
+	// **************************************************
+	// TRACING
+	// **************************************************
+
+	/**
+	 * Records a scheduling action. Must only be called when ENABLED.
+	 */
+	public static void record(byte action_, double time_, int pid_) {
+		tracer.record(action_, time_, pid_);
+	}
+
+	/**
+	 * @return The name of an action code.
+	 */
+	public static String actionName(int action_) {
+		return (action_ > 0 && action_ < ACTION_NAMES.length) ? ACTION_NAMES[action_] : ACTION_NAMES[0];
+	}
+
+	private static SchedulerTracer createTracer(String spec_) {
+		final SchedulerTracer created;
+		try {
+			if (spec_.startsWith("class:"))
+				created = (SchedulerTracer) Class.forName(spec_.substring(6)).getDeclaredConstructor().newInstance();
+			else
+				created = new BinarySchedulerTracer(spec_);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException("Cannot create scheduler tracer " + spec_, e.getCause());
+		} catch (Exception e) {
+			throw new RuntimeException("Cannot create scheduler tracer " + spec_, e);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread("[scheduler trace]") {
+			public void run() {
+				created.close();
+			}
+		});
+		return created;
+	}
+
+}
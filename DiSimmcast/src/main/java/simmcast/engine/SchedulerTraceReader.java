@@ -0,0 +1,52 @@
+package simmcast.engine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Decodes a file written by BinarySchedulerTracer, printing one line
+ * per record: time, action and pid.
+ * <p>
+ * Usage: java simmcast.engine.SchedulerTraceReader file [pid]
+ * <br>When a pid is given, only the records of that process are
+ * printed (STEP records are always printed).
+ */
+public class SchedulerTraceReader {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: java simmcast.engine.SchedulerTraceReader <file> [pid]");
+			System.exit(1);
+		}
+		int filter = (args.length > 1) ? Integer.parseInt(args[1]) : -1;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]), 1 << 16));
+		if (in.readInt() != BinarySchedulerTracer.MAGIC) {
+			System.err.println(args[0] + ": not a scheduler trace");
+			System.exit(1);
+		}
+		int version = in.readInt();
+		if (version != BinarySchedulerTracer.VERSION) {
+			System.err.println(args[0] + ": unsupported trace version " + version);
+			System.exit(1);
+		}
+		StringBuilder line = new StringBuilder();
+		try {
+			while (true) {
+				double time = in.readDouble();
+				int pid = in.readInt();
+				byte action = in.readByte();
+				if (filter >= 0 && action != SchedulerTrace.STEP && pid != filter)
+					continue;
+				line.setLength(0);
+				line.append(time).append(' ').append(SchedulerTrace.actionName(action)).append(' ').append(pid);
+				System.out.println(line);
+			}
+		} catch (EOFException e) {
+		}
+		in.close();
+	}
+
+}
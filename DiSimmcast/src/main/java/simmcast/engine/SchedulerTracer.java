@@ -0,0 +1,25 @@
+package simmcast.engine;
+
+/**
+ * A sink for scheduler trace records. Implementations are installed
+ * through SchedulerTrace and are called concurrently from the
+ * scheduler and process threads.
+ */
+public interface SchedulerTracer {
+
+	/**
+	 * Records a scheduling action.
+	 *
+	 * @param action_ One of the SchedulerTrace action codes.
+	 * @param time_ The simulation time the action refers to.
+	 * @param pid_ The process involved (for STEP, the number of
+	 * processes in the step).
+	 */
+	public void record(byte action_, double time_, int pid_);
+
+	/**
+	 * Writes out pending records and releases resources.
+	 */
+	public void close();
+
+}
@@ -20,10 +20,6 @@
 
 package simmcast.engine;
 
-import java.util.Iterator;
-import java.util.ArrayList;
-import java.util.TreeMap;
-
 import simmcast.distribution.interfaces.ProcessInterface;
 
 /**
@@ -33,50 +29,67 @@ import simmcast.distribution.interfaces.ProcessInterface;
  * simulation time, events are consumed in order from the time wheel.
  * Events can be added (scheduled for execution) at any future time.
  * Timings in the time wheel are absolute.
+ * <p>
+ * The tuples are kept in an EventSet. The implementation is chosen with
+ * the "simmcast.eventset" system property: "calendar" (the default) for
+ * the CalendarQueue, "treemap" for the original sorted map.
  *
  * @author Hisham H. Muhammad
  */
 public class TimeWheel {
 
+	/**
+	 * System property selecting the event set implementation.
+	 */
+	public static final String EVENT_SET_PROPERTY = "simmcast.eventset";
+
 	/**
 	 * The actual structure holding the wheel data.
 	 */
-	TreeMap<Double, ArrayList<Integer>> wheel;
+	EventSet wheel;
 
 	/**
-	 * Build and initialize an empty time wheel.
+	 * Build and initialize an empty time wheel, backed by the event
+	 * set selected through EVENT_SET_PROPERTY.
 	 */
 	public TimeWheel() {
-		wheel = new TreeMap<Double, ArrayList<Integer>>();
+		this(createEventSet(System.getProperty(EVENT_SET_PROPERTY, "calendar")));
 	}
 
-	//TODO: Review the semantic of this function
-	public long getSize() {
+	/**
+	 * Build and initialize an empty time wheel.
+	 *
+	 * @param wheel_ The (empty) event set holding the wheel data.
+	 */
+	public TimeWheel(EventSet wheel_) {
+		wheel = wheel_;
+	}
+
+	/**
+	 * Instantiates an event set by name.
+	 *
+	 * @param name_ "calendar" or "treemap".
+	 */
+	public static EventSet createEventSet(String name_) {
+		if (name_.equalsIgnoreCase("treemap"))
+			return new TreeMapEventSet();
+		if (name_.equalsIgnoreCase("calendar"))
+			return new CalendarQueue();
+		throw new IllegalArgumentException("Unknown event set: " + name_);
+	}
+
+	/**
+	 * @return The number of scheduled events.
+	 */
+	public synchronized long getSize() {
 		return wheel.size();
 	}
 
 	/**
-	 * Finds a process on the Time Wheel. If it's found, it 
-	 * will be removed, for the insertion of the same process
-	 * in another time. This method is called by "insertAt" 
-	 * method.
-	 * 
-	 * @param time_ The time scheduled for execution of the process to be removed.
-	 * @param pid_ The identifier of the process to be removed.
+	 * @return true if there are no scheduled events.
 	 */
-	private void searchEvent(double time_, int pid_) {
-		synchronized(wheel) {
-			if (wheel.containsKey(time_)) {
-				if (wheel.get(time_).contains(pid_)) {
-					if (wheel.get(time_).size() > 1) {
-						wheel.get(time_).remove((Object) pid_);
-					}
-					else {
-						wheel.remove(time_);
-					}
-				}
-			}
-		}
+	public synchronized boolean isEmpty() {
+		return wheel.size() == 0;
 	}
 
 	/**
@@ -88,14 +101,58 @@ public class TimeWheel {
 	 * @param time_ Absolute time for execution.
 	 * @param process_ The process to be scheduled at this time.
 	 */
-	public void insertAt(double time_, ProcessInterface proc_) {
-		searchEvent(proc_.getLastSchedule(), proc_.getPid());
-		synchronized(wheel) {
-			if (!wheel.containsKey(time_))
-				wheel.put(time_, new ArrayList<Integer>());
-			wheel.get(time_).add(proc_.getPid());
-			proc_.setLastSchedule(time_);
-		}
+	public synchronized void insertAt(double time_, ProcessInterface proc_) {
+		wheel.cancel(proc_.getPid());
+		wheel.insert(time_, proc_.getPid());
+		proc_.setLastSchedule(time_);
+	}
+
+	/**
+	 * Removes the scheduled event of a process, if any.
+	 *
+	 * @param pid_ The identifier of the process.
+	 * @return true if the process had a scheduled event.
+	 */
+	public synchronized boolean cancel(int pid_) {
+		return wheel.cancel(pid_);
+	}
+
+	/**
+	 * Returns the time of the next element that would be consumed
+	 * by removeFirst().
+	 *
+	 * @return The absolute time of the next event, or
+	 * Double.POSITIVE_INFINITY if the wheel is empty.
+	 */
+	public synchronized double firstTime() {
+		if (wheel.size() == 0)
+			return Double.POSITIVE_INFINITY;
+		return wheel.firstTime();
+	}
+
+	/**
+	 * Consume the next element from the time wheel, without building
+	 * an Event tuple.
+	 *
+	 * @return The pid of the next process to be scheduled, or -1 if
+	 * the wheel is empty.
+	 */
+	public synchronized int removeFirstPid() {
+		if (wheel.size() == 0)
+			return -1;
+		return wheel.removeFirst();
+	}
+
+	/**
+	 * Consume all the elements scheduled at the earliest time in the
+	 * wheel, in the order they were scheduled.
+	 *
+	 * @param batch_ Receives the time and the pids. It is meant to be
+	 * reused between calls, so that draining does not allocate.
+	 * @return The number of drained pids, 0 if the wheel is empty.
+	 */
+	public synchronized int drainFirst(EventBatch batch_) {
+		return wheel.drainFirst(batch_);
 	}
 
 	/**
@@ -105,18 +162,11 @@ public class TimeWheel {
 	 * @return The event tuple containing a handle to the next
 	 * process to be scheduled.
 	 */   
-	public Event removeFirst() {
-		Event resultEv = null;
-		synchronized(wheel) {
-			if (wheel.size() > 0) {
-				double auxTime = wheel.firstKey();
-				int auxPid = wheel.get(auxTime).remove(0);
-				if (wheel.get(auxTime).size() <= 0)
-					wheel.remove(auxTime);
-				resultEv = new Event(auxTime, auxPid);
-			}
-		}
-		return resultEv;
+	public synchronized Event removeFirst() {
+		if (wheel.size() == 0)
+			return null;
+		double time = wheel.firstTime();
+		return new Event(time, wheel.removeFirst());
 	}
 
 	/**
@@ -126,16 +176,10 @@ public class TimeWheel {
 	 * @return The event tuple containing a handle to the next
 	 * process to be scheduled.
 	 */
-	public Event peekFirst() {
-		Event resultEv = null;
-		synchronized(wheel) {
-			if (wheel.size() > 0) {
-				double auxTime = wheel.firstKey();
-				int auxPid = wheel.get(auxTime).get(0);
-				resultEv = new Event(auxTime, auxPid);
-			}
-		}
-		return resultEv;
+	public synchronized Event peekFirst() {
+		if (wheel.size() == 0)
+			return null;
+		return new Event(wheel.firstTime(), wheel.firstPid());
 	}
 
 	/**
@@ -144,12 +188,7 @@ public class TimeWheel {
 	 * @return A multiline string describing the current status of
 	 * the time wheel.
 	 */
-	public String toString() {
-		String out = "";
-		for (Iterator<ArrayList<Integer>> iter = wheel.values().iterator(); iter.hasNext();) {
-			ArrayList<Integer> walk = iter.next();
-			out = out + "\n" + walk;
-		}
-		return out;
+	public synchronized String toString() {
+		return wheel.toString();
 	}
 }
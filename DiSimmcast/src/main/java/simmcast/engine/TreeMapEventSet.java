@@ -0,0 +1,98 @@
+package simmcast.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * The original time wheel structure: a sorted map from timestamps
+ * to the list of pids scheduled at that time. Kept as a reference
+ * implementation of the event set.
+ */
+public class TreeMapEventSet implements EventSet {
+
+	/**
+	 * The actual structure holding the wheel data.
+	 */
+	TreeMap<Double, ArrayList<Integer>> wheel = new TreeMap<Double, ArrayList<Integer>>();
+
+	/**
+	 * The time each pending pid is scheduled at.
+	 */
+	HashMap<Integer, Double> scheduled = new HashMap<Integer, Double>();
+
+	int size = 0;
+
+	public void insert(double time_, int pid_) {
+		ArrayList<Integer> list = wheel.get(time_);
+		if (list == null) {
+			list = new ArrayList<Integer>();
+			wheel.put(time_, list);
+		}
+		list.add(pid_);
+		scheduled.put(pid_, time_);
+		size++;
+	}
+
+	public boolean cancel(int pid_) {
+		Double time = scheduled.remove(pid_);
+		if (time == null)
+			return false;
+		ArrayList<Integer> list = wheel.get(time);
+		list.remove((Object) pid_);
+		if (list.size() == 0)
+			wheel.remove(time);
+		size--;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double firstTime() {
+		return wheel.firstKey();
+	}
+
+	public int firstPid() {
+		return wheel.get(wheel.firstKey()).get(0);
+	}
+
+	public int removeFirst() {
+		double time = wheel.firstKey();
+		ArrayList<Integer> list = wheel.get(time);
+		int pid = list.remove(0);
+		if (list.size() == 0)
+			wheel.remove(time);
+		scheduled.remove(pid);
+		size--;
+		return pid;
+	}
+
+	public int drainFirst(EventBatch batch_) {
+		if (size == 0) {
+			batch_.reset(0);
+			return 0;
+		}
+		double time = wheel.firstKey();
+		ArrayList<Integer> list = wheel.remove(time);
+		batch_.reset(time);
+		for (int i = 0; i < list.size(); i++) {
+			int pid = list.get(i);
+			scheduled.remove(pid);
+			batch_.add(pid);
+		}
+		size -= list.size();
+		return list.size();
+	}
+
+	public String toString() {
+		String out = "";
+		for (Iterator<ArrayList<Integer>> iter = wheel.values().iterator(); iter.hasNext();) {
+			ArrayList<Integer> walk = iter.next();
+			out = out + "\n" + walk;
+		}
+		return out;
+	}
+}
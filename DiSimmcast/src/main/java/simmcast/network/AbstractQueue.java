@@ -166,10 +166,8 @@ abstract public class AbstractQueue {
     * enqueue operation.
     */
    void accountEnqueue() throws FullQueueException {
-      if (!empty && size == sizeLimit)
+      if (!accountOffer())
          throw new FullQueueException();
-      empty = false;
-      size++;
    }
 
    /**
@@ -178,11 +176,37 @@ abstract public class AbstractQueue {
     * enqueue operation.
     */
    void accountDequeue() throws EmptyQueueException {
-      if (empty)
+      if (!accountPoll())
          throw new EmptyQueueException();
+   }
+
+   /**
+    * The non-throwing version of accountEnqueue(), for the
+    * queueing fast paths.
+    *
+    * @return Returns false if the queue is full, in which case
+    * nothing was changed.
+    */
+   boolean accountOffer() {
+      if (!empty && size == sizeLimit)
+         return false;
+      empty = false;
+      size++;
+      return true;
+   }
+
+   /**
+    * The non-throwing version of accountDequeue().
+    *
+    * @return Returns false if the queue is empty.
+    */
+   boolean accountPoll() {
+      if (empty)
+         return false;
       size--;
       if (size == 0)
          empty = true;
+      return true;
    }
 
 }
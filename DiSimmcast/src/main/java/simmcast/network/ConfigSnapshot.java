@@ -0,0 +1,175 @@
+package simmcast.network;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An immutable copy of the cacheable fields of the Network, as the
+ * manager had them when the simulation started or when one of them
+ * last changed. Workers read these fields from their copy instead of
+ * asking the manager. The numeric value of each field is worked out
+ * once, so that the typed getters neither parse nor allocate.
+ *
+ * @see Network#get
+ */
+public final class ConfigSnapshot {
+
+   // *****************************************************
+   // ATTRIBUTES
+   // *****************************************************
+
+   /**
+    * Incremented by the manager on every change.
+    */
+   private final int version;
+
+   private final HashMap<String, Entry> entries;
+
+   /**
+    * A field and its value in each primitive type.
+    */
+   private static final class Entry {
+      final Object value;
+      final boolean numeric;
+      final long longValue;
+      final double doubleValue;
+      final boolean booleanValue;
+      final char charValue;
+
+      Entry(Object value_) {
+         value = value_;
+         long l = 0;
+         double d = 0;
+         boolean n = true;
+         if (value_ instanceof Number) {
+            l = ((Number) value_).longValue();
+            d = ((Number) value_).doubleValue();
+         } else if (value_ instanceof Character) {
+            l = ((Character) value_).charValue();
+            d = l;
+         } else if (value_ instanceof String) {
+            String s = ((String) value_).trim();
+            try {
+               l = Long.parseLong(s);
+               d = l;
+            } catch (NumberFormatException e) {
+               try {
+                  d = Double.parseDouble(s);
+                  l = (long) d;
+               } catch (NumberFormatException e2) {
+                  n = false;
+               }
+            }
+         } else {
+            n = false;
+         }
+         numeric = n;
+         longValue = l;
+         doubleValue = d;
+         if (value_ instanceof Boolean) {
+            booleanValue = ((Boolean) value_).booleanValue();
+         } else {
+            booleanValue = (value_ != null) && Boolean.parseBoolean(value_.toString());
+         }
+         if (value_ instanceof Character) {
+            charValue = ((Character) value_).charValue();
+         } else {
+            charValue = ((value_ != null) && (value_.toString().length() > 0)) ? value_.toString().charAt(0) : 0;
+         }
+      }
+   }
+
+   // *****************************************************
+   // CONSTRUCTORS
+   // *****************************************************
+
+   /**
+    * @param version_ The version of the snapshot.
+    * @param values_ The value of each field, by name.
+    */
+   public ConfigSnapshot(int version_, Map<String, Object> values_) {
+      this(version_, new HashMap<String, Entry>(), values_);
+   }
+
+   private ConfigSnapshot(int version_, HashMap<String, Entry> entries_, Map<String, Object> values_) {
+      version = version_;
+      entries = entries_;
+      for (Iterator<Map.Entry<String, Object>> it = values_.entrySet().iterator(); it.hasNext();) {
+         Map.Entry<String, Object> e = it.next();
+         entries.put(e.getKey(), new Entry(e.getValue()));
+      }
+   }
+
+   /**
+    * Builds the snapshot that follows this one after some fields
+    * changed; this snapshot is left untouched.
+    *
+    * @param version_ The version of the new snapshot.
+    * @param values_ The new value of each changed field.
+    * @return The new snapshot.
+    */
+   public ConfigSnapshot update(int version_, Map<String, Object> values_) {
+      return new ConfigSnapshot(version_, new HashMap<String, Entry>(entries), values_);
+   }
+
+   // *****************************************************
+   // GETTERS
+   // *****************************************************
+
+   public int getVersion() {
+      return version;
+   }
+
+   public boolean contains(String fieldName) {
+      return entries.containsKey(fieldName);
+   }
+
+   public Object get(String fieldName) {
+      return entries.get(fieldName).value;
+   }
+
+   public long getLong(String fieldName) {
+      return numeric(fieldName).longValue;
+   }
+
+   public int getInt(String fieldName) {
+      return (int) numeric(fieldName).longValue;
+   }
+
+   public short getShort(String fieldName) {
+      return (short) numeric(fieldName).longValue;
+   }
+
+   public byte getByte(String fieldName) {
+      return (byte) numeric(fieldName).longValue;
+   }
+
+   public double getDouble(String fieldName) {
+      return numeric(fieldName).doubleValue;
+   }
+
+   public float getFloat(String fieldName) {
+      return (float) numeric(fieldName).doubleValue;
+   }
+
+   public boolean getBoolean(String fieldName) {
+      return entries.get(fieldName).booleanValue;
+   }
+
+   public char getChar(String fieldName) {
+      return entries.get(fieldName).charValue;
+   }
+
+   /**
+    * @throws NumberFormatException If the value of the field is not
+    * a number, as parsing it would.
+    */
+   private Entry numeric(String fieldName) {
+      Entry e = entries.get(fieldName);
+      if (!e.numeric) {
+         throw new NumberFormatException("For field " + fieldName + ": " + e.value);
+      }
+      return e;
+   }
+}
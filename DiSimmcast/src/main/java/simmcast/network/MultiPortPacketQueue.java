@@ -68,28 +68,22 @@ public class MultiPortPacketQueue extends PacketMultiQueue {
    // QUEUE OPERATIONS
    // *************************************************
    
-   /** 
-    * Adds a packet to the end of a queue, anonymously. 
-    * If there is a queue for the specific port ("port" field) 
-    * of this packet, use that queue. Else, add it to the 
-    * anonymous queue. 
-    * 
-    * @param packet_ The packet to be queued. 
+   /**
+    * Tells the queue of an anonymous enqueue. If there is a
+    * queue for the specific port ("port" field) of this
+    * packet, use that queue. Else, use the anonymous queue.
+    *
+    * @param packet_ The packet.
+    *
+    * @return The queue id.
     */
-   public void enqueue(Packet packet_) throws FullQueueException {
-      try {
-         if (packet_.data instanceof TransportPacket) {
-            TransportPacket tp = (TransportPacket)packet_.data;
-            PacketQueue dummy = queue(tp.port);
-            enqueue(packet_, tp.port);
-         } else {
-            enqueue(packet_, ANONYMOUS);
-         }
-      } catch (InvalidIdentifierException e1) {
-         try {
-            enqueue(packet_, -1);
-         } catch (InvalidIdentifierException e2) {}
+   public int queueId(Packet packet_) {
+      if (packet_.data instanceof TransportPacket) {
+         int port = ((TransportPacket)packet_.data).port;
+         if (hasQueue(port))
+            return port;
       }
+      return ANONYMOUS;
    }
 
 }
@@ -46,23 +46,17 @@ public class MultiSenderPacketQueue extends PacketMultiQueue {
       super(name_);
    }
 
-   /** 
-    * Adds a packet to the end of a queue, anonymously. 
-    * If there is a queue for the specific sender ("from" field) 
-    * of this packet, use that queue. Else, add it to the 
-    * anonymous queue. 
-    * 
-    * @param packet_ The packet to be queued. 
+   /**
+    * Tells the queue of an anonymous enqueue. If there is a
+    * queue for the specific sender ("from" field) of this
+    * packet, use that queue. Else, use the anonymous queue.
+    *
+    * @param packet_ The packet.
+    *
+    * @return The queue id.
     */
-   public void enqueue(Packet packet_) throws FullQueueException {
-      try {
-         PacketQueue dummy = queue(packet_.from);
-         enqueue(packet_, packet_.from);
-      } catch (InvalidIdentifierException e1) {
-         try {
-            enqueue(packet_, -1);
-         } catch (InvalidIdentifierException e2) {}
-      }
+   public int queueId(Packet packet_) {
+      return hasQueue(packet_.from) ? packet_.from : -1;
    }
 
 }
@@ -7,7 +7,11 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Random;
 
 import simmcast.distribution.Worker;
@@ -25,6 +29,7 @@ import simmcast.group.GroupTable;
 import simmcast.node.Node;
 import simmcast.node.NodeVector;
 import simmcast.script.InvalidFileException;
+import simmcast.script.MemberCache;
 import simmcast.script.ScriptParser;
 import simmcast.trace.NullTraceGenerator;
 import simmcast.trace.TraceGenerator;
@@ -116,8 +121,18 @@ public class Network extends simmcast.engine.Process {
    private Manager manager;
    private Worker worker;
    
+   /**
+    * The fields that do not change during the simulation, or whose
+    * changes are announced with configChanged(). Workers read them
+    * from the config snapshot the manager sends them.
+    */
    protected HashMap<String, Object> cacheable_fields;
 
+   /**
+    * The cacheable fields as the manager last sent them.
+    */
+   private volatile ConfigSnapshot config;
+
    /**
     * TODO
     */
@@ -162,7 +177,10 @@ public class Network extends simmcast.engine.Process {
 		{
 	  		System.out.println("Worker connected succesfully");
 		}
-	    setScheduler(new simmcast.distribution.proxies.SchedulerProxy(this));
+	    if (Manager.CONSERVATIVE)
+	    	setScheduler(new simmcast.engine.ConservativeScheduler(worker));
+	    else
+	    	setScheduler(new simmcast.distribution.proxies.SchedulerProxy(this));
       }
    }
 
@@ -234,7 +252,14 @@ public class Network extends simmcast.engine.Process {
       running = true;
       tracer.setNetwork(this);
 
-      if (isManager)
+      if (isManager && Manager.CONSERVATIVE)
+      {
+    	  // The workers schedule their own processes; the manager
+    	  // only coordinates their time windows.
+    	  start();
+    	  manager.startSimulation();
+      }
+      else if (isManager)
       {
     	  /* THIS IS TO SET NETWORK PROCESS REAL PID */
     	  ProcessProxy temp = new ProcessProxy(this, -1); 
@@ -260,7 +285,8 @@ public class Network extends simmcast.engine.Process {
       }
       //--------------------------------------------------------
 
-      simulationScheduler.start();
+      if (!(isManager && Manager.CONSERVATIVE))
+         simulationScheduler.start();
 
       // Holding execution of the <b> main</b> thread:
       try {
@@ -292,7 +318,7 @@ public class Network extends simmcast.engine.Process {
    }
 
    public void run() {
-	   if (isManager)
+	   if (isManager && !Manager.CONSERVATIVE)
 	   {
 		   super.run();
 	   }
@@ -617,6 +643,11 @@ public class Network extends simmcast.engine.Process {
 
    public int getAsInt(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getInt(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Integer)
 	   {
@@ -631,6 +662,11 @@ public class Network extends simmcast.engine.Process {
 
    public double getAsDouble(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getDouble(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Double)
 	   {
@@ -645,6 +681,11 @@ public class Network extends simmcast.engine.Process {
 
    public char getAsChar(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getChar(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Character)
 	   {
@@ -659,6 +700,11 @@ public class Network extends simmcast.engine.Process {
 
    public byte getAsByte(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getByte(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Byte)
 	   {
@@ -673,6 +719,11 @@ public class Network extends simmcast.engine.Process {
 
    public float getAsFloat(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getFloat(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Float)
 	   {
@@ -687,6 +738,11 @@ public class Network extends simmcast.engine.Process {
 
    public boolean getAsBoolean(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getBoolean(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Boolean)
 	   {
@@ -701,6 +757,11 @@ public class Network extends simmcast.engine.Process {
 
    public short getAsShort(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getShort(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Short)
 	   {
@@ -715,6 +776,11 @@ public class Network extends simmcast.engine.Process {
 
    public long getAsLong(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.getLong(fieldName);
+	   }
 	   Object g = get(fieldName);
 	   if (g instanceof Long)
 	   {
@@ -727,26 +793,97 @@ public class Network extends simmcast.engine.Process {
 	   return Long.MIN_VALUE;	   
    }
 
+   /**
+    * Worker: the config snapshot, if it holds the field.
+    */
+   private ConfigSnapshot localConfig(String fieldName)
+   {
+	   ConfigSnapshot c = config;
+	   return ((!isManager) && (c!=null) && c.contains(fieldName)) ? c : null;
+   }
+
+   private HashMap<String, Object> readFields(Collection<String> fieldNames)
+   {
+	   HashMap<String, Object> values = new HashMap<String, Object>();
+	   for (Iterator<String> it = fieldNames.iterator(); it.hasNext();)
+	   {
+		   String fieldName = it.next();
+		   try {
+			   Field field = MemberCache.field(getClass(), fieldName);
+			   if (field==null)
+			   {
+				   throw new NoSuchFieldException(fieldName);
+			   }
+			   values.put(fieldName, field.get(this));
+		   } catch (NoSuchFieldException e) {
+			   e.printStackTrace();
+		   } catch (IllegalAccessException e) {
+			   e.printStackTrace();
+		   }
+	   }
+	   return values;
+   }
+
+   /**
+    * Manager: sends the cacheable fields to the workers, before
+    * the simulation starts.
+    */
+   public synchronized void publishConfig()
+   {
+	   if (isManager && (cacheable_fields!=null))
+	   {
+		   HashMap<String, Object> values = readFields(cacheable_fields.keySet());
+		   config = new ConfigSnapshot(1, values);
+		   manager.sendConfig(config.getVersion(), true, values);
+	   }
+   }
+
+   /**
+    * Manager: sends the new values of some fields to the workers,
+    * which replace them in their config snapshots. Until the update
+    * reaches a worker, it keeps reading the former values.
+    *
+    * @param fieldNames The fields that changed.
+    */
+   public synchronized void configChanged(String... fieldNames)
+   {
+	   if (isManager && (config!=null))
+	   {
+		   HashMap<String, Object> values = readFields(Arrays.asList(fieldNames));
+		   config = config.update(config.getVersion() + 1, values);
+		   manager.sendConfig(config.getVersion(), false, values);
+	   }
+   }
+
+   /**
+    * Worker: takes a config sent by the manager. Updates older than
+    * the snapshot are ignored.
+    *
+    * @param full Whether the values are all the cacheable fields.
+    */
+   public synchronized void applyConfig(int version, boolean full, Map<String, Object> values)
+   {
+	   if (full || (config==null))
+	   {
+		   config = new ConfigSnapshot(version, values);
+	   }
+	   else if (version>config.getVersion())
+	   {
+		   config = config.update(version, values);
+	   }
+   }
+
    public Object invoke(String methodName, Object[] parameters)
    {
 	   try {
-			Method[] methods = getClass().getMethods();
-			Method method = null;
-			for (int i=0;i<methods.length;i++)
-			{
-				if (methods[i].getName().equals(methodName) && methods[i].getParameterTypes().length==parameters.length)
-				{
-					method = methods[i];
-					break;
-				}
-			}
+			Method method = MemberCache.publicMethod(getClass(), methodName, parameters.length);
 			if (method==null)
 			{
 				return null;
 			}
 			if (isManager)
 			{
-				return method.invoke(methodName, parameters);
+				return method.invoke(this, parameters);
 			}
 			else
 			{
@@ -775,12 +912,19 @@ public class Network extends simmcast.engine.Process {
 
    public Object get(String fieldName)
    {
+	   ConfigSnapshot c = localConfig(fieldName);
+	   if (c!=null)
+	   {
+		   return c.get(fieldName);
+	   }
 	   try {
-			Field field = getClass().getDeclaredField(fieldName);
-			Class returnType = field.getClass();
+			Field field = MemberCache.field(getClass(), fieldName);
+			if (field==null)
+			{
+				throw new NoSuchFieldException(fieldName);
+			}
 			if (isManager)
 			{
-				field.setAccessible(true);
 				return field.get(this);
 			}
 			else
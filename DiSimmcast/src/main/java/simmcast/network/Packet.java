@@ -87,6 +87,22 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     */
    protected int size;
 
+   /**
+    * Whether the packet goes back to the PacketPool when released.
+    * Only set on packets obtained from the pool.
+    */
+   boolean recyclable = false;
+
+   /**
+    * Whether the packet was released and not obtained again.
+    */
+   boolean released = false;
+
+   /**
+    * Where the packet was released, recorded in debug mode.
+    */
+   Throwable releasedAt;
+
    // *****************************************************
    // CONSTRUCTORS
    // *****************************************************
@@ -137,6 +153,92 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
       data = data_;
    }
 
+   /**
+    * Returns a packet with the specified characteristics, taken
+    * from the PacketPool when pooling is enabled. The packet may
+    * be released once the network or its receiver is done with it.
+    *
+    * @param from_ Source node.
+    * @param to_ Destination node.
+    * @param type_ An object that identifies the packet type.
+    * @param size_ The packet simulated size.
+    *
+    * @return A new or recycled packet.
+    *
+    * @see #release
+    */
+   public static Packet obtain(int from_, int to_, PacketType type_, int size_) {
+      return obtain(from_, to_, type_, size_, null);
+   }
+
+   /**
+    * Returns a packet holding a generic object, taken from the
+    * PacketPool when pooling is enabled.
+    *
+    * @param from_ Source node.
+    * @param to_ Destination node.
+    * @param type_ An object that identifies the packet type.
+    * @param size_ The packet simulated size.
+    * @param data_ An object, representing arbitrary data stored
+    * inside the packet.
+    *
+    * @return A new or recycled packet.
+    *
+    * @see #release
+    */
+   public static Packet obtain(int from_, int to_, PacketType type_, int size_, Object data_) {
+      if (!PacketPool.ENABLED)
+         return new Packet(from_, to_, type_, size_, data_);
+      Packet packet = PacketPool.take();
+      if (packet == null) {
+         packet = new Packet(from_, to_, type_, size_, data_);
+         packet.recyclable = true;
+      } else {
+         packet.from = from_;
+         packet.to = to_;
+         packet.type = type_;
+         packet.size = size_;
+         packet.seq = seqControl;
+         seqControl++;
+         packet.data = data_;
+         packet.queued = false;
+         packet.released = false;
+      }
+      return packet;
+   }
+
+   /**
+    * Hands the packet back to the PacketPool. The packet must not
+    * be used afterwards, as it may be handed out again by obtain().
+    * Does nothing if pooling is disabled or if the packet was not
+    * obtained from the pool.
+    *
+    * @throws IllegalStateException If the packet was already
+    * released, or is still in a queue.
+    */
+   public void release() {
+      if (!recyclable)
+         return;
+      if (released)
+         throw new IllegalStateException("Packet " + seq + " released twice", releasedAt);
+      if (queued)
+         throw new IllegalStateException("Packet " + seq + " released while queued");
+      released = true;
+      type = null;
+      data = null;
+      if (PacketPool.DEBUG)
+         releasedAt = new Throwable("Packet " + seq + " released here");
+      PacketPool.give(this);
+   }
+
+   /**
+    * @throws IllegalStateException If the packet was released.
+    */
+   final void checkLive() {
+      if (released)
+         throw new IllegalStateException("Packet " + seq + " used after release", releasedAt);
+   }
+
    // *****************************************************
    // GETTERS/SETTERS
    // *****************************************************
@@ -151,6 +253,8 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * packet's source (sender).
     */
    public int getSource() {
+      if (PacketPool.DEBUG)
+         checkLive();
       return from;
    }
 
@@ -164,6 +268,8 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * @return The network id of the packet's receiver,
     */
    public int getDestination() {
+      if (PacketPool.DEBUG)
+         checkLive();
       return to;
    }
 
@@ -177,6 +283,8 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * @return The packet's unique identifier.
     */
    public long getSeq() {
+      if (PacketPool.DEBUG)
+         checkLive();
       return seq;
    }
 
@@ -189,6 +297,8 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * @return The packet's simulated size.
     */
    public int getSize() {
+      if (PacketPool.DEBUG)
+         checkLive();
       return size;
    }
 
@@ -202,6 +312,8 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * @return The packet's type.
     */
    public PacketType getType() {
+      if (PacketPool.DEBUG)
+         checkLive();
       return type;
    }
 
@@ -214,6 +326,8 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * there is none.
     */
    public Object getData() {
+      if (PacketPool.DEBUG)
+         checkLive();
       return data;
    }
    
@@ -224,6 +338,8 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * @param to_ The new destination.
     */
    public void setDestination(int to_) {
+      if (PacketPool.DEBUG)
+         checkLive();
       to = to_;
    }
 
@@ -236,16 +352,19 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
     * This is the lower-level routine used by replicate(),
     * that ensures that a newly created packet does not
     * hold references to the parent packet's context.
+    * Copies of a plain Packet come from the PacketPool when
+    * pooling is enabled.
     *
     * @return The newly created packet object.
     */
    protected Packet newInstance() {
+      if (PacketPool.DEBUG)
+         checkLive();
+      if (PacketPool.ENABLED && (getClass() == Packet.class))
+         return obtain(from, to, type, size, data);
       try {
          Packet packet = (Packet)(this.clone());
-         packet.back = null;
-         packet.front = null;
-         packet.mainBack = null;
-         packet.mainFront = null;
+         packet.queued = false;
          packet.seq = seqControl;
          seqControl++;
          return packet;
@@ -401,7 +520,7 @@ public class Packet extends Queueable implements Cloneable, CloneOnWorker {
 					}
 				}
 			}
-			return new Packet(from, to, new PacketType(type), size, n);
+			return obtain(from, to, new PacketType(type), size, n);
 		} catch (ClassNotFoundException e) {
 			e.printStackTrace();
 		} catch (IllegalArgumentException e) {
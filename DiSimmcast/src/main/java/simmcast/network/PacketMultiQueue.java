@@ -20,8 +20,6 @@
 
 package simmcast.network;
 
-import java.util.Hashtable;
-
 /**
  * <p>
  * This implements a set of packet queues, which can
@@ -44,6 +42,15 @@ import java.util.Hashtable;
  * which it can only be removed with anonymous dequeueing.
  * This whole queueing process (which may or may not use the
  * anonymous queue) is called "anonymous queueing".
+ * </p><p>
+ * Member queues are kept in a table indexed by queue id, which
+ * grows to the highest id added (network ids of the senders, or
+ * ports). The main queue is a ring of the packets in insertion
+ * order, each with a sequence tag. A packet removed through its
+ * member queue is left in the ring and skipped later: an entry
+ * is still queued if its tag is not older than the tag of the
+ * head of its member queue. The ring is compacted when such
+ * entries outnumber the queued packets.
  * </p>
  *
  * @author Hisham H. Muhammad
@@ -69,25 +76,52 @@ public abstract class PacketMultiQueue extends PacketQueue {
     */
    static final public int UNLIMITED = 0;
 
+   /**
+    * The initial capacity of the main ring; a power of two.
+    */
+   static final private int INITIAL_CAPACITY = 16;
+
    // *****************************************************
    // ATTRIBUTES
    // *****************************************************
 
    /**
-    * A collection of PacketQueue objects, which hold
-    * the actual packets.
+    * The member queues, which hold the actual packets,
+    * at their queue id plus one (so that the anonymous
+    * queue, -1, is the first).
     */
-   Hashtable queues;
+   PacketQueue[] queues;
 
    /**
-    * Head of the main queue.
+    * The packets of the main queue, in insertion order,
+    * including the ones already removed through a member queue.
     */
-   QueueHead mainHead;
+   private Packet[] mainPackets;
 
    /**
-    * Tail of the main queue.
+    * The tag of each entry of the main queue.
     */
-   Queueable mainTail;
+   private long[] mainTags;
+
+   /**
+    * The member queue of each entry of the main queue.
+    */
+   private PacketQueue[] mainQueues;
+
+   /**
+    * The position of the first entry of the main queue.
+    */
+   private int mainFirst;
+
+   /**
+    * The number of entries of the main queue.
+    */
+   private int mainCount;
+
+   /**
+    * The tag of the next packet queued.
+    */
+   private long nextTag;
 
    // *****************************************************
    // CONSTRUCTORS
@@ -124,10 +158,13 @@ public abstract class PacketMultiQueue extends PacketQueue {
     * initialization that is common to all constructors.
     */
    private void initialize() {
-      queues = new Hashtable();
-      mainHead = new QueueHead(this);
-      mainHead.mainBack = null;
-      mainTail = mainHead;
+      queues = new PacketQueue[1];
+      mainPackets = new Packet[INITIAL_CAPACITY];
+      mainTags = new long[INITIAL_CAPACITY];
+      mainQueues = new PacketQueue[INITIAL_CAPACITY];
+      mainFirst = 0;
+      mainCount = 0;
+      nextTag = 0;
       // Anonymous queue.
       // TODO: Must it be called RQ?
       addQueue(new PacketQueue("RQ"), -1);
@@ -143,10 +180,19 @@ public abstract class PacketMultiQueue extends PacketQueue {
     * @param queue_ A handle to a queue, that will be
     * be controlled by this multiqueue.
     * @param id_ The "queue id" through which this queue
-    * will be identified from now on.
+    * will be identified from now on. Must not be lower
+    * than -1.
     */
    public void addQueue(PacketQueue queue_, int id_) {
-      queues.put( new Integer(id_), queue_ );
+      if (id_ < -1)
+         throw new InvalidIdentifierException();
+      if (id_ + 1 >= queues.length) {
+         PacketQueue[] larger = new PacketQueue[Math.max(id_ + 2, queues.length * 2)];
+         System.arraycopy(queues, 0, larger, 0, queues.length);
+         queues = larger;
+      }
+      queue_.id = id_;
+      queues[id_ + 1] = queue_;
    }
 
    /**
@@ -162,27 +208,66 @@ public abstract class PacketMultiQueue extends PacketQueue {
     * accessed directly, instead of through the multiqueue.
     */
    PacketQueue queue(int id_) {
-      PacketQueue q = (PacketQueue)queues.get( new Integer(id_) );
-      if (q != null)
-         return q;
+      int index = id_ + 1;
+      if ((index >= 0) && (index < queues.length) && (queues[index] != null))
+         return queues[index];
       else
          throw new InvalidIdentifierException();
    }
 
+   /**
+    * Checks whether a queue was registered with an id.
+    *
+    * @param id_ The queue id.
+    *
+    * @return Returns true if there is such a queue.
+    */
+   public boolean hasQueue(int id_) {
+      int index = id_ + 1;
+      return (index >= 0) && (index < queues.length) && (queues[index] != null);
+   }
+
    // *****************************************************
    // ANONYMOUS QUEUE OPERATIONS
    // *****************************************************
 
    /**
     * Adds a packet to the end of a queue, anonymously.
-    * Subclasses will have to define their own criteria for 
-    * definining how a queue id is extracted from the packet.
+    * The queue is chosen by queueId().
     * This is called "anonymous queueing", as explained in the
     * class description.
     *
     * @param packet_ The packet to be queued.
     */
-   abstract public void enqueue(Packet packet_) throws FullQueueException;
+   public void enqueue(Packet packet_) throws FullQueueException {
+      if (!offer(packet_))
+         throw new FullQueueException();
+   }
+
+   /**
+    * Adds a packet to the end of a queue, anonymously, unless
+    * the multiqueue or the chosen queue is full.
+    *
+    * @param packet_ The packet to be queued.
+    *
+    * @return Returns false if the packet was not queued
+    * for lack of room.
+    */
+   public boolean offer(Packet packet_) {
+      return offer(packet_, queueId(packet_));
+   }
+
+   /**
+    * Tells which member queue an anonymous enqueue puts a packet
+    * in. Subclasses will have to define their own criteria for
+    * definining how a queue id is extracted from the packet;
+    * the anonymous queue, -1, is used when there is no match.
+    *
+    * @param packet_ The packet.
+    *
+    * @return The queue id.
+    */
+   abstract public int queueId(Packet packet_);
 
    /**
     * Removes the element in the head of the "main queue"
@@ -194,29 +279,29 @@ public abstract class PacketMultiQueue extends PacketQueue {
     * @return The dequeued packet.
     */
    public Packet dequeue() throws EmptyQueueException {
-      accountDequeue();
-
-      // First, remove it from the main queue,
-      // using the "main" pointers.
-      Packet dequeued = (Packet)mainHead.mainBack;
-      mainHead.mainBack = dequeued.mainBack;
-      if (mainHead.mainBack == null)
-         mainTail = mainHead;
-      else
-         mainHead.mainBack.mainFront = mainHead;
-
-      // An object dequeued off the main queue is always
-      // the first of its specific queue. Therefore, we
-      // can obtain the specific queue it belongs to and
-      // ask it to dequeue it from there as well.
-      PacketQueue q = (PacketQueue)(((QueueHead)dequeued.front).queue);
-      q.dequeue();
-
-      dequeued.mainFront = null;
-      dequeued.mainBack = null;
+      Packet dequeued = poll();
+      if (dequeued == null)
+         throw new EmptyQueueException();
       return dequeued;
    }
 
+   /**
+    * The non-throwing version of dequeue().
+    *
+    * @return The dequeued packet, or null if the multiqueue
+    * is empty.
+    */
+   public Packet poll() {
+      if (!accountPoll())
+         return null;
+      // An entry still queued in the main queue is always
+      // the first of its member queue.
+      skipRemoved();
+      PacketQueue q = mainQueues[mainFirst];
+      removeFirst();
+      return q.poll();
+   }
+
    /**
     * Returns a handle to the main queue's head element, but does
     * not remove it from the queue.
@@ -228,7 +313,8 @@ public abstract class PacketMultiQueue extends PacketQueue {
       if (isEmpty())
          throw new EmptyQueueException();
       else {
-         return (Packet)mainHead.mainBack;
+         skipRemoved();
+         return mainPackets[mainFirst];
       }
    }
 
@@ -243,19 +329,39 @@ public abstract class PacketMultiQueue extends PacketQueue {
     * @param id_ The queue id.
     */
    public void enqueue(Packet packet_, int id_) throws FullQueueException, InvalidIdentifierException {
-      if (packet_.front != null)
-         throw new FatalQueueError("Attempt to enqueue an already queued packet.");
-
-      accountEnqueue();
-
-      // Link in the specific queue.
-      queue(id_).enqueue(packet_);
+      if (!offer(packet_, id_))
+         throw new FullQueueException();
+   }
 
-      // Perform the linking in the main queue manually
-      mainTail.mainBack = packet_;
-      packet_.mainFront = mainTail;
-      packet_.mainBack = null;
-      mainTail = packet_;
+   /**
+    * Adds a packet to the end of a specific queue, unless
+    * the multiqueue or that queue is full.
+    *
+    * @param packet_ The packed to be queued.
+    * @param id_ The queue id.
+    *
+    * @return Returns false if the packet was not queued
+    * for lack of room.
+    */
+   public boolean offer(Packet packet_, int id_) throws InvalidIdentifierException {
+      if (packet_.queued)
+         throw new FatalQueueError("Attempt to enqueue an already queued packet.");
+      PacketQueue q = queue(id_);
+      if (!accountOffer())
+         return false;
+      long tag = nextTag++;
+      if (!q.offer(packet_, tag)) {
+         accountPoll();
+         return false;
+      }
+      if (mainCount == mainPackets.length)
+         growMain();
+      int last = (mainFirst + mainCount) & (mainPackets.length - 1);
+      mainPackets[last] = packet_;
+      mainTags[last] = tag;
+      mainQueues[last] = q;
+      mainCount++;
+      return true;
    }
 
    /**
@@ -267,23 +373,30 @@ public abstract class PacketMultiQueue extends PacketQueue {
     * @return The dequeued packet.
     */
    public Packet dequeue(int id_) throws EmptyQueueException, InvalidIdentifierException {
-      accountDequeue();
-
-      // Dequeue it from the specific queue.
-      Packet dequeued = queue(id_).dequeue();
-
-      // Fix the links from the main queue.
-      Queueable front = dequeued.mainFront;
-      Queueable back = dequeued.mainBack;
-      front.mainBack = back;
-      if (back != null)
-         back.mainFront = front;
-      else
-         if (mainHead.mainBack == null)
-            mainTail = mainHead;
+      Packet dequeued = poll(id_);
+      if (dequeued == null)
+         throw new EmptyQueueException();
+      return dequeued;
+   }
 
-      dequeued.mainFront = null;
-      dequeued.mainBack = null;
+   /**
+    * The non-throwing version of dequeue(int).
+    *
+    * @param id_ The queue id.
+    *
+    * @return The dequeued packet, or null if the member
+    * queue is empty.
+    */
+   public Packet poll(int id_) throws InvalidIdentifierException {
+      PacketQueue q = queue(id_);
+      if (q.isEmpty())
+         return null;
+      accountPoll();
+      Packet dequeued = q.poll();
+      // The entry stays in the main queue until skipped.
+      skipRemoved();
+      if (mainCount > 2 * getSize() + INITIAL_CAPACITY)
+         compactMain();
       return dequeued;
    }
 
@@ -309,4 +422,86 @@ public abstract class PacketMultiQueue extends PacketQueue {
    public boolean isEmpty(int id_) throws InvalidIdentifierException {
       return queue(id_).isEmpty();
    }
+
+   // *****************************************************
+   // MAIN QUEUE MANAGEMENT
+   // *****************************************************
+
+   /**
+    * Checks whether an entry of the main queue was not removed
+    * through its member queue. The tags of a member queue grow
+    * from its head to its tail, so the entries older than the
+    * head were removed.
+    *
+    * @param index_ The position of the entry in the main ring.
+    */
+   private boolean isQueued(int index_) {
+      PacketQueue q = mainQueues[index_];
+      return !q.isEmpty() && (mainTags[index_] >= q.headTag());
+   }
+
+   /**
+    * Drops the entries at the start of the main queue that
+    * were removed through their member queues.
+    */
+   private void skipRemoved() {
+      while ((mainCount > 0) && !isQueued(mainFirst))
+         removeFirst();
+   }
+
+   /**
+    * Drops the first entry of the main queue.
+    */
+   private void removeFirst() {
+      mainPackets[mainFirst] = null;
+      mainQueues[mainFirst] = null;
+      mainFirst = (mainFirst + 1) & (mainPackets.length - 1);
+      mainCount--;
+   }
+
+   /**
+    * Drops all entries of the main queue that were removed
+    * through their member queues, keeping the order of the others.
+    */
+   private void compactMain() {
+      int mask = mainPackets.length - 1;
+      int kept = 0;
+      for (int i = 0; i < mainCount; i++) {
+         int from = (mainFirst + i) & mask;
+         if (isQueued(from)) {
+            int to = (mainFirst + kept) & mask;
+            mainPackets[to] = mainPackets[from];
+            mainTags[to] = mainTags[from];
+            mainQueues[to] = mainQueues[from];
+            kept++;
+         }
+      }
+      for (int i = kept; i < mainCount; i++) {
+         int index = (mainFirst + i) & mask;
+         mainPackets[index] = null;
+         mainQueues[index] = null;
+      }
+      mainCount = kept;
+   }
+
+   /**
+    * Doubles the main ring, moving the entries to its start.
+    */
+   private void growMain() {
+      int count = mainPackets.length;
+      Packet[] packets = new Packet[count * 2];
+      long[] tags = new long[count * 2];
+      PacketQueue[] members = new PacketQueue[count * 2];
+      System.arraycopy(mainPackets, mainFirst, packets, 0, count - mainFirst);
+      System.arraycopy(mainPackets, 0, packets, count - mainFirst, mainFirst);
+      System.arraycopy(mainTags, mainFirst, tags, 0, count - mainFirst);
+      System.arraycopy(mainTags, 0, tags, count - mainFirst, mainFirst);
+      System.arraycopy(mainQueues, mainFirst, members, 0, count - mainFirst);
+      System.arraycopy(mainQueues, 0, members, count - mainFirst, mainFirst);
+      mainPackets = packets;
+      mainTags = tags;
+      mainQueues = members;
+      mainFirst = 0;
+   }
+
 }
@@ -0,0 +1,91 @@
+package simmcast.network;
+
+/**
+ * Keeps released Packet objects for reuse, so that a simulation that
+ * sends many packets does not leave one object behind for the collector
+ * per send. Pooling is off unless the simmcast.packet.pool property is
+ * true; Packet.obtain() then allocates as the constructor does and
+ * Packet.release() does nothing.
+ * <p>
+ * Only packets of the Packet class itself are pooled, and only the ones
+ * the simulation created: those made by Packet.obtain(), by the send()
+ * shorthands of NodeThread and by the replication of a multicast packet.
+ * Such a packet belongs to the network once sent. It is released when
+ * it is dropped (path loss, a full queue, no path to the destination)
+ * and otherwise belongs to the thread that received it, which may
+ * release it when done with it.
+ * <p>
+ * With simmcast.packet.pool.debug set, a released packet is never
+ * reused, and any later use of it throws an IllegalStateException
+ * naming the place where it was released.
+ *
+ * @see Packet#obtain
+ * @see Packet#release
+ */
+public final class PacketPool {
+
+   // *****************************************************
+   // ATTRIBUTES
+   // *****************************************************
+
+   public static final boolean DEBUG = Boolean.getBoolean("simmcast.packet.pool.debug");
+
+   public static final boolean ENABLED = DEBUG || Boolean.getBoolean("simmcast.packet.pool");
+
+   /**
+    * Packets released beyond this many are left to the collector.
+    */
+   private static final int CAPACITY = Integer.getInteger("simmcast.packet.pool.size", 4096).intValue();
+
+   private static final Packet[] free = new Packet[ENABLED ? CAPACITY : 0];
+
+   private static int count = 0;
+
+   private static long reused = 0;
+
+   private PacketPool() {
+   }
+
+   // *****************************************************
+   // POOL
+   // *****************************************************
+
+   /**
+    * @return A released packet, or null if there is none.
+    */
+   static synchronized Packet take() {
+      if (count == 0)
+         return null;
+      count--;
+      Packet packet = free[count];
+      free[count] = null;
+      reused++;
+      return packet;
+   }
+
+   /**
+    * Keeps a released packet, unless the pool is full or in debug
+    * mode.
+    */
+   static synchronized void give(Packet packet_) {
+      if (!DEBUG && (count < free.length)) {
+         free[count] = packet_;
+         count++;
+      }
+   }
+
+   /**
+    * @return The number of packets currently kept.
+    */
+   public static synchronized int size() {
+      return count;
+   }
+
+   /**
+    * @return How many packets were handed out again instead of
+    * being allocated.
+    */
+   public static synchronized long getReused() {
+      return reused;
+   }
+}
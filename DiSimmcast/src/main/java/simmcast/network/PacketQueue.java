@@ -21,26 +21,48 @@
 package simmcast.network;
 
 /**
- * This implements a linked queue of packets, following a
+ * This implements a queue of packets, following a
  * FIFO policy. This queue may or may not have a limited size.
+ * Packets are kept in a ring buffer that doubles when full, so
+ * that queueing does not allocate once the queue has grown to
+ * its working size.
+ * <p>
+ * offer() and poll() report a full or empty queue through their
+ * result; enqueue() and dequeue() throw the queue exceptions
+ * instead.
  *
  * @author Hisham H. Muhammad
  */
 public class PacketQueue extends AbstractQueue {
 
+   // *****************************************************
+   // CONSTANTS
+   // *****************************************************
+
+   /**
+    * The initial capacity of the ring; a power of two.
+    */
+   static final private int INITIAL_CAPACITY = 8;
+
    // *****************************************************
    // ATTRIBUTES
    // *****************************************************
 
    /**
-    * A handle to the queue's first element, a queue-head.
+    * The ring buffer. Its length is a power of two.
     */
-   private QueueHead head;
+   private Packet[] ring;
 
    /**
-    * A handle to the queue's last element.
+    * The position of the queue's first element in the ring.
     */
-   private Queueable tail;
+   private int first;
+
+   /**
+    * A tag of each element, kept alongside the ring when the
+    * queue is a member of a multiqueue; null otherwise.
+    */
+   private long[] tags;
 
    /**
     * A numeric identifier for this PacketQueue.
@@ -84,8 +106,8 @@ public class PacketQueue extends AbstractQueue {
     * that is common to all constructors.
     */
    private void initialize() {
-      head = new QueueHead(this);
-      tail = head;
+      ring = new Packet[INITIAL_CAPACITY];
+      first = 0;
    }
 
    // *****************************************************
@@ -98,15 +120,45 @@ public class PacketQueue extends AbstractQueue {
     * @param packet_ The packet to be added.
     */
    public void enqueue(Packet packet_) throws FullQueueException {
-      if (packet_.front != null)
-         throw new FatalQueueError("Attempt to enqueue an already queued packet.");
+      if (!offer(packet_))
+         throw new FullQueueException();
+   }
 
-      accountEnqueue();
+   /**
+    * Adds a packet to the end of the queue, unless it is full.
+    *
+    * @param packet_ The packet to be added.
+    *
+    * @return Returns false if the queue is full, in which case
+    * the packet was not added.
+    */
+   public boolean offer(Packet packet_) {
+      if (packet_.queued)
+         throw new FatalQueueError("Attempt to enqueue an already queued packet.");
+      if (!accountOffer())
+         return false;
+      push(packet_);
+      return true;
+   }
 
-      tail.back = packet_;
-      packet_.front = tail;
-      packet_.back = null;
-      tail = packet_;
+   /**
+    * Adds a packet to the end of the queue, unless it is full,
+    * along with a tag. Used by the multiqueue.
+    *
+    * @param packet_ The packet to be added.
+    * @param tag_ The tag, returned by headTag() when the
+    * packet is the head of the queue.
+    *
+    * @return Returns false if the queue is full.
+    */
+   boolean offer(Packet packet_, long tag_) {
+      if (!accountOffer())
+         return false;
+      if (tags == null)
+         tags = new long[ring.length];
+      int last = push(packet_);
+      tags[last] = tag_;
+      return true;
    }
 
    /**
@@ -116,16 +168,26 @@ public class PacketQueue extends AbstractQueue {
     * @return The removed packet.
     */
    public Packet dequeue() throws EmptyQueueException {
-      accountDequeue();
+      Packet dequeued = poll();
+      if (dequeued == null)
+         throw new EmptyQueueException();
+      return dequeued;
+   }
 
-      Packet dequeued = (Packet)head.back;
-      head.back = dequeued.back;
-      if (head.back == null)
-         tail = head;
-      else
-         head.back.front = head;
-      dequeued.front = null;
-      dequeued.back = null;
+   /**
+    * Removes the element in the head of the queue, and
+    * returns it, if the queue is not empty.
+    *
+    * @return The removed packet, or null if the queue
+    * is empty.
+    */
+   public Packet poll() {
+      if (!accountPoll())
+         return null;
+      Packet dequeued = ring[first];
+      ring[first] = null;
+      first = (first + 1) & (ring.length - 1);
+      dequeued.queued = false;
       return dequeued;
    }
 
@@ -140,7 +202,60 @@ public class PacketQueue extends AbstractQueue {
       if (isEmpty())
          throw new EmptyQueueException();
       else
-         return (Packet)head.back;
+         return ring[first];
+   }
+
+   /**
+    * Returns the tag given to the head element by
+    * offer(Packet, long). Must not be called on an
+    * empty queue.
+    *
+    * @return The tag of the head element.
+    */
+   long headTag() {
+      return tags[first];
+   }
+
+   // *****************************************************
+   // RING MANAGEMENT
+   // *****************************************************
+
+   /**
+    * Stores a packet after the last element. The element
+    * count must already account for it.
+    *
+    * @param packet_ The packet.
+    *
+    * @return The position of the packet in the ring.
+    */
+   private int push(Packet packet_) {
+      if (PacketPool.DEBUG)
+         packet_.checkLive();
+      int count = getSize();
+      if (count > ring.length)
+         grow();
+      int last = (first + count - 1) & (ring.length - 1);
+      ring[last] = packet_;
+      packet_.queued = true;
+      return last;
+   }
+
+   /**
+    * Doubles the ring, moving the elements to its start.
+    */
+   private void grow() {
+      int count = ring.length;
+      Packet[] larger = new Packet[count * 2];
+      System.arraycopy(ring, first, larger, 0, count - first);
+      System.arraycopy(ring, 0, larger, count - first, first);
+      if (tags != null) {
+         long[] largerTags = new long[count * 2];
+         System.arraycopy(tags, first, largerTags, 0, count - first);
+         System.arraycopy(tags, 0, largerTags, count - first, first);
+         tags = largerTags;
+      }
+      ring = larger;
+      first = 0;
    }
 
    // *****************************************************
@@ -21,37 +21,23 @@
 package simmcast.network;
 
 /**
- * Queue linking handles are stored directly in the
- * queued object. This design enforces that an object will
- * be in at two queues (one "specific" and one "main" queue)
- * at a time.
+ * Objects that can be stored in the packet queues. The queues
+ * keep their elements in arrays; the object only records that
+ * it is queued, which enforces that an object will be in one
+ * queue at a time (a member queue of a multiqueue and the
+ * multiqueue itself counting as one).
  *
  * @author Hisham H. Muhammad
  */
 public class Queueable {
 
    // *****************************************************
-   // QUEUE LINKING
+   // QUEUE CONTROL
    // *****************************************************
 
    /**
-    * Handle to the object that comes before this one in the specific queue.
+    * Whether the object is currently stored in a queue.
     */
-   Queueable front = null;
-
-   /**
-    * Handle to the object that comes after this one in the specific queue.
-    */
-   Queueable back = null;
-
-   /**
-    * Handle to the object that comes before this one in the main queue.
-    */
-   Queueable mainFront = null;
-
-   /**
-    * Handle to the object that comes after this one in the main queue.
-    */
-   Queueable mainBack = null;
+   boolean queued = false;
 
 }
@@ -47,9 +47,16 @@ public abstract class EventItem {
    private double relativeTime;
 
    /**
-    * Link for queue structure. 
+    * Position in the heap of the EventQueue, or -1 when the
+    * event is not queued.
     */
-   EventItem link;
+   int index;
+
+   /**
+    * Orders the events due at the same time in the EventQueue;
+    * the lowest comes first.
+    */
+   long order;
 
    // *****************************************************
    // GETTERS/SETTERS
@@ -94,7 +101,7 @@ public abstract class EventItem {
    EventItem(double absoluteTime_, double relativeTime_) {
       absoluteTime = absoluteTime_;
       relativeTime = relativeTime_;
-      link = null;
+      index = -1;
    }
 
 }
@@ -27,19 +27,54 @@ package simmcast.node;
  * maintain events temporally ordered.
  * The head state is especially important because it reports
  * on the next event to be processed.
+ * <p>
+ * The events are kept in a 4-ary heap ordered by absolute time.
+ * Each event knows its position in the heap, so an event can be
+ * removed in logarithmic time given the event itself, which is
+ * what scheduleEvent() hands out as a cancellation handle.
+ * Events due at the same time keep the order of the former
+ * sorted list: the head stays first, and among the others the
+ * latest inserted comes first.
+ * <p>
+ * Paths of other nodes insert arrivals from their own scheduler
+ * threads while the owner takes events out, so every access to
+ * the heap holds the lock of the queue. The scheduler is told of
+ * a new head after the lock is released, as it takes its own lock
+ * before looking at the queue.
  *
  * @author Hisham H. Muhammad
  */
 public class EventQueue {
 
+   // *************************************************
+   // CONSTANTS
+   // *************************************************
+
+   /**
+    * Children of each node of the heap.
+    */
+   private static final int ARITY = 4;
+
    // *************************************************
    // ATTRIBUTES
    // *************************************************
 
    /**
-    * Handle of the first element of the queue.
+    * The heap; the first element is the head of the queue.
     */
-   EventItem head;
+   private EventItem[] heap;
+
+   /**
+    * The number of events in the heap.
+    */
+   private int size;
+
+   /**
+    * Given to each inserted event as its order, decreasing,
+    * so that among events due at the same time the latest
+    * inserted comes first.
+    */
+   private long nextOrder;
 
    /**
     * A temporary handle where the head state is stored.
@@ -50,6 +85,7 @@ public class EventQueue {
 
    /**
     * A handle to the event scheduler this object works for.
+    * May be null for a queue no scheduler waits on.
     */
    private EventScheduler scheduler;
 
@@ -63,7 +99,8 @@ public class EventQueue {
     * @param scheduler_ The scheduler this queue works for.
     */
    public EventQueue(EventScheduler scheduler_) {
-      head = null;
+      heap = new EventItem[16];
+      size = 0;
       backingStore = null;
       scheduler = scheduler_;
    }
@@ -78,8 +115,8 @@ public class EventQueue {
     *
     * @return The absoute triggering time of the head event.
     */
-   double getHeadAbsoluteTime() {
-      return head.getAbsoluteTime();
+   synchronized double getHeadAbsoluteTime() {
+      return heap[0].getAbsoluteTime();
    }
 
    /**
@@ -92,8 +129,8 @@ public class EventQueue {
     * @return The relative triggering time of the head event
     * upon event creation.
     */
-   double getHeadRelativeTime() {
-      return head.getRelativeTime();
+   synchronized double getHeadRelativeTime() {
+      return heap[0].getRelativeTime();
    }
    /**
     * Check for emptiness.
@@ -101,8 +138,15 @@ public class EventQueue {
     * @return Returns true if there is no element in this
     * queue, false otherwise.
     */
-   boolean isEmpty() {
-      return (head == null);
+   synchronized boolean isEmpty() {
+      return (size == 0);
+   }
+
+   /**
+    * @return The number of events in the queue.
+    */
+   synchronized int size() {
+      return size;
    }
 
    // **************************************************
@@ -114,8 +158,8 @@ public class EventQueue {
     * variable, in order to compare it later.
     * The queue is not modified.
     */
-   void storeHeadState() {
-      backingStore = head;
+   synchronized void storeHeadState() {
+      backingStore = heap[0];
    }
 
    /**
@@ -127,8 +171,8 @@ public class EventQueue {
     * as it was the last time storeHeadState() was called,
     * false otherwise.
     */
-   boolean headDidNotChange() {
-      return (backingStore == head);
+   synchronized boolean headDidNotChange() {
+      return (backingStore == heap[0]);
    }
 
    // **************************************************
@@ -145,14 +189,33 @@ public class EventQueue {
     * @param event_ The event to be inserted.
     */
    public void enqueue(EventItem event_) {
-      if ( (head != null) && (event_.getAbsoluteTime() >= head.getAbsoluteTime()) )
-         insertItem(event_);
-      else
-         insertHead(event_);
+      boolean newHead;
+      synchronized (this) {
+         EventItem head = heap[0];
+         event_.order = --nextOrder;
+         if ((head != null) && (event_.getAbsoluteTime() == head.getAbsoluteTime())) {
+            // The head stays ahead of the events due with it.
+            head.order = --nextOrder;
+         }
+         if (size == heap.length) {
+            EventItem[] grown = new EventItem[size * 2];
+            System.arraycopy(heap, 0, grown, 0, size);
+            heap = grown;
+         }
+         siftUp(event_, size++);
+         newHead = (heap[0] == event_);
+      }
+      if (newHead) {
+         // TODO: Ugly but it works. Or does it?
+         if ((scheduler != null) && (Thread.currentThread() != scheduler))
+            scheduler.unblock();
+      }
    }
 
    /**
     * Cancels an enqueued user-defined (onEvent()-type) event.
+    * Every queued event is searched; when several carry
+    * the message, the first to be due is cancelled.
     *
     * @param message_ The object that serves as a message identifier for the
     * search event.
@@ -161,42 +224,46 @@ public class EventQueue {
     * false otherwise (ie, the event was not found).
     */
    public boolean cancelUserEvent(Object message_) {
-      if (head == null)
-         return false;
-
-      // A sketch of the algorithm:
-      // (1) If the head is the user event we're looking for,
-      // (2) Then unlink the head, report the change to the scheduler and exit successfully.
-      // (3) Else...
-      // (4)    Loop through the queue of events until we find the user event we're looking for,
-      //        or reach the end of the queue.
-      // (5)    If we reached the end,
-      // (6)    Then exit with failure.
-      // (7)    Else unlink the event and exit successfully.
-
-      if ( (head instanceof UserEventItem)
-            && ((UserEventItem)head).message.equals(message_) ) // (1)
-      {
-         head = head.link;
-         scheduler.unblock();
-         return true; // (2)
-      } else { // (3)
-         EventItem prev = head;
-         EventItem walk = head.link;
-         while ( (walk != null)
-            && ( (!(walk instanceof UserEventItem))
-                 || (! ((UserEventItem)walk).message.equals(message_)) ) // (4)
-         ) {
-            prev = walk;
-            walk = walk.link;
+      EventItem found = null;
+      synchronized (this) {
+         for (int i = 0; i < size; i++) {
+            EventItem e = heap[i];
+            if ((e instanceof UserEventItem) && ((UserEventItem)e).message.equals(message_)
+                  && ((found == null) || before(e, found)))
+               found = e;
          }
-         if (walk == null) { // (5)
-            return false; // (6)
-         } else {
-            prev.link = walk.link;
-            return true; // (7)
+      }
+      return (found != null) && cancel(found);
+   }
+
+   /**
+    * Cancels an enqueued event, in logarithmic time.
+    *
+    * @param event_ The event, as it was enqueued.
+    *
+    * @return Returns true if the event was cancelled, false
+    * if it was not in the queue (already triggered or
+    * cancelled).
+    */
+   public boolean cancel(EventItem event_) {
+      int i;
+      synchronized (this) {
+         i = event_.index;
+         if ((i < 0) || (i >= size) || (heap[i] != event_))
+            return false;
+         EventItem last = heap[--size];
+         heap[size] = null;
+         event_.index = -1;
+         if (last != event_) {
+            if ((i > 0) && before(last, heap[(i - 1) / ARITY]))
+               siftUp(last, i);
+            else
+               siftDown(last, i);
          }
       }
+      if ((i == 0) && (scheduler != null))
+         scheduler.unblock();
+      return true;
    }
 
    /**
@@ -205,14 +272,42 @@ public class EventQueue {
     *
     * @return The element that was the head of the queue.
     */
-   EventItem dequeueHead() {
-      // assert (head != null);
-      EventItem prev = head;
-      head = head.link;
+   synchronized EventItem dequeueHead() {
+      // assert (size > 0);
+      EventItem prev = heap[0];
+      EventItem last = heap[--size];
+      heap[size] = null;
+      if (size > 0)
+         siftDown(last, 0);
+      prev.index = -1;
+      return prev;
+   }
 
-      prev.link = null;
+   /**
+    * Removes the element at the head of the queue if it
+    * is due by the given time.
+    *
+    * @param time_ The absolute time.
+    * @return The element that was the head of the queue,
+    * or null if the queue is empty or its head is due later.
+    */
+   synchronized EventItem dequeueHeadDue(double time_) {
+      if ((size == 0) || (heap[0].getAbsoluteTime() > time_))
+         return null;
+      return dequeueHead();
+   }
 
-      return prev;
+   /**
+    * Removes the element at the head of the queue if it is
+    * still the one stored by storeHeadState().
+    *
+    * @return The element that was the head of the queue,
+    * or null if the head changed.
+    */
+   synchronized EventItem dequeueStoredHead() {
+      if ((size == 0) || (backingStore != heap[0]))
+         return null;
+      return dequeueHead();
    }
 
    // *************************************************
@@ -220,44 +315,55 @@ public class EventQueue {
    // *************************************************
 
    /**
-    * Inserts an item in the queue (not in the head).
-    * As events are inserted, the queue is maintained ordered
-    * by absolute triggering time. For efficiency, there is
-    * a separate method, insertHead(), for the cases where
-    * the item to be inserted should be the first item.
-    * Notice that inserting an element that should be the new
-    * head with this method will not work. If you are unsure
-    * whether your element should be the head or not, use
-    * enqueue().
-    *
-    * @param event_ The event to be inserted.
+    * @return Whether event a is due before event b.
+    */
+   private static boolean before(EventItem a, EventItem b) {
+      double ta = a.getAbsoluteTime();
+      double tb = b.getAbsoluteTime();
+      return (ta < tb) || ((ta == tb) && (a.order < b.order));
+   }
+
+   /**
+    * Places an event at a position of the heap or above it,
+    * moving down the parents due after it.
     */
-   private void insertItem(EventItem event_) {
-      double time = event_.getAbsoluteTime();
-      EventItem prev = head;
-      EventItem walk = head.link;
-      while ((walk != null) && (time > walk.getAbsoluteTime())) {
-         prev = walk;
-         walk = walk.link;
+   private void siftUp(EventItem event_, int i) {
+      while (i > 0) {
+         int parent = (i - 1) / ARITY;
+         EventItem p = heap[parent];
+         if (!before(event_, p))
+            break;
+         heap[i] = p;
+         p.index = i;
+         i = parent;
       }
-      prev.link  = event_;
-      event_.link = walk;
+      heap[i] = event_;
+      event_.index = i;
    }
 
    /**
-    * Inserts an item as the queue's head (ie, as the new first
-    * item of the queue). The scheduler is informed of this
-    * addition.
-    *
-    * @param event_ The event to be inserted before the head of
-    * the queue
+    * Places an event at a position of the heap or below it,
+    * moving up the children due before it.
     */
-   private void insertHead(EventItem event_) {
-      event_.link = head;
-      head = event_;
-      // TODO: Ugly but it works. Or does it?
-      if (Thread.currentThread() != scheduler)
-         scheduler.unblock();
+   private void siftDown(EventItem event_, int i) {
+      while (true) {
+         int child = i * ARITY + 1;
+         if (child >= size)
+            break;
+         int end = Math.min(child + ARITY, size);
+         int min = child;
+         for (int c = child + 1; c < end; c++) {
+            if (before(heap[c], heap[min]))
+               min = c;
+         }
+         if (!before(heap[min], event_))
+            break;
+         heap[i] = heap[min];
+         heap[i].index = i;
+         i = min;
+      }
+      heap[i] = event_;
+      event_.index = i;
    }
 
 }
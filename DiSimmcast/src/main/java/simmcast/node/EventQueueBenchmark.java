@@ -0,0 +1,143 @@
+package simmcast.node;
+
+import java.util.Random;
+
+/**
+ * Compares the EventQueue with the sorted list it replaces, on the
+ * hold model: the head is removed and an event is inserted a random
+ * time after it, with the queue kept at a given depth. Timers set and
+ * cancelled through their handles are timed apart. The order in which
+ * both queues hand out the events is checked to be the same.
+ * <p>
+ * Usage: EventQueueBenchmark [operations]
+ */
+public class EventQueueBenchmark {
+
+   private static int operations = 1000000;
+
+   private static final int[] DEPTHS = { 10, 100, 1000, 10000 };
+
+   /**
+    * The sorted list formerly used by the EventQueue.
+    */
+   private static class SortedList {
+      private static class Link {
+         EventItem item;
+         Link next;
+      }
+
+      private Link head;
+
+      void enqueue(EventItem event_) {
+         Link link = new Link();
+         link.item = event_;
+         if ((head != null) && (event_.getAbsoluteTime() >= head.item.getAbsoluteTime())) {
+            double time = event_.getAbsoluteTime();
+            Link prev = head;
+            Link walk = head.next;
+            while ((walk != null) && (time > walk.item.getAbsoluteTime())) {
+               prev = walk;
+               walk = walk.next;
+            }
+            prev.next = link;
+            link.next = walk;
+         } else {
+            link.next = head;
+            head = link;
+         }
+      }
+
+      EventItem dequeueHead() {
+         Link prev = head;
+         head = head.next;
+         return prev.item;
+      }
+   }
+
+   public static void main(String[] args) {
+      if (args.length > 0)
+         operations = Integer.parseInt(args[0]);
+      checkOrder();
+      System.out.println("depth           list (ns)     heap (ns)");
+      for (int d = 0; d < DEPTHS.length; d++) {
+         int depth = DEPTHS[d];
+         int count = Math.max(1000, operations / depth * 10);
+         count = Math.min(count, operations);
+
+         SortedList list = new SortedList();
+         Random random = new Random(depth);
+         for (int i = 0; i < depth; i++)
+            list.enqueue(event(random.nextDouble() * depth));
+         long start = System.nanoTime();
+         for (int i = 0; i < count; i++) {
+            EventItem head = list.dequeueHead();
+            list.enqueue(event(head.getAbsoluteTime() + random.nextDouble() * depth));
+         }
+         long listTime = System.nanoTime() - start;
+
+         EventQueue queue = new EventQueue(null);
+         random = new Random(depth);
+         for (int i = 0; i < depth; i++)
+            queue.enqueue(event(random.nextDouble() * depth));
+         start = System.nanoTime();
+         for (int i = 0; i < count; i++) {
+            EventItem head = queue.dequeueHead();
+            queue.enqueue(event(head.getAbsoluteTime() + random.nextDouble() * depth));
+         }
+         long heapTime = System.nanoTime() - start;
+         System.out.println(String.format("%-10d %14.1f %13.1f", depth, (double) listTime / count, (double) heapTime / count));
+      }
+
+      int depth = DEPTHS[DEPTHS.length - 1];
+      EventQueue queue = new EventQueue(null);
+      Random random = new Random(depth);
+      for (int i = 0; i < depth; i++)
+         queue.enqueue(event(random.nextDouble() * depth));
+      int count = Math.min(operations, 100000);
+      long start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+         Integer message = Integer.valueOf(i);
+         queue.enqueue(new UserEventItem(random.nextDouble() * depth, 0, null, message));
+         queue.cancelUserEvent(message);
+      }
+      long search = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+         EventItem timer = event(random.nextDouble() * depth);
+         queue.enqueue(timer);
+         queue.cancel(timer);
+      }
+      long handle = System.nanoTime() - start;
+      System.out.println(String.format("cancel at %d: by message %.1f ns, by handle %.1f ns", depth, (double) search / count, (double) handle / count));
+   }
+
+   private static UserEventItem event(double time) {
+      return new UserEventItem(time, 0, null, Integer.valueOf(-1));
+   }
+
+   /**
+    * Feeds both queues the same events, many of them due at the
+    * same time, and stops if they come out in different orders.
+    */
+   private static void checkOrder() {
+      SortedList list = new SortedList();
+      EventQueue queue = new EventQueue(null);
+      Random random = new Random(1);
+      for (int i = 0; i < 100000; i++) {
+         if (!queue.isEmpty() && random.nextBoolean()) {
+            if (list.dequeueHead() != queue.dequeueHead())
+               throw new IllegalStateException("Events out of order at operation " + i);
+         } else {
+            double now = (list.head == null) ? 0 : list.head.item.getAbsoluteTime();
+            EventItem event = event(now + random.nextInt(4));
+            list.enqueue(event);
+            queue.enqueue(event);
+         }
+      }
+      while (!queue.isEmpty()) {
+         if (list.dequeueHead() != queue.dequeueHead())
+            throw new IllegalStateException("Events out of order at the end");
+      }
+      System.out.println("Same order as the sorted list.");
+   }
+}
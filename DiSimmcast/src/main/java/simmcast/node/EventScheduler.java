@@ -20,12 +20,12 @@
 
 package simmcast.node;
 
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 
 import simmcast.distribution.interfaces.EventSchedulerInterface;
 import simmcast.engine.TerminatedException;
-import simmcast.network.FullQueueException;
+import simmcast.network.InvalidIdentifierException;
 import simmcast.network.Packet;
 import simmcast.network.PathAccountQueue;
 
@@ -34,6 +34,15 @@ import simmcast.network.PathAccountQueue;
  * each node, supposed to be only used internally by the simulator.
  * This thread is responsible for the transfer of packets between
  * queues and handling of asynchronous events.
+ * <p>
+ * When "simmcast.node.events" is set to "callback" and the node runs
+ * under a scheduler of the engine (the conservative mode of the
+ * workers), no thread is started: the scheduler is kept in the time
+ * wheel at the time of its next event, and the engine dispatches its
+ * due events inline when it resumes it. A packet hop then costs no
+ * handoff to this scheduler, only the one to the receiving thread.
+ * Under the scheduler proxy of the lockstep mode, where every
+ * activation goes through the manager, it stays a thread.
  *
  * @author Hisham H. Muhammad
  */
@@ -43,6 +52,17 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
    // ATTRIBUTES
    // *****************************************************
 
+   /**
+    * Whether "simmcast.node.events" asks for callbacks.
+    */
+   static final boolean CALLBACKS = System.getProperty("simmcast.node.events", "process").equalsIgnoreCase("callback");
+
+   /**
+    * Whether this scheduler dispatches its events as callbacks of
+    * the engine instead of running as a thread.
+    */
+   private final boolean callbacks;
+
    /**
     * This scheduler's event queue.
     */
@@ -54,15 +74,30 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
    private Node node;
 
    /**
-    * List of threads currently waiting to receive a packet.
+    * Threads blocked receiving a packet from any sender, in
+    * the order they blocked. Also guards senderWaiters.
     */
-   private HashSet waitingList;
+   private LinkedHashSet anyWaiters;
+
+   /**
+    * Threads blocked receiving a packet from a given member
+    * queue of the RQ multiqueue, indexed by queue id + 1 as
+    * the queues of the multiqueue are, and grown on demand.
+    * A list is kept once made, even when empty.
+    */
+   private LinkedHashSet[] senderWaiters;
 
    /**
     * A flag to internally control thread termination.
     */
    private boolean running;
 
+   /**
+    * The number of events dispatched so far; workers report it
+    * to the manager as the load of the node.
+    */
+   private volatile long eventsHandled;
+
    // *****************************************************
    // CONSTRUCTORS
    // *****************************************************
@@ -74,9 +109,11 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
     */
    public EventScheduler(Node node_, /*simmcast.engine.Scheduler*/simmcast.distribution.interfaces.SchedulerInterface scheduler_) {
       simulationScheduler = scheduler_;
+      callbacks = CALLBACKS && (scheduler_ instanceof simmcast.engine.Scheduler);
       node = node_;
       eventQueue = new EventQueue(this);
-      waitingList = new HashSet();
+      anyWaiters = new LinkedHashSet();
+      senderWaiters = new LinkedHashSet[1];
       setName(node.name+"[class EventScheduler]");
    }
 
@@ -112,7 +149,10 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
 
          running = true;
 //       this.Activate();
-         startProcess();
+         if (callbacks)
+            simulationScheduler.addToThreadPool(this);
+         else
+            startProcess();
 
 //      } catch (SimulationException e) { System.out.println(e); }
 //        catch (RestartException e)    { System.out.println(e); }
@@ -123,7 +163,14 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
     */
    public void abort() {
       running = false;
-      unblock();
+      if (callbacks) {
+         synchronized (this) {
+            if (eventQueue.isEmpty())
+               simulationScheduler.removeFromThreadPool(this);
+         }
+      } else {
+         unblock();
+      }
    }
 
    /**
@@ -152,12 +199,60 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
 //     try {
 
 //         this.ReActivate();
-      wakeUpProcess();
+      if (callbacks)
+         arm();
+      else
+         wakeUpProcess();
 
 //    } catch (SimulationException e) { System.out.println(e); }
 //        catch (RestartException e)    { System.out.println(e); }
    }
 
+   // *****************************************************
+   // CALLBACK DISPATCH
+   // *****************************************************
+
+   /**
+    * Resumes the scheduler. In callback mode, this is called by the
+    * engine on one of its own threads at the time of the head event:
+    * the due events are dispatched right away, and the scheduler is
+    * put back in the time wheel at the time of the next one.
+    */
+   public void resumeProcess() {
+      if (!callbacks) {
+         super.resumeProcess();
+         return;
+      }
+      simmcast.engine.Scheduler.enterCallback(getPid());
+      try {
+         double now = simulationScheduler.currentTime();
+         EventItem event;
+         while ((event = eventQueue.dequeueHeadDue(now)) != null) {
+            if (event.getAbsoluteTime() < now)
+               node.network.tracer.nodeError(node, "Processing expired event: time: "+(event.getAbsoluteTime() - now));
+            dispatch(event);
+         }
+         synchronized (this) {
+            if (!eventQueue.isEmpty())
+               arm();
+            else if (!running)
+               simulationScheduler.removeFromThreadPool(this);
+         }
+      } finally {
+         simmcast.engine.Scheduler.enterCallback(-1);
+      }
+      simulationScheduler.processBlockedOrFinished(getPid());
+   }
+
+   /**
+    * Puts the scheduler in the time wheel at the time of its
+    * head event, replacing its previous schedule.
+    */
+   private synchronized void arm() {
+      if (!eventQueue.isEmpty())
+         simulationScheduler.activateAt(eventQueue.getHeadAbsoluteTime() - simulationScheduler.currentTime(), this);
+   }
+
    // *****************************************************
    // EVENT MANAGEMENT
    // *****************************************************
@@ -179,34 +274,48 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
          node.network.tracer.nodeError(node, "Processing expired event: time: "+time);
       }
 
-      if (eventQueue.headDidNotChange()) {
-         EventItem event = eventQueue.dequeueHead();
+      EventItem event = eventQueue.dequeueStoredHead();
+      if (event != null) {
+         dispatch(event);
+      }
+      // else: head was changed. Let next run of the
+      // "while" loop in the run() method deal with this.
 
-         if (event instanceof DepartureEventItem) {
-            ((DepartureEventItem)event).path.sendPacket();
+   }
 
-         } else if (event instanceof ArrivalEventItem) {
-            ArrivalEventItem arrival = ((ArrivalEventItem)event);
-            try {
-               node.receiverQueue.enqueue(arrival.packet);
-               arrival.pathAccount.dequeue();
-               node.network.tracer.move(arrival.packet, arrival.pathAccount, node.receiverQueue);
-            } catch (FullQueueException e) {
-               node.network.tracer.loss(arrival.packet, arrival.pathAccount, node.receiverQueue, "drop: RQ is full");
-            }
-            Iterator iter = waitingList.iterator();
-            while (iter.hasNext())
-               ((NodeThread)iter.next()).unblock();
-            waitingList.clear();
+   /**
+    * Handles an event taken from the head of the queue.
+    *
+    * @param event The event, due now.
+    */
+   private void dispatch(EventItem event) {
+      eventsHandled++;
+
+      if (event instanceof DepartureEventItem) {
+         ((DepartureEventItem)event).path.sendPacket();
+
+      } else if (event instanceof ArrivalEventItem) {
+         ArrivalEventItem arrival = ((ArrivalEventItem)event);
+         if (node.receiverQueue.offer(arrival.packet)) {
+            arrival.pathAccount.dequeue();
+            node.network.tracer.move(arrival.packet, arrival.pathAccount, node.receiverQueue);
+            wakeReceiver(node.receiverMultiQueue.queueId(arrival.packet));
+         } else {
+            node.network.tracer.loss(arrival.packet, arrival.pathAccount, node.receiverQueue, "drop: RQ is full");
+            arrival.packet.release();
+         }
 
-         } else if (event instanceof UserEventItem) {
-            ((UserEventItem)event).run();
+      } else if (event instanceof UserEventItem) {
+         ((UserEventItem)event).run();
 
-         }
       }
-      // else: head was changed. Let next run of the
-      // "while" loop in the run() method deal with this.
+   }
 
+   /**
+    * @return The number of events this scheduler has dispatched.
+    */
+   public long getEventsHandled() {
+      return eventsHandled;
    }
 
    // *****************************************************
@@ -258,11 +367,12 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
 
    /**
     * Registers a thread to be awaken by the scheduler
-    * upon the arrival of a packet. The thread is added
-    * to a "waiting list". When a packet is received,
-    * all threads that are waiting are awaken; one of
-    * them will obtain the packet, the others will 
-    * return null. Higher level code then ensures that
+    * upon the arrival of a packet from any sender. The thread
+    * is added to a "waiting list", just before it blocks.
+    * When a packet is received, one thread that can consume
+    * it is taken off its list and awaken. Should another
+    * thread obtain the packet first, the awaken one finds
+    * nothing; higher level code then ensures that
     * blocking receive operations will function properly,
     * looping until a reception is successful: this way,
     * this method provides the scheduler support for
@@ -272,20 +382,128 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
     * when a packet arrives.
     */
    void wakeOnReceive(NodeThread thread_) {
-      waitingList.add(thread_);
+      synchronized (anyWaiters) {
+         anyWaiters.add(thread_);
+      }
+   }
+
+   /**
+    * Registers a thread to be awaken by the scheduler upon
+    * the arrival of a packet for a given member queue of the
+    * RQ multiqueue (a sender, or a port).
+    *
+    * @param thread_ The thread that wants to be awaken
+    * when a packet arrives.
+    * @param sender_ The queue id.
+    */
+   void wakeOnReceive(NodeThread thread_, int sender_) {
+      synchronized (anyWaiters) {
+         int index = sender_ + 1;
+         if (index >= senderWaiters.length) {
+            LinkedHashSet[] larger = new LinkedHashSet[Math.max(index + 1, senderWaiters.length * 2)];
+            System.arraycopy(senderWaiters, 0, larger, 0, senderWaiters.length);
+            senderWaiters = larger;
+         }
+         LinkedHashSet waiters = senderWaiters[index];
+         if (waiters == null) {
+            waiters = new LinkedHashSet();
+            senderWaiters[index] = waiters;
+         }
+         waiters.add(thread_);
+      }
    }
 
    /**
     * Removes a thread from the packet arrival
-    * waiting list. This method provides the
-    * scheduler support for the node's receiving
-    * timeout.
+    * waiting list, once it resumes. It is no longer
+    * there if a packet arrival awoke it.
     *
     * @param thread_ The thread that should stop waiting
     * for a reception.
     */
    void giveUpReceiving(NodeThread thread_) {
-      waitingList.remove(thread_);
+      synchronized (anyWaiters) {
+         anyWaiters.remove(thread_);
+      }
+   }
+
+   /**
+    * Removes a thread from the waiting list of a member
+    * queue, once it resumes.
+    *
+    * @param thread_ The thread that should stop waiting
+    * for a reception.
+    * @param sender_ The queue id.
+    */
+   void giveUpReceiving(NodeThread thread_, int sender_) {
+      synchronized (anyWaiters) {
+         LinkedHashSet waiters = waitersOf(sender_);
+         if (waiters != null)
+            waiters.remove(thread_);
+      }
+   }
+
+   /**
+    * Awakes one thread that can consume a packet that was
+    * just put in a member queue of the RQ: a thread waiting
+    * on that queue if there is one, else a thread waiting
+    * on any.
+    *
+    * @param sender_ The queue id.
+    */
+   private void wakeReceiver(int sender_) {
+      synchronized (anyWaiters) {
+         LinkedHashSet waiters = waitersOf(sender_);
+         if ((waiters != null) && !waiters.isEmpty()) {
+            wakeFirst(waiters);
+         } else if (!anyWaiters.isEmpty()) {
+            wakeFirst(anyWaiters);
+         }
+      }
+   }
+
+   /**
+    * Called after a thread took a packet from the RQ and left
+    * others behind: the waiter awaken for the packet it took
+    * may have been meant for one of them, so one waiter for
+    * each packet class still present is awaken.
+    */
+   void wakeReceivers() {
+      synchronized (anyWaiters) {
+         if (!anyWaiters.isEmpty())
+            wakeFirst(anyWaiters);
+         for (int index = 0; index < senderWaiters.length; index++) {
+            LinkedHashSet waiters = senderWaiters[index];
+            if ((waiters == null) || waiters.isEmpty())
+               continue;
+            try {
+               if (node.receiverMultiQueue.isEmpty(index - 1))
+                  continue;
+            } catch (InvalidIdentifierException e) {
+               continue;
+            }
+            wakeFirst(waiters);
+         }
+      }
+   }
+
+   /**
+    * @param sender_ The queue id.
+    * @return The threads waiting on that queue, or null if
+    * none ever did. Called with anyWaiters held.
+    */
+   private LinkedHashSet waitersOf(int sender_) {
+      int index = sender_ + 1;
+      if ((index >= 0) && (index < senderWaiters.length))
+         return senderWaiters[index];
+      return null;
+   }
+
+   private static void wakeFirst(LinkedHashSet waiters_) {
+      Iterator iter = waiters_.iterator();
+      NodeThread thread = (NodeThread)iter.next();
+      iter.remove();
+      thread.unblock();
    }
 
    // *****************************************************
@@ -308,9 +526,12 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
     * for events to be canceled), and it is passed as a parameter
     * to the onEvent() method that occurss when this event is
     * triggered.
+    * @return The event, which cancels it faster than its message.
     */
-   void scheduleEvent(double relativeTime_, NodeThread thread_, Object message_) {
-      eventQueue.enqueue(new UserEventItem(simulationScheduler.currentTime()+relativeTime_, relativeTime_, thread_, message_));
+   EventItem scheduleEvent(double relativeTime_, NodeThread thread_, Object message_) {
+      EventItem event = new UserEventItem(simulationScheduler.currentTime()+relativeTime_, relativeTime_, thread_, message_);
+      eventQueue.enqueue(event);
+      return event;
    }
 
    /**
@@ -325,4 +546,14 @@ public final class EventScheduler extends simmcast.engine.Process implements Eve
       return eventQueue.cancelUserEvent(message_);
    }
 
+   /**
+    * Removes an event returned by scheduleEvent() from the queue,
+    * without searching for it.
+    *
+    * @param event_ The event to remove.
+    */
+   boolean cancelEvent(EventItem event_) {
+      return eventQueue.cancel(event_);
+   }
+
 }
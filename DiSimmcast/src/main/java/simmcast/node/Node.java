@@ -23,7 +23,6 @@ package simmcast.node;
 import simmcast.distribution.interfaces.EventSchedulerInterface;
 import simmcast.distribution.interfaces.NodeInterface;
 import simmcast.distribution.interfaces.SchedulerInterface;
-import simmcast.network.EmptyQueueException;
 import simmcast.network.InvalidIdentifierException;
 import simmcast.network.MultiSenderPacketQueue;
 import simmcast.network.Network;
@@ -675,6 +674,7 @@ public abstract class Node implements NodeInterface {
                receiverPath = paths.findPathTo(destination);
                receiverPath.addPacket(packets[i]);
             }
+            packet_.release();
          } else {
             receiverPath = paths.findPathTo(destination);
             receiverPath.addPacket(packet_);
@@ -682,6 +682,7 @@ public abstract class Node implements NodeInterface {
 
       } catch (PathNotFoundException e) {
          network.tracer.nodeError(this, "Path not found.");
+         packet_.release();
       }
    }
 
@@ -692,16 +693,13 @@ public abstract class Node implements NodeInterface {
     * @return A received packet, or null if there is no packet available. 
     */
    protected Packet tryReceive() {
-      if (receiverQueue.isEmpty())
-         return null;
-      else {
-         Packet packet = null;
-            try {
-               packet = receiverQueue.dequeue();
-            } catch (EmptyQueueException e) { System.err.println(e); }
-            network.tracer.move(packet, receiverQueue, Network.UPPER_LAYER);
-         return packet;
+      Packet packet = receiverQueue.poll();
+      if (packet != null) {
+         network.tracer.move(packet, receiverQueue, Network.UPPER_LAYER);
+         if (!receiverQueue.isEmpty())
+            scheduler.wakeReceivers();
       }
+      return packet;
    }
 
    /**
@@ -718,16 +716,13 @@ public abstract class Node implements NodeInterface {
    protected Packet tryReceive(int sender_) throws InvalidIdentifierException {
       try {
 
-         if (receiverMultiQueue.isEmpty(sender_))
-            return null;
-         else {
-            Packet packet = null;
-            try {
-               packet = receiverMultiQueue.dequeue(sender_);
-            } catch (EmptyQueueException e) { System.err.println(e); }
+         Packet packet = receiverMultiQueue.poll(sender_);
+         if (packet != null) {
             network.tracer.move(packet, receiverQueue, Network.UPPER_LAYER);
-            return packet;
-         } 
+            if (!receiverQueue.isEmpty())
+               scheduler.wakeReceivers();
+         }
+         return packet;
       
       } catch (InvalidIdentifierException e) {
          // TODO: trace?
@@ -826,4 +821,13 @@ public abstract class Node implements NodeInterface {
    {
 	   return network;
    }
+
+   /**
+    * The paths leaving this node, indexed by destination
+    * network id.
+    */
+   public PathTable getPaths()
+   {
+	   return paths;
+   }
 };
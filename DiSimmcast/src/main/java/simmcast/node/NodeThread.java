@@ -262,7 +262,8 @@ abstract public class NodeThread extends simmcast.engine.Process {
    // *****************************************************
 
    /**
-    * Basic primitive for sending packets.
+    * Basic primitive for sending packets. A packet obtained
+    * from the PacketPool belongs to the network once sent.
     *
     * @param packet_ The packet that should be sent.
     */
@@ -283,7 +284,7 @@ abstract public class NodeThread extends simmcast.engine.Process {
     * bandwidth consumption calculations.
     */
    public void send(int to_, PacketType type_, int size_) throws TerminationException {
-      Packet packet = new Packet(node.networkId, to_, type_, size_);
+      Packet packet = Packet.obtain(node.networkId, to_, type_, size_);
       node.send(packet, this);
    }
 
@@ -302,7 +303,7 @@ abstract public class NodeThread extends simmcast.engine.Process {
     * that is carried within the packet.
     */
    public void send(int to_, PacketType type_, int size_, Object data_) throws TerminationException {
-      Packet packet = new Packet(node.networkId, to_, type_, size_, data_);
+      Packet packet = Packet.obtain(node.networkId, to_, type_, size_, data_);
       node.send(packet, this);
    }
 
@@ -324,8 +325,9 @@ abstract public class NodeThread extends simmcast.engine.Process {
    public Packet receive(int sender_) throws InvalidIdentifierException, TerminationException {
       Packet received = node.tryReceive(sender_);
       while (received == null) {
-         node.scheduler.wakeOnReceive(this);
+         node.scheduler.wakeOnReceive(this, sender_);
          block();
+         node.scheduler.giveUpReceiving(this, sender_);
          received = node.tryReceive(sender_);
       }
       if (node.receiveTime > 0)
@@ -354,15 +356,13 @@ abstract public class NodeThread extends simmcast.engine.Process {
       double waitTime = simulationScheduler.currentTime() + timeout_;
       Packet received = node.tryReceive(sender_);
 
-      if ((received == null) && (simulationScheduler.currentTime() < waitTime))
-         node.scheduler.wakeOnReceive(this);
       while ((received == null) && (simulationScheduler.currentTime() < waitTime)) {
+         node.scheduler.wakeOnReceive(this, sender_);
          block(waitTime - simulationScheduler.currentTime());
+         node.scheduler.giveUpReceiving(this, sender_);
          received = node.tryReceive(sender_);
       }
-      if (received == null)
-         node.scheduler.giveUpReceiving(this);
-      else if (node.receiveTime > 0)
+      if ((received != null) && (node.receiveTime > 0))
          block(node.receiveTime);
 
       return received;
@@ -395,12 +395,16 @@ abstract public class NodeThread extends simmcast.engine.Process {
     * @return The received packet that eventually arrived.
     * This method will never return null, as it blocks the
     * thread until there is effectively data to be received.
+    * The thread may release the packet when done with it.
+    *
+    * @see simmcast.network.Packet#release
     */
    public Packet receive() throws TerminationException {
       Packet received = node.tryReceive();
       while (received == null) {
          node.scheduler.wakeOnReceive(this);
          block();
+         node.scheduler.giveUpReceiving(this);
          received = node.tryReceive();
       }
       if (node.receiveTime > 0)
@@ -426,15 +430,13 @@ abstract public class NodeThread extends simmcast.engine.Process {
       double waitTime = simulationScheduler.currentTime() + timeout_;
       Packet received = node.tryReceive();
 
-      if ((received == null) && (simulationScheduler.currentTime() < waitTime))
-         node.scheduler.wakeOnReceive(this);
       while ((received == null) && (simulationScheduler.currentTime() < waitTime)) {
+         node.scheduler.wakeOnReceive(this);
          block(waitTime - simulationScheduler.currentTime());
+         node.scheduler.giveUpReceiving(this);
          received = node.tryReceive();
       }
-      if (received == null)
-         node.scheduler.giveUpReceiving(this);
-      else if (node.receiveTime > 0)
+      if ((received != null) && (node.receiveTime > 0))
          block(node.receiveTime);
 
       return received;
@@ -527,6 +529,34 @@ abstract public class NodeThread extends simmcast.engine.Process {
       return node.scheduler.cancelEvent(message_);
    }
 
+   /**
+    * Schedule an event for posterior execution, as setTimer()
+    * does, returning a handle that cancels it without a search.
+    * The message need not be unique.
+    *
+    * @param relativeTime_ Amount of simulated time in the future from now
+    * when the onTimer method should be called with message_ a parameter.
+    * @param message_ The parameter to be passed to onTimer when it
+    * is called, relativeTime_ simulated-time-units from now.
+    * @return The handle of the event.
+    *
+    * @see #removeTimer
+    */
+   public EventItem addTimer(double relativeTime_, Object message_) {
+      return node.scheduler.scheduleEvent(relativeTime_, this, message_);
+   }
+
+   /**
+    * Remove an event scheduled by addTimer().
+    *
+    * @param timer_ The handle returned by addTimer().
+    * @return Returns true if the event was removed, false if
+    * it had already been triggered or removed.
+    */
+   public boolean removeTimer(EventItem timer_) {
+      return node.scheduler.cancelEvent(timer_);
+   }
+
    // *****************************************************
    // USER-LEVEL THREAD CONTROL
    // *****************************************************
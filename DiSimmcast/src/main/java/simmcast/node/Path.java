@@ -21,13 +21,15 @@
 package simmcast.node;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import simmcast.distribution.interfaces.NodeInterface;
-import simmcast.network.FullQueueException;
+import simmcast.engine.ConservativeScheduler;
 import simmcast.network.Network;
 import simmcast.network.Packet;
 import simmcast.network.PacketQueue;
 import simmcast.network.PathAccountQueue;
+import simmcast.stream.BoundedStream;
 import arjuna.JavaSim.Distributions.RandomStream;
 
 /**
@@ -58,6 +60,16 @@ public class Path {
 	 */
 	static final public int UNLIMITED = -1;
 
+	/**
+	 * A floor applied to the propagation delays of every path,
+	 * set with the "simmcast.sync.lookahead" property (0 by default).
+	 * It gives a lookahead to the conservative distributed mode when
+	 * the propagation streams are not bounded, and is applied only
+	 * to paths of nodes run by a ConservativeScheduler, so that the
+	 * delays drawn in the other modes stay as they were.
+	 */
+	static final double DELAY_FLOOR = Double.parseDouble(System.getProperty("simmcast.sync.lookahead", "0"));
+
 	// *****************************************************
 	// ATTRIBUTES
 	// *****************************************************
@@ -133,6 +145,19 @@ public class Path {
 	 */
 	PathAccountQueue pathAccount;
 
+	/**
+	 * The lowest propagation delay of this path. Drawn delays below
+	 * it are raised to it.
+	 */
+	double minimumDelay;
+
+	/**
+	 * The number of packets that went through this path so far,
+	 * leaving out the ones it lost. A TCPPath sends from the
+	 * schedulers of both of its ends.
+	 */
+	final AtomicLong packetsSent = new AtomicLong();
+
 	// *****************************************************
 	// CONSTRUCTORS
 	// *****************************************************
@@ -206,6 +231,11 @@ public class Path {
 		destinationId = destination_.getNetworkId();
 		randomGenerator = randomGenerator_;
 		bandwidth = bandwidth_;
+		minimumDelay = conservative(source_) ? DELAY_FLOOR : 0;
+		if (propagationStream_ instanceof BoundedStream)
+			minimumDelay = Math.max(minimumDelay, ((BoundedStream) propagationStream_).getMinimum());
+		if (minimumDelay < 0)
+			minimumDelay = 0;
 
 		//setting color and label parameters:
 		color = color_;
@@ -218,6 +248,14 @@ public class Path {
 		pathAccount = new PathAccountQueue();
 	}
 
+	/**
+	 * @return Whether the node is run by the scheduler of the
+	 * conservative distributed mode.
+	 */
+	private static boolean conservative(NodeInterface node_) {
+		return node_.getNetwork().getSimulationScheduler() instanceof ConservativeScheduler;
+	}
+
 	// *****************************************************
 	// GETTERS/SETTERS
 	// *****************************************************
@@ -259,6 +297,25 @@ public class Path {
 	 */
 	public double getBandwidth() { return bandwidth; }
 
+	/**
+	 * Obtain the lowest propagation delay of this path: the
+	 * bound of its propagation stream, if the stream declares
+	 * one, or the configured delay floor. A packet sent through
+	 * this path never arrives sooner than this after it departs.
+	 *
+	 * @return The minimum propagation delay.
+	 */
+	public double getMinimumDelay() { return minimumDelay; }
+
+	/**
+	 * Obtain the number of packets delivered through this path
+	 * so far. Workers report it to the manager as the traffic
+	 * of the path.
+	 *
+	 * @return The packets that were not lost.
+	 */
+	public long getPacketsSent() { return packetsSent.get(); }
+
 	// *****************************************************
 	// PACKET MANAGEMENT
 	// *****************************************************
@@ -271,17 +328,13 @@ public class Path {
 	 * @param packet_ The packet added to this path.
 	 */
 	public void addPacket(Packet packet_) {
-		try {
-
-			if (senderQueue.isEmpty()) {
-				senderQueue.enqueue(packet_);
+		if (senderQueue.isEmpty()) {
+			if (senderQueue.offer(packet_))
 				schedulePacketDeparture(packet_);
-//				source.network.tracer.move(packet_, Network.UPPER_LAYER, senderQueue);
-			} else
-				senderQueue.enqueue(packet_);
-
-		} catch (FullQueueException e) {
+//			source.network.tracer.move(packet_, Network.UPPER_LAYER, senderQueue);
+		} else if (!senderQueue.offer(packet_)) {
 //			source.network.tracer.loss(packet_, Network.UPPER_LAYER, senderQueue, "drop: SQ is full");
+			packet_.release();
 		}
 	}
 
@@ -296,14 +349,16 @@ public class Path {
 			double r = randomGenerator.nextDouble();
 			if (r <= lossRate) {
 //				source.network.tracer.loss(packet, senderQueue, pathAccount, "random loss");
+				packet.release();
 			} else {
 				double propagationTime = propagationStream.getNumber();
-				if (propagationTime < 0) {
+				if (propagationTime < minimumDelay) {
 					// TODO: better check
 					// System.err.println("Invalid propagation time");
-					propagationTime = 0;
+					propagationTime = minimumDelay;
 				}
 				
+				packetsSent.incrementAndGet();
 				destination.getScheduler().schedulePacketArrival(propagationTime, packet, pathAccount);
 				pathAccount.enqueue();
 //				source.network.tracer.move(packet, senderQueue, pathAccount);
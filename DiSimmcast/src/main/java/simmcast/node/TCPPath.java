@@ -105,13 +105,14 @@ public class TCPPath extends Path {
 			double r = randomGenerator.nextDouble();
 			if (r <= lossRate) {
 				source.getNetwork().tracer.loss(packet, senderQueue, pathAccount, "random loss");
+				packet.release();
 			} else {
 				double propagationTime = propagationStream.getNumber();
 				
-				if (propagationTime < 0) {
+				if (propagationTime < minimumDelay) {
 					// TODO: better check
 					// System.err.println("Invalid propagation time");
-					propagationTime = 0;
+					propagationTime = minimumDelay;
 				}
 				
 				if (source.getNetwork().simulationTime() + propagationTime <= prevArrivalTime) {
@@ -120,6 +121,7 @@ public class TCPPath extends Path {
 				
 				prevArrivalTime = source.getNetwork().simulationTime() + propagationTime;
 				
+				packetsSent.incrementAndGet();
 				destination.getScheduler().schedulePacketArrival(propagationTime, packet, pathAccount);
 				pathAccount.enqueue();
 				source.getNetwork().tracer.move(packet, senderQueue, pathAccount);
@@ -20,7 +20,6 @@
 
 package simmcast.route;
 
-import simmcast.network.EmptyQueueException;
 import simmcast.network.Network;
 import simmcast.network.NetworkPacket;
 import simmcast.network.Packet;
@@ -161,13 +160,10 @@ public class DefaultRouterNode extends RouterNode implements PacketOutlet {
     * called by the sender thread.
     */
    public Packet getNextPacket() throws TerminationException {
-      Packet packet = null;
+      Packet packet = queue.poll();
       while (packet == null) {
-         try {
-            packet = queue.dequeue();
-         } catch (EmptyQueueException e) {
-            sender.sleep();
-         }
+         sender.sleep();
+         packet = queue.poll();
       }
       return packet;
    }
@@ -0,0 +1,85 @@
+package simmcast.script;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+import simmcast.distribution.command.CommandActivateAt;
+import simmcast.distribution.command.CommandProtocol;
+import simmcast.node.Node;
+
+/**
+ * Compares the lookups of MemberCache with the scans they replace,
+ * on the members most often resolved while a simulation runs: a
+ * method of a node invoked by the script or by a worker, the
+ * constructor of a command received as JSON, and a field of the
+ * Network read through Network.get().
+ * <p>
+ * Usage: MemberBenchmark [lookups]
+ */
+public class MemberBenchmark {
+
+   private static int lookups = 1000000;
+
+   /**
+    * A field declared by a subclass, as Network subclasses do.
+    */
+   private static class Fields extends Node {
+      private int WHN = 25;
+   }
+
+   public static void main(String[] args) throws Exception {
+      if (args.length > 0)
+         lookups = Integer.parseInt(args[0]);
+      System.out.println("member                scan (ns)   cached (ns)");
+
+      long start = System.nanoTime();
+      for (int i = 0; i < lookups; i++)
+         MemberCache.scanMethod(Fields.class, "setNetworkId", 1);
+      long scan = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++)
+         MemberCache.method(Fields.class, "setNetworkId", 1);
+      report("method", scan, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++)
+         MemberCache.scanConstructor(CommandActivateAt.class, CommandProtocol.CONSTRUCTOR_FULL);
+      scan = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++)
+         MemberCache.constructor(CommandActivateAt.class, CommandProtocol.CONSTRUCTOR_FULL);
+      report("constructor", scan, System.nanoTime() - start);
+
+      Fields object = new Fields();
+      int sum = 0;
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++) {
+         Field field = Fields.class.getDeclaredField("WHN");
+         field.setAccessible(true);
+         sum += field.getInt(object);
+      }
+      scan = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++)
+         sum += MemberCache.field(Fields.class, "WHN").getInt(object);
+      report("field read", scan, System.nanoTime() - start);
+
+      Method method = MemberCache.scanMethod(Fields.class, "setNetworkId", 1);
+      Object[] arguments = new Object[] { Integer.valueOf(7) };
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++)
+         method.invoke(object, arguments);
+      scan = System.nanoTime() - start;
+      method = MemberCache.method(Fields.class, "setNetworkId", 1);
+      start = System.nanoTime();
+      for (int i = 0; i < lookups; i++)
+         method.invoke(object, arguments);
+      report("invoke", scan, System.nanoTime() - start);
+      if (sum == 0)
+         System.out.println();
+   }
+
+   private static void report(String name, long scan, long cached) {
+      System.out.println(String.format("%-18s %12.1f %13.1f", name, (double) scan / lookups, (double) cached / lookups));
+   }
+}
@@ -0,0 +1,204 @@
+package simmcast.script;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the constructors, methods and fields that the script, the
+ * commands exchanged with the workers and the Network look up by name
+ * and number of parameters. Each lookup scans the members of a class
+ * only the first time; the result, including the lack of a match, is
+ * kept for all threads. Fields are made accessible once, when found;
+ * methods keep the access they had, and only skip the access check
+ * when they are public members of a public class.
+ */
+public final class MemberCache {
+
+   // *****************************************************
+   // ATTRIBUTES
+   // *****************************************************
+
+   /**
+    * Kept in place of a member that does not exist.
+    */
+   private static final Object MISSING = new Object();
+
+   private static final ConcurrentHashMap<Key, Object> members = new ConcurrentHashMap<Key, Object>();
+
+   /**
+    * What a member is looked up by.
+    */
+   private static final class Key {
+      final int kind;
+      final Class type;
+      final String name;
+      final int arity;
+      final Class[] parameters;
+      final int hash;
+
+      Key(int kind_, Class type_, String name_, int arity_, Class[] parameters_) {
+         kind = kind_;
+         type = type_;
+         name = name_;
+         arity = arity_;
+         parameters = parameters_;
+         hash = ((kind * 31 + type.hashCode()) * 31 + ((name == null) ? 0 : name.hashCode())) * 31 + arity;
+      }
+
+      public int hashCode() {
+         return hash;
+      }
+
+      public boolean equals(Object o) {
+         if (!(o instanceof Key))
+            return false;
+         Key k = (Key) o;
+         return (kind == k.kind) && (type == k.type) && (arity == k.arity)
+            && ((name == null) ? (k.name == null) : name.equals(k.name))
+            && Arrays.equals(parameters, k.parameters);
+      }
+   }
+
+   private static final int CONSTRUCTOR = 0;
+   private static final int TYPED_CONSTRUCTOR = 1;
+   private static final int METHOD = 2;
+   private static final int PUBLIC_METHOD = 3;
+   private static final int FIELD = 4;
+
+   private MemberCache() {
+   }
+
+   // *****************************************************
+   // LOOKUPS
+   // *****************************************************
+
+   /**
+    * @return A public constructor with this number of parameters,
+    * or null.
+    */
+   public static Constructor constructor(Class classType, int arguments) {
+      Key key = new Key(CONSTRUCTOR, classType, null, arguments, null);
+      Object m = members.get(key);
+      if (m == null) {
+         m = store(key, scanConstructor(classType, arguments));
+      }
+      return (m == MISSING) ? null : (Constructor) m;
+   }
+
+   /**
+    * @return The public constructor with exactly these parameter
+    * types, or null.
+    */
+   public static Constructor constructor(Class classType, Class[] arguments) {
+      Key key = new Key(TYPED_CONSTRUCTOR, classType, null, arguments.length, arguments);
+      Object m = members.get(key);
+      if (m == null) {
+         m = store(new Key(TYPED_CONSTRUCTOR, classType, null, arguments.length, arguments.clone()), scanConstructor(classType, arguments));
+      }
+      return (m == MISSING) ? null : (Constructor) m;
+   }
+
+   /**
+    * @return The method with this name and number of parameters
+    * declared by the class or its nearest superclass, or null. A
+    * method that is not public, or not in a public class, still
+    * fails to be invoked from outside its package.
+    */
+   public static Method method(Class classType, String function, int arguments) {
+      Key key = new Key(METHOD, classType, function, arguments, null);
+      Object m = members.get(key);
+      if (m == null) {
+         Method found = scanMethod(classType, function, arguments);
+         if ((found != null) && Modifier.isPublic(found.getModifiers()) && Modifier.isPublic(found.getDeclaringClass().getModifiers())) {
+            found.setAccessible(true);
+         }
+         m = store(key, found);
+      }
+      return (m == MISSING) ? null : (Method) m;
+   }
+
+   /**
+    * @return A public method, possibly inherited, with this name and
+    * number of parameters, or null.
+    */
+   public static Method publicMethod(Class classType, String function, int arguments) {
+      Key key = new Key(PUBLIC_METHOD, classType, function, arguments, null);
+      Object m = members.get(key);
+      if (m == null) {
+         m = store(key, scanPublicMethod(classType, function, arguments));
+      }
+      return (m == MISSING) ? null : (Method) m;
+   }
+
+   /**
+    * @return The field with this name declared by the class,
+    * accessible, or null.
+    */
+   public static Field field(Class classType, String fieldName) {
+      Key key = new Key(FIELD, classType, fieldName, 0, null);
+      Object m = members.get(key);
+      if (m == null) {
+         Field found = null;
+         try {
+            found = classType.getDeclaredField(fieldName);
+            found.setAccessible(true);
+         } catch (NoSuchFieldException e) {
+         }
+         m = store(key, found);
+      }
+      return (m == MISSING) ? null : (Field) m;
+   }
+
+   private static Object store(Key key, Object member) {
+      Object m = (member == null) ? MISSING : member;
+      members.put(key, m);
+      return m;
+   }
+
+   // *****************************************************
+   // SCANS
+   // *****************************************************
+
+   static Constructor scanConstructor(Class classType, int arguments) {
+      Constructor[] constructors = classType.getConstructors();
+      for (int i = 0; i < constructors.length; i++) {
+         if (constructors[i].getParameterTypes().length == arguments)
+            return constructors[i];
+      }
+      return null;
+   }
+
+   static Constructor scanConstructor(Class classType, Class[] arguments) {
+      Constructor[] constructors = classType.getConstructors();
+      for (int i = 0; i < constructors.length; i++) {
+         if (Arrays.equals(constructors[i].getParameterTypes(), arguments))
+            return constructors[i];
+      }
+      return null;
+   }
+
+   static Method scanMethod(Class classType, String function, int arguments) {
+      while ((classType != null) && (classType != Object.class)) {
+         Method[] methods = classType.getDeclaredMethods();
+         for (int i = 0; i < methods.length; i++) {
+            if (methods[i].getName().equals(function) && (methods[i].getParameterTypes().length == arguments))
+               return methods[i];
+         }
+         classType = classType.getSuperclass();
+      }
+      return null;
+   }
+
+   static Method scanPublicMethod(Class classType, String function, int arguments) {
+      Method[] methods = classType.getMethods();
+      for (int i = 0; i < methods.length; i++) {
+         if (methods[i].getName().equals(function) && (methods[i].getParameterTypes().length == arguments))
+            return methods[i];
+      }
+      return null;
+   }
+}
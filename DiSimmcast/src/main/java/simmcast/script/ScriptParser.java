@@ -38,6 +38,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import simmcast.distribution.CloneOnWorker;
+import simmcast.distribution.NodePartitioner;
 import simmcast.distribution.interfaces.NodeInterface;
 import simmcast.distribution.interfaces.RouterNodeInterface;
 import simmcast.distribution.proxies.NetworkProxy;
@@ -176,6 +177,17 @@ public class ScriptParser {
     */
    private boolean debugMode;
 
+   /**
+    * The line of the file being processed, for error messages.
+    */
+   private int lineCount;
+
+   /**
+    * Set during the placement pass, when the lines of the file are
+    * only collected by the partitioner of the nodes, not executed.
+    */
+   private NodePartitioner partitioner;
+
    // *****************************************************
    // GETTERS/SETTERS
    // *****************************************************
@@ -237,7 +249,7 @@ public class ScriptParser {
    public ScriptParser(Network network_, String filePath_, String arguments_[]) throws InvalidFileException {
 
       debugMode = false;
-      int lineCount = 1;
+      lineCount = 1;
       try {
 
          nodeClass = Class.forName("simmcast.node.Node");
@@ -249,12 +261,8 @@ public class ScriptParser {
          routerNodeClass = Class.forName("simmcast.node.RouterNode");
          routerNodeInterface = Class.forName("simmcast.distribution.interfaces.RouterNodeInterface");
 
-         String line;
-         BufferedReader in = new BufferedReader(new FileReader(filePath_));
          network = network_;
 //         network.randomGenerator = new Random(seed);
-         macros = new MacroPreprocessor();
-         macros.defineMacro("!UNLIMITED","0");
          symbols = new Hashtable();
          symbols.put(NETWORK_OBJ, network);
          
@@ -268,7 +276,6 @@ public class ScriptParser {
             for (int i=0; i < Array.getLength(arguments_); i++) {
                String strI = Integer.toString(i);
                symbols.put("arg"+strI, arguments_[i]);
-               macros.defineMacro("!ARG"+strI, arguments_[i]);
             }
          }
 
@@ -280,25 +287,19 @@ public class ScriptParser {
          groups = new GroupTable();
          seed = System.currentTimeMillis();
 
-         // Parse loop
-         while ( (line = in.readLine()) != null ) {
-            int p;
-            if (line.equals("#$debug")) {
-               debugMode = true;
-               lineCount++;
-               continue;
-            }
-            if ( (p = line.indexOf("#")) != -1) {
-               if (p>0)
-                  line = line.substring(0, p-1);
-               else
-                  line = "";
-            }
-            line = macros.preprocessLine(line);
-            line.trim();
-            processLineArray(line);
-            lineCount++;
+         int workerCount = network.getManager().getWorkerCount();
+         if (NodePartitioner.ENABLED && workerCount > 1) {
+            // Placement pass: the nodes, paths and hints of the file
+            // are collected before any node is created.
+            partitioner = new NodePartitioner(workerCount);
+            resetMacros(arguments_);
+            readFile(filePath_);
+            network.getManager().setPlacement(partitioner.partition());
+            partitioner = null;
+            lineCount = 1;
          }
+         resetMacros(arguments_);
+         readFile(filePath_);
 
       // Exception handlers
       } catch (ClassNotFoundException c) {
@@ -335,6 +336,54 @@ public class ScriptParser {
    // PRE-PROCESSING
    // *****************************************************
 
+   /**
+    * Starts a pass over the file with only the predefined macros.
+    *
+    * @param arguments_ The arguments available to the file.
+    */
+   private void resetMacros(String arguments_[]) {
+      macros = new MacroPreprocessor();
+      macros.defineMacro("!UNLIMITED","0");
+      if (arguments_ != null) {
+         for (int i=0; i < Array.getLength(arguments_); i++) {
+            macros.defineMacro("!ARG"+Integer.toString(i), arguments_[i]);
+         }
+      }
+   }
+
+   /**
+    * Reads the file, line by line, removing comments and expanding
+    * macros and arrays before processing each line.
+    *
+    * @param filePath_ The path of the configuration file.
+    */
+   private void readFile(String filePath_) throws IOException, InvalidFileException {
+      String line;
+      BufferedReader in = new BufferedReader(new FileReader(filePath_));
+      try {
+         while ( (line = in.readLine()) != null ) {
+            int p;
+            if (line.equals("#$debug")) {
+               debugMode = true;
+               lineCount++;
+               continue;
+            }
+            if ( (p = line.indexOf("#")) != -1) {
+               if (p>0)
+                  line = line.substring(0, p-1);
+               else
+                  line = "";
+            }
+            line = macros.preprocessLine(line);
+            line.trim();
+            processLineArray(line);
+            lineCount++;
+         }
+      } finally {
+         in.close();
+      }
+   }
+
    /**
     * Performs the array-like macro expansion on the line and
     * calls processLine() for each generated line.
@@ -401,6 +450,14 @@ public class ScriptParser {
       if (tokenCount < 1)
          return;
       String command = tokenizer.nextToken();
+      if (partitioner != null) {
+         collectLine(command, tokenizer, line_);
+         return;
+      }
+      if (command.equals("partition")) {
+         // Only read by the placement pass.
+         return;
+      }
       if (command.equals("new") || command.equals("newON")) {
          if (tokenCount < 2)
             throw new InvalidFileException("Invalid object definition");
@@ -420,6 +477,38 @@ public class ScriptParser {
       }
    }
 
+   /**
+    * Hands a line to the partitioner of the nodes during the
+    * placement pass: node definitions, paths and "partition" hints.
+    * Only macros are defined; errors are left to the actual pass.
+    *
+    * @param command_ The first token of the line.
+    * @param tokenizer_ The rest of the line, broken up in tokens.
+    * @param line_ The entire line.
+    */
+   private void collectLine(String command_, StringTokenizer tokenizer_, String line_) throws InvalidFileException {
+      if (command_.equals("macro")) {
+         if (tokenizer_.countTokens() >= 2)
+            processMacro(tokenizer_, line_);
+      } else if (command_.equals("partition")) {
+         String[] arguments = parseArguments(tokenizer_);
+         if (arguments.length == 0 || !partitioner.hint(arguments))
+            throw new InvalidFileException("Invalid partition hint");
+      } else if (command_.equals("new")) {
+         if (tokenizer_.countTokens() < 2)
+            return;
+         String label = tokenizer_.nextToken();
+         try {
+            if (nodeClass.isAssignableFrom(Class.forName(tokenizer_.nextToken())))
+               partitioner.addNode(label);
+         } catch (ClassNotFoundException e) {
+         }
+      } else if (tokenizer_.hasMoreTokens() && tokenizer_.nextToken().equals("addPath")) {
+         if (tokenizer_.hasMoreTokens())
+            partitioner.addPath(command_, tokenizer_.nextToken());
+      }
+   }
+
    // *****************************************************
    // PRIMITIVE HANDLERS
    // *****************************************************
@@ -876,43 +965,29 @@ public class ScriptParser {
    // polymorphism -- ideally each parameter type
    // would be checked, not only the number of parameters.
 
+   /**
+    * Locate a public constructor with the specified number of parameters.
+    *
+    * @see MemberCache#constructor(Class, int)
+    */
    public static Constructor findConstructor(Class classType, int arguments) throws InvalidFileException {
-      Constructor[] constructors = classType.getConstructors();
-      int index = 0;
-      while (
-         (index<constructors.length) &&
-         ! (constructors[index].getParameterTypes().length == arguments)
-      )
-         index++;
-      if (! (index >= constructors.length))
-         return constructors[index];
-      throw new InvalidFileException("Constructor not found");
+      Constructor constructor = MemberCache.constructor(classType, arguments);
+      if (constructor == null)
+         throw new InvalidFileException("Constructor not found");
+      return constructor;
    }
 
+   /**
+    * Locate the public constructor with the specified parameter types.
+    *
+    * @see MemberCache#constructor(Class, Class[])
+    */
    public static Constructor findConstructor(Class classType, Class[] arguments) throws InvalidFileException {
-	      Constructor[] constructors = classType.getConstructors();
-	      for (int i=0;i<constructors.length;i++)
-	      {
-	    	  if (constructors[i].getParameterTypes().length==arguments.length)
-	    	  {
-	    		  Class[] params = constructors[i].getParameterTypes();
-	    		  boolean allMatch = true;
-	    		  for (int j=0;j<params.length;j++)
-	    		  {
-	    			  if (params[j]!=arguments[j])
-	    			  {
-	    				  allMatch = false;
-	    				  break;
-	    			  }
-	    		  }
-	    		  if (allMatch)
-	    		  {
-	    			  return constructors[i];
-	    		  }
-	    	  }
-	      }
-	      throw new InvalidFileException("Constructor not found");
-	}
+      Constructor constructor = MemberCache.constructor(classType, arguments);
+      if (constructor == null)
+         throw new InvalidFileException("Constructor not found");
+      return constructor;
+   }
 
    /**
     * Locate a method in this object with
@@ -927,28 +1002,11 @@ public class ScriptParser {
        return findMethod(object.getClass(), function, arguments);	   
    }
 
-	   private static Method findMethod(Class classType, String function, int arguments) throws InvalidFileException {
-      try {
-         while (classType != Class.forName("java.lang.Object")) {
-            Method[] methods = classType.getDeclaredMethods();
-            int index = 0;
-            while (
-               (index<methods.length) &&
-               ! ((methods[index].getName().equals(function)) &&
-                 (methods[index].getParameterTypes().length == arguments))
-            )
-               index++;
-            if (index >= methods.length)
-               classType = classType.getSuperclass();
-            else
-               return methods[index];
-         }
-         throw new InvalidFileException("Method "+function+" not found");
-
-      // Exception handlers
-      } catch (ClassNotFoundException e) {
+   private static Method findMethod(Class classType, String function, int arguments) throws InvalidFileException {
+      Method method = MemberCache.method(classType, function, arguments);
+      if (method == null)
          throw new InvalidFileException("Method "+function+" not found");
-      }
+      return method;
    }
 
 }
@@ -0,0 +1,15 @@
+package simmcast.stream;
+
+/**
+ * A stream whose numbers are known to never fall below a given
+ * value. Paths use this bound as the minimum propagation delay,
+ * which is the lookahead of the conservative distributed mode.
+ */
+public interface BoundedStream {
+
+   /**
+    * @return The lowest number this stream can return.
+    */
+   public double getMinimum();
+
+}
@@ -34,7 +34,7 @@ import arjuna.JavaSim.Distributions.RandomStream;
  *
  * @author Hisham H. Muhammad
  */
-public class FixedStream extends RandomStream implements CloneOnWorker {
+public class FixedStream extends RandomStream implements CloneOnWorker, BoundedStream {
 
    double number;
 
@@ -58,4 +58,8 @@ public class FixedStream extends RandomStream implements CloneOnWorker {
 		return "" + number;
 	}
 
+	public double getMinimum() {
+		return number;
+	}
+
 }
@@ -29,7 +29,7 @@ import arjuna.JavaSim.Distributions.NormalStream;
 /**
  * @author Guilherme B. Bedin
  */
-public class LimitedNormalStream extends NormalStream implements CloneOnWorker {
+public class LimitedNormalStream extends NormalStream implements CloneOnWorker, BoundedStream {
 
    protected double      max;
    protected double      min;
@@ -74,4 +74,11 @@ public class LimitedNormalStream extends NormalStream implements CloneOnWorker {
 		return cloneOnWorker;
 	}
 
+	/**
+	 * Without limits the normal distribution is unbounded.
+	 */
+	public double getMinimum() {
+		return (limit) ? min : -Double.MAX_VALUE;
+	}
+
 }
@@ -32,8 +32,8 @@ public class CBR extends TrafficGenerator {
 
       for (;;) {
          if (running) {
-            Packet p = new Packet(node.getNetworkId(), to, cbrPacketType,
-                                  packetSize);
+            Packet p = Packet.obtain(node.getNetworkId(), to, cbrPacketType,
+                                     packetSize);
             send(p);
             sleep(packetSize / rate);
          }
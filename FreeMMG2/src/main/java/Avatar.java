@@ -1,6 +1,9 @@
 import com.google.gson.JsonObject;
 
 import simmcast.distribution.CloneOnWorker;
+import simmcast.distribution.command.PayloadCodec;
+import simmcast.distribution.command.WireInput;
+import simmcast.distribution.command.WireOutput;
 
 public class Avatar implements CloneOnWorker
 {
@@ -46,6 +49,34 @@ public class Avatar implements CloneOnWorker
 		return a;
 	}
 
+	public final static PayloadCodec CODEC = new PayloadCodec()
+	{
+		public void write(WireOutput out, Object o)
+		{
+			Avatar a = (Avatar) o;
+			out.writeVarInt(a.x);
+			out.writeVarInt(a.y);
+			out.writeVarInt(a.id);
+			out.writeVarInt(a.seq);
+			out.writeVarInt(a.lastRound);
+			out.writeString(a.timestamp);
+		}
+
+		public Object read(WireInput in)
+		{
+			AvatarEvent ae = new AvatarEvent();
+			ae.x = in.readVarInt();
+			ae.y = in.readVarInt();
+			ae.id = in.readVarInt();
+			ae.seq = in.readVarInt();
+			int lastRound = in.readVarInt();
+			ae.timestamp = in.readString();
+			Avatar a = new Avatar(ae);
+			a.lastRound = lastRound;
+			return a;
+		}
+	};
+
 	public String getConstructorParameters()
 	{
 		JsonObject gson = new JsonObject();
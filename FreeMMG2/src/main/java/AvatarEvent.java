@@ -1,5 +1,9 @@
 import com.google.gson.JsonObject;
 
+import simmcast.distribution.command.PayloadCodec;
+import simmcast.distribution.command.WireInput;
+import simmcast.distribution.command.WireOutput;
+
 public class AvatarEvent extends Event
 {
 	public int x   = 0;
@@ -33,6 +37,32 @@ public class AvatarEvent extends Event
 	public final static String GHOST = "ghost";
 	public final static String TS = "ts";
 
+	public final static PayloadCodec CODEC = new PayloadCodec()
+	{
+		public void write(WireOutput out, Object o)
+		{
+			AvatarEvent ae = (AvatarEvent) o;
+			out.writeVarInt(ae.x);
+			out.writeVarInt(ae.y);
+			out.writeVarInt(ae.id);
+			out.writeVarInt(ae.seq);
+			out.writeBoolean(ae.ghost);
+			out.writeString(ae.timestamp);
+		}
+
+		public Object read(WireInput in)
+		{
+			AvatarEvent ae = new AvatarEvent();
+			ae.x = in.readVarInt();
+			ae.y = in.readVarInt();
+			ae.id = in.readVarInt();
+			ae.seq = in.readVarInt();
+			ae.ghost = in.readBoolean();
+			ae.timestamp = in.readString();
+			return ae;
+		}
+	};
+
 	public String getConstructorParameters()
 	{
 		JsonObject gson = new JsonObject();
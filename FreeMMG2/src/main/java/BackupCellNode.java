@@ -40,6 +40,7 @@ public class BackupCellNode extends HostNode
 				uploadEstimative   += vetor[LowerLayer.UP_BACKUPS];
 				
 				Pacote pkt = (Pacote) p.getData();
+				p.release();
 ////			logger.println("[" + global.get_time() + "] Backup " + primaryCellNodeRef + " received message " + p.getType() + " from " + p.getSource() + ", sended at " + (String) pkt.get_next());
 			}
 		}		
@@ -37,6 +37,7 @@ public class BigBackup extends HostNode
 				String time = (String)  pkt.get_next();
 				int to_     = (Integer) pkt.get_next();
 				int k       = to_ - global.getAsInt("WHN") - 1;
+				p.release();
 
 				synchronized (lock)
 				{
@@ -0,0 +1,43 @@
+import simmcast.distribution.command.CommandCodecBenchmark;
+import simmcast.network.Packet;
+
+/**
+ * Runs the CommandCodecBenchmark with the payloads of FreeMMG: avatars,
+ * avatar events and the Pacote messages that carry them, including one
+ * that carries a packet.
+ *
+ * Usage: FreeMMGCodecBenchmark
+ */
+public class FreeMMGCodecBenchmark
+{
+	public static void main(String[] args) throws ClassNotFoundException
+	{
+		// Registers the payload codecs.
+		Class.forName("FreeMMGNetwork");
+
+		AvatarEvent event = new AvatarEvent();
+		event.id = 312;
+		event.x = -15;
+		event.y = 4096;
+		event.seq = 77;
+		event.ghost = true;
+		event.timestamp = "0123.4";
+		Avatar avatar = new Avatar(event);
+		avatar.lastRound = 9;
+
+		Pacote sync = new Pacote();
+		sync.addTimestamp("0123.4");
+		sync.add(Integer.valueOf(18));
+		sync.add(Integer.valueOf(2));
+		sync.addEvento(event);
+		sync.addEvento(new AvatarEvent(avatar));
+		sync.add(avatar);
+
+		Pacote reliable = new Pacote(1);
+		reliable.add(Integer.valueOf(5));
+		reliable.add(sync);
+		reliable.add(new Packet(3, 4, FreeMMGNetwork.CTC_SYNC, 120, sync));
+
+		CommandCodecBenchmark.run(new Object[] { avatar, event, sync, reliable });
+	}
+}
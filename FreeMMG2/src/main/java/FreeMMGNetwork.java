@@ -4,11 +4,19 @@ import java.io.PrintStream;
 import java.text.DecimalFormat;
 import java.util.HashMap;
 
+import simmcast.distribution.command.PayloadRegistry;
 import simmcast.network.Network;
 import simmcast.network.PacketType;
 
 public class FreeMMGNetwork extends Network
 {
+	static
+	{
+		PayloadRegistry.register(PayloadRegistry.FIRST_USER_TYPE, Pacote.class, Pacote.CODEC);
+		PayloadRegistry.register(PayloadRegistry.FIRST_USER_TYPE + 1, Avatar.class, Avatar.CODEC);
+		PayloadRegistry.register(PayloadRegistry.FIRST_USER_TYPE + 2, AvatarEvent.class, AvatarEvent.CODEC);
+	}
+
 	public FreeMMGNetwork(boolean isManager, String managerHost)
 	{
 		super(isManager,managerHost);
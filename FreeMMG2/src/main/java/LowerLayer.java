@@ -119,6 +119,7 @@ public class LowerLayer
 			if ( (type.equals(FreeMMGNetwork.BTC_ACK)) || (type.equals(FreeMMGNetwork.CTC_ACK)) )
 			{
 				int seq = (Integer) p.getData();
+				p.release();
 				synchronized (this)
 				{
 					for (int i = 0; i < notAckedPackets.size(); i++)
@@ -147,7 +148,9 @@ public class LowerLayer
 				     if (type.equals(FreeMMGNetwork.CTC_SYNC))   vetor[UP_SYNC]    += FreeMMGNetwork.HEADER_LEN + 2;
 				else if (type.equals(FreeMMGNetwork.CTB_UPDATE)) vetor[UP_BACKUPS] += FreeMMGNetwork.HEADER_LEN + 2;
 
-				return new Packet(p.getSource(), p.getDestination(), p.getType(), p.getSize(), my_pacote);
+				Packet stripped = Packet.obtain(p.getSource(), p.getDestination(), p.getType(), p.getSize(), my_pacote);
+				p.release();
+				return stripped;
 			}
 		}
 	}
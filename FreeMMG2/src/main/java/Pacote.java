@@ -11,6 +11,9 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSyntaxException;
 
 import simmcast.distribution.CloneOnWorker;
+import simmcast.distribution.command.PayloadCodec;
+import simmcast.distribution.command.WireInput;
+import simmcast.distribution.command.WireOutput;
 import simmcast.network.Packet;
 import simmcast.network.PacketType;
 
@@ -58,6 +61,32 @@ public class Pacote extends Vector<Object> implements CloneOnWorker
 	public final static String CLASS_NAME = "cname";
 	public final static String DATA = "data";
 
+	public final static PayloadCodec CODEC = new PayloadCodec()
+	{
+		public void write(WireOutput out, Object o)
+		{
+			Pacote pct = (Pacote) o;
+			out.writeVarInt(pct.read_index);
+			out.writeVarInt(pct.size());
+			for (int i=0; i<pct.size(); i++)
+			{
+				out.writeObject(pct.get(i));
+			}
+		}
+
+		public Object read(WireInput in)
+		{
+			Pacote pct = new Pacote(in.readVarInt());
+			int size = in.readVarInt();
+			pct.ensureCapacity(size);
+			for (int i=0; i<size; i++)
+			{
+				pct.add(in.readObject());
+			}
+			return pct;
+		}
+	};
+
 	public String getConstructorParameters()
 	{
 		JsonObject gson = new JsonObject();